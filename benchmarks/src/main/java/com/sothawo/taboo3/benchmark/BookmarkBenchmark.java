@@ -0,0 +1,56 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.benchmark;
+
+import com.sothawo.taboo3.data.BookmarkBuilder;
+import com.sothawo.taboo3.data.BookmarkEdit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+
+/**
+ * Measures the time to process a whole dataset: building the bookmarks with their normalized tags, and parsing the
+ * tags entered in the edit form.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BookmarkBenchmark {
+
+    @Benchmark
+    public void buildBookmarks(DatasetState state, Blackhole blackhole) {
+        final Dataset dataset = state.dataset;
+        for (int i = 0; i < dataset.size(); i++) {
+            final BookmarkBuilder builder = aBookmark()
+                    .withOwner(dataset.owner(i))
+                    .withUrl(dataset.url(i))
+                    .withTitle(dataset.title(i));
+            dataset.tags(i).forEach(builder::addTag);
+            blackhole.consume(builder.build().getId());
+        }
+    }
+
+    @Benchmark
+    public void setTagsAsString(DatasetState state, Blackhole blackhole) {
+        final Dataset dataset = state.dataset;
+        for (int i = 0; i < dataset.size(); i++) {
+            final BookmarkEdit bookmarkEdit = new BookmarkEdit();
+            bookmarkEdit.setTagsAsString(dataset.tagString(i));
+            blackhole.consume(bookmarkEdit.getTags());
+        }
+    }
+}
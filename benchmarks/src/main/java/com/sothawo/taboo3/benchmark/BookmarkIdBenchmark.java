@@ -0,0 +1,93 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+
+/**
+ * Measures how many bookmarks per second can be built including their id. Each invocation builds 1M bookmarks; the
+ * legacy benchmark derives the ids the way the Bookmark class did before, once for each setter and once in the
+ * builder, with a shared digest and BigInteger formatting.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookmarkIdBenchmark {
+
+    private static final int BOOKMARKS = 1_000_000;
+
+    private String[] owners;
+    private String[] urls;
+
+    /** the digest shared by all calls like the legacy implementation. */
+    private MessageDigest legacyMd5;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        owners = new String[BOOKMARKS];
+        urls = new String[BOOKMARKS];
+        for (int i = 0; i < BOOKMARKS; i++) {
+            owners[i] = "user" + (i % 100);
+            urls[i] = "https://www.site" + (i % 1000) + ".com/path/to/page/" + i;
+        }
+        legacyMd5 = MessageDigest.getInstance("MD5");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOKMARKS)
+    public void buildBookmarks(Blackhole blackhole) {
+        for (int i = 0; i < BOOKMARKS; i++) {
+            blackhole.consume(aBookmark().withOwner(owners[i]).withUrl(urls[i]).withTitle("title").addTag("tag")
+                    .build().getId());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOKMARKS)
+    @Threads(4)
+    public void buildBookmarksConcurrently(Blackhole blackhole) {
+        buildBookmarks(blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOKMARKS)
+    public void legacyIdDerivation(Blackhole blackhole) {
+        for (int i = 0; i < BOOKMARKS; i++) {
+            legacyId(owners[i], "(null)");
+            legacyId(owners[i], urls[i]);
+            blackhole.consume(legacyId(owners[i], urls[i]));
+        }
+    }
+
+    private String legacyId(String owner, String url) {
+        String s = owner.toLowerCase() + '-' + url;
+        legacyMd5.update(StandardCharsets.UTF_8.encode(s));
+        return String.format("%032x", new BigInteger(1, legacyMd5.digest()));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.benchmark;
+
+import com.sothawo.taboo3.generator.BookmarkGenerator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.sothawo.taboo3.generator.BookmarkGeneratorBuilder.aBookmarkGenerator;
+
+/**
+ * A synthetic set of raw bookmark data. Owners and tags are taken from vocabularies that grow with the size of the
+ * dataset, the tags are written in mixed case and with surrounding blanks like user input.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public final class Dataset {
+
+    private final String[] owners;
+    private final String[] urls;
+    private final String[] titles;
+    private final List<List<String>> tags;
+    /** the tags of each bookmark as entered in the edit form. */
+    private final String[] tagStrings;
+
+    private Dataset(int size) {
+        owners = new String[size];
+        urls = new String[size];
+        titles = new String[size];
+        tags = new ArrayList<>(size);
+        tagStrings = new String[size];
+    }
+
+    /**
+     * generates a dataset from the bookmarks of the {@link BookmarkGenerator}, so that it has the same shape as the
+     * data generated for load tests. The same size and seed produce the same data.
+     *
+     * @param size
+     *         the number of bookmarks
+     * @param seed
+     *         the seed for the random generator
+     * @return the dataset
+     */
+    @NotNull
+    public static Dataset generate(int size, long seed) {
+        final Random random = new Random(seed);
+        final Dataset dataset = new Dataset(size);
+        final BookmarkGenerator bookmarkGenerator = aBookmarkGenerator()
+                .withSeed(seed)
+                .withOwners(Math.max(10, size / 1000))
+                .withTags(Math.max(100, size / 100))
+                .build();
+        final AtomicInteger index = new AtomicInteger();
+        bookmarkGenerator.generate(size).forEach(bookmark -> {
+            final int i = index.getAndIncrement();
+            dataset.owners[i] = bookmark.getOwner();
+            dataset.urls[i] = bookmark.getUrl();
+            dataset.titles[i] = bookmark.getTitle();
+            // make the tags look like user input again
+            final List<String> bookmarkTags = new ArrayList<>(bookmark.getTags().size());
+            for (String tag : bookmark.getTags()) {
+                bookmarkTags.add(random.nextBoolean() ? ' ' + tag.toUpperCase() : tag + ' ');
+            }
+            dataset.tags.add(bookmarkTags);
+            dataset.tagStrings[i] = String.join(random.nextBoolean() ? ", " : " ", bookmarkTags).trim();
+        });
+        return dataset;
+    }
+
+    public int size() {
+        return owners.length;
+    }
+
+    public String owner(int i) {
+        return owners[i];
+    }
+
+    public String url(int i) {
+        return urls[i];
+    }
+
+    public String title(int i) {
+        return titles[i];
+    }
+
+    public List<String> tags(int i) {
+        return tags.get(i);
+    }
+
+    public String tagString(int i) {
+        return tagStrings[i];
+    }
+}
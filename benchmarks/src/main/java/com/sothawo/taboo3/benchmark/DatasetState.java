@@ -0,0 +1,32 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JMH state providing the synthetic datasets of 1k, 100k and 1M bookmarks.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+
+    /** the seed, so that all benchmarks use the same data. */
+    private static final long SEED = 42;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    public Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataset = Dataset.generate(size, SEED);
+    }
+}
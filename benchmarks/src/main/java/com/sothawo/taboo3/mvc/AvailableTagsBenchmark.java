@@ -0,0 +1,69 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.benchmark.Dataset;
+import com.sothawo.taboo3.benchmark.DatasetState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the computation of the available tags in the list view. The input is the tag aggregation of a dataset,
+ * ordered by descending count like the result from the repository, and a selection of the two most frequent tags.
+ * The benchmark is in the mvc package to access the package private method of the controller.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AvailableTagsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TagCounts {
+        Map<String, Long> tagCounts;
+        Set<String> selectedTags;
+
+        @Setup(Level.Trial)
+        public void setup(DatasetState state) {
+            final Dataset dataset = state.dataset;
+            final Map<String, Long> counts = IntStream.range(0, dataset.size())
+                    .mapToObj(dataset::tags)
+                    .flatMap(List::stream)
+                    .map(tag -> tag.trim().toLowerCase())
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+            tagCounts = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(entry -> tagCounts.put(entry.getKey(), entry.getValue()));
+            selectedTags = tagCounts.keySet().stream().limit(2).collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    @Benchmark
+    public List<String> availableTags(TagCounts tagCounts) {
+        return ListController.availableTags(tagCounts.tagCounts.keySet(), tagCounts.selectedTags);
+    }
+}
@@ -5,10 +5,11 @@
  */
 package com.sothawo.taboo3.data;
 
+import com.fasterxml.jackson.annotation.JsonSetter;
+import org.springframework.data.annotation.AccessType;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
 
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -22,39 +23,64 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * The bookmark POJO. Tags when added are converted to lowercase and duplicate tags are removed. The Id is built by
- * concatenating the owner and the url.
+ * concatenating the owner and the url and hashing the result.
+ * <p>
+ * The ElasticSearch index is created by {@link BookmarkIndex} from the mapping in
+ * <i>elasticsearch/bookmark-mapping.json</i>, not from annotations.
  *
  * @author P.J. Meisch (pj.meisch@sothawo.com).
  */
-@Document(indexName = "bookmarks")
+@Document(indexName = "bookmarks", createIndex = false)
 public class Bookmark {
 
-    /** the tags of the bookmark. */
+    /** the tags of the bookmark, not analyzed so that they can be aggregated and matched exactly. */
     private final Collection<String> tags = new HashSet<>();
-    /** the id. */
+    /**
+     * the id, not analyzed as it is used as sort key for paging. It is accessed through the getter so that it is
+     * built before it is read.
+     */
     @Id
+    @AccessType(AccessType.Type.PROPERTY)
     private String id;
-    /** the owner of the bookmark. */
+    /** the owner of the bookmark, not analyzed. */
     private String owner;
-    /** the URL the bookmark points to as String. */
+    /**
+     * the URL the bookmark points to as String. The ngram subfield has all substrings of up to 10 characters of the
+     * words of the url.
+     */
     private String url = "";
-    /** the title of a bookmark. */
+    /**
+     * the title of a bookmark. The ngram subfield has all substrings of up to 10 characters of the words of the title,
+     * so that searching for a text contained in a title needs no wildcard query. The sort subfield has the
+     * title not analyzed.
+     */
     private String title = "";
+    /** the result of the last check of the url, null if it was never checked. */
+    private LinkCheck linkCheck;
 
-    private static final MessageDigest md5;
-
-    static {
+    /** MD5 digests for building the id, one per thread as MessageDigest is not thread safe. */
+    private static final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> {
         try {
-            md5 = MessageDigest.getInstance("MD5");
+            return MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
-            throw new ExceptionInInitializerError(e);
+            throw new IllegalStateException(e);
         }
-    }
+    });
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] NULL_BYTES = "(null)".getBytes(StandardCharsets.UTF_8);
 
     Bookmark() {
     }
 
+    /**
+     * returns the id. The id is built from owner and url when it is first needed after one of them was changed.
+     *
+     * @return the id
+     */
     public String getId() {
+        if (null == id) {
+            buildId();
+        }
         return id;
     }
 
@@ -71,7 +97,7 @@ public class Bookmark {
             throw new IllegalArgumentException("owner must not be null");
         }
         this.owner = owner.toLowerCase();
-        buildId();
+        id = null;
     }
 
     public String getUrl() {
@@ -83,7 +109,7 @@ public class Bookmark {
             throw new IllegalArgumentException("url must not be null");
         }
         this.url = url;
-        buildId();
+        id = null;
     }
 
     public String getTitle() {
@@ -94,17 +120,44 @@ public class Bookmark {
         this.title = title;
     }
 
+    public LinkCheck getLinkCheck() {
+        return linkCheck;
+    }
+
+    public void setLinkCheck(LinkCheck linkCheck) {
+        this.linkCheck = linkCheck;
+    }
+
+    /**
+     * builds the id as hex encoded MD5 hash of the lowercase owner, a dash and the url.
+     */
     void buildId() {
-        String s = ((null == owner) ? "(null)" : owner.toLowerCase())
-                + '-'
-                + ((null == url) ? "(null)" : url);
-        md5.update(StandardCharsets.UTF_8.encode(s));
-        id = String.format("%032x", new BigInteger(1, md5.digest()));
+        final MessageDigest digest = md5.get();
+        digest.update(null == owner ? NULL_BYTES : owner.toLowerCase().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '-');
+        digest.update(null == url ? NULL_BYTES : url.getBytes(StandardCharsets.UTF_8));
+        id = toHex(digest.digest());
+    }
+
+    /**
+     * converts bytes to a lowercase hex string with two digits per byte.
+     *
+     * @param bytes
+     *         the bytes to convert
+     * @return the hex string
+     */
+    static String toHex(byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Objects.hash(getId());
     }
 
     @Override
@@ -112,17 +165,18 @@ public class Bookmark {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Bookmark bookmark = (Bookmark) o;
-        return Objects.equals(id, bookmark.id);
+        return Objects.equals(getId(), bookmark.getId());
     }
 
     @Override
     public String toString() {
         return "Bookmark{" +
-                "id='" + id + '\'' +
+                "id='" + getId() + '\'' +
                 ", owner='" + owner + '\'' +
                 ", url='" + url + '\'' +
                 ", title='" + title + '\'' +
                 ", tags=" + tags +
+                ", linkCheck=" + linkCheck +
                 '}';
     }
 
@@ -147,6 +201,33 @@ public class Bookmark {
         return Collections.unmodifiableCollection(tags);
     }
 
+    /**
+     * replaces the tags when a bookmark is read from json. Without this, the tags field would be replaced with a list
+     * that keeps duplicates and uppercase tags.
+     *
+     * @param tags
+     *         the new tags, null values are skipped
+     */
+    @JsonSetter("tags")
+    private void setTags(final Collection<String> tags) {
+        this.tags.clear();
+        if (null != tags) {
+            tags.stream().filter(Objects::nonNull).forEach(this::addTag);
+        }
+    }
+
+    /**
+     * removes the given tag.
+     *
+     * @param tag
+     *         the tag to remove
+     * @throws NullPointerException
+     *         when tag is null
+     */
+    public void removeTag(final String tag) {
+        tags.remove(requireNonNull(tag).toLowerCase());
+    }
+
     /**
      * clears all tags.
      */
@@ -56,8 +56,8 @@ public final class BookmarkBuilder {
         Bookmark bookmark = new Bookmark();
         bookmark.setOwner(owner);
         bookmark.setUrl(url);
-        bookmark.buildId();
         bookmark.setTitle(title);
+        bookmark.buildId();
         tags.forEach(bookmark::addTag);
         return bookmark;
     }
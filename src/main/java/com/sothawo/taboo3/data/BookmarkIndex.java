@@ -0,0 +1,317 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ElasticSearch index of the bookmarks. The settings and the mapping are read from
+ * <i>elasticsearch/bookmark-settings.json</i> and <i>elasticsearch/bookmark-mapping.json</i>; the mapping carries its
+ * version in <i>_meta.version</i>. The bookmarks are stored in the index <i>bookmarks-v{version}</i> which is
+ * accessed through the alias <i>bookmarks</i>.
+ * <p>
+ * On startup the index for the current version is created when it does not exist. The documents of the index the
+ * alias pointed to before, or of a concrete <i>bookmarks</i> index created by an older version of the application,
+ * are copied into it, then the alias is switched and the old index is deleted. The number of shards is only set when
+ * the index is created, the number of replicas and the refresh interval are applied on each start.
+ * <p>
+ * The documents are routed by their owner, which is required for all requests to the index. Copying the documents
+ * routes them by the owner as well, so documents of older versions that were routed by their id are moved to the
+ * shard of their owner.
+ * <p>
+ * While bookmarks are imported, the index is not refreshed periodically and has no replicas, see
+ * {@link #beginImport()}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+@ConditionalOnProperty(name = "taboo3.store.engine", havingValue = "elasticsearch", matchIfMissing = true)
+public class BookmarkIndex {
+
+    static final String SETTINGS_PATH = "/elasticsearch/bookmark-settings.json";
+    static final String MAPPING_PATH = "/elasticsearch/bookmark-mapping.json";
+
+    /** number of documents per shard copied in one scroll and bulk request. */
+    private static final int COPY_BATCH_SIZE = 500;
+    /** keep alive of the scroll context while copying. */
+    private static final TimeValue COPY_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private static final Logger logger = LoggerFactory.getLogger(BookmarkIndex.class);
+
+    /** the client to ElasticSearch. */
+    private final Client client;
+    /** the alias the application uses. */
+    private final String alias;
+    /** the document type. */
+    private final String type;
+    /** the number of shards of a new index. */
+    private final int shards;
+    /** the number of replicas. */
+    private final int replicas;
+    /** the refresh interval. */
+    private final String refreshInterval;
+    /** the settings from the settings file. */
+    private final String settings;
+    /** the mapping from the mapping file. */
+    private final String mapping;
+    /** the version of the mapping. */
+    private final int version;
+    /** the number of running imports, guarded by this. */
+    private int runningImports;
+
+    @Autowired
+    public BookmarkIndex(ElasticsearchOperations elasticsearchOperations,
+                         @Value("${taboo3.index.shards:1}") int shards,
+                         @Value("${taboo3.index.replicas:0}") int replicas,
+                         @Value("${taboo3.index.refresh-interval:5s}") String refreshInterval) {
+        this(elasticsearchOperations.getClient(), elasticsearchOperations.getPersistentEntityFor(Bookmark.class),
+                shards, replicas, refreshInterval);
+    }
+
+    private BookmarkIndex(Client client, ElasticsearchPersistentEntity<?> entity, int shards, int replicas,
+                          String refreshInterval) {
+        this(client, entity.getIndexName(), entity.getIndexType(), shards, replicas, refreshInterval);
+    }
+
+    BookmarkIndex(@NotNull Client client, @NotNull String alias, @NotNull String type, int shards, int replicas,
+                  @NotNull String refreshInterval) {
+        this.client = client;
+        this.alias = alias;
+        this.type = type;
+        this.shards = shards;
+        this.replicas = replicas;
+        this.refreshInterval = refreshInterval;
+        this.settings = readResource(SETTINGS_PATH);
+        this.mapping = readResource(MAPPING_PATH);
+        try {
+            this.version = new ObjectMapper().readTree(mapping).path("_meta").path("version").asInt(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (version < 1) {
+            throw new IllegalStateException(MAPPING_PATH + " has no _meta.version");
+        }
+    }
+
+    @NotNull
+    private static String readResource(@NotNull String path) {
+        try (InputStream inputStream = BookmarkIndex.class.getResourceAsStream(path)) {
+            if (null == inputStream) {
+                throw new IllegalStateException("resource " + path + " not found");
+            }
+            return StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the name used to access the index, which is an alias
+     */
+    @NotNull
+    public String getName() {
+        return alias;
+    }
+
+    /**
+     * @return the document type
+     */
+    @NotNull
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the version of the mapping
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the name of the index for the current version
+     */
+    @NotNull
+    public String getVersionedName() {
+        return alias + "-v" + version;
+    }
+
+    /**
+     * makes sure the alias points to the index of the current version, creating and filling it if necessary.
+     */
+    @PostConstruct
+    public void init() {
+        final String target = getVersionedName();
+        final String source = currentIndex();
+        if (target.equals(source)) {
+            client.admin().indices().prepareUpdateSettings(target).setSettings(dynamicSettings()).get();
+            logger.info("using index {} with mapping version {}", target, version);
+            return;
+        }
+
+        if (client.admin().indices().prepareExists(target).get().isExists()) {
+            // left over from an interrupted migration
+            logger.info("deleting incomplete index {}", target);
+            client.admin().indices().prepareDelete(target).get();
+        }
+        logger.info("creating index {} with mapping version {}", target, version);
+        client.admin().indices().prepareCreate(target)
+                .setSettings(Settings.settingsBuilder()
+                        .loadFromSource(settings)
+                        .put("index.number_of_shards", shards)
+                        .put(dynamicSettings()))
+                .addMapping(type, mapping)
+                .get();
+        client.admin().cluster().prepareHealth(target).setWaitForYellowStatus().get();
+
+        if (null == source) {
+            client.admin().indices().prepareAliases().addAlias(target, alias).get();
+            return;
+        }
+
+        final long copied = copy(source, target);
+        logger.info("copied {} bookmarks from {} to {}", copied, source, target);
+        if (alias.equals(source)) {
+            // a concrete index created before the alias was introduced, it must be gone before the alias is added
+            client.admin().indices().prepareDelete(source).get();
+            client.admin().indices().prepareAliases().addAlias(target, alias).get();
+        } else {
+            client.admin().indices().prepareAliases().removeAlias(source, alias).addAlias(target, alias).get();
+            client.admin().indices().prepareDelete(source).get();
+        }
+        logger.info("switched {} to {}, deleted {}", alias, target, source);
+    }
+
+    /**
+     * switches the index to import mode when the first of possibly concurrent imports starts: periodic refreshes are
+     * disabled and the replicas are removed, so the bulk requests only write the primary shards and do not create
+     * many small segments. Each call must be followed by a call to {@link #endImport()}. If the application stops
+     * during an import, the settings are restored by {@link #init()} on the next start.
+     */
+    public synchronized void beginImport() {
+        if (runningImports++ == 0) {
+            logger.info("suspending refresh and replicas of {} for import", alias);
+            client.admin().indices().prepareUpdateSettings(alias)
+                    .setSettings(Settings.settingsBuilder()
+                            .put("index.number_of_replicas", 0)
+                            .put("index.refresh_interval", "-1"))
+                    .get();
+        }
+    }
+
+    /**
+     * restores the configured refresh interval and number of replicas when the last running import ends.
+     */
+    public synchronized void endImport() {
+        if (runningImports > 0 && --runningImports == 0) {
+            logger.info("restoring refresh and replicas of {} after import", alias);
+            client.admin().indices().prepareUpdateSettings(alias).setSettings(dynamicSettings()).get();
+        }
+    }
+
+    /**
+     * @return the settings that can be changed on an existing index
+     */
+    @NotNull
+    private Settings dynamicSettings() {
+        return Settings.settingsBuilder()
+                .put("index.number_of_replicas", replicas)
+                .put("index.refresh_interval", refreshInterval)
+                .build();
+    }
+
+    /**
+     * determines the index currently holding the bookmarks.
+     *
+     * @return the index the alias points to, the alias itself if it is a concrete index or null if neither exists
+     */
+    @Nullable
+    private String currentIndex() {
+        final GetAliasesResponse aliases = client.admin().indices().prepareGetAliases(alias).get();
+        if (!aliases.getAliases().isEmpty()) {
+            return aliases.getAliases().keysIt().next();
+        }
+        return client.admin().indices().prepareExists(alias).get().isExists() ? alias : null;
+    }
+
+    /**
+     * @param hit
+     *         a document of the index that is copied
+     * @return the routing for the document, the owner
+     */
+    @NotNull
+    private static String routing(@NotNull SearchHit hit) {
+        final Object owner = hit.getSource().get("owner");
+        if (null == owner) {
+            throw new IllegalStateException("document " + hit.getId() + " has no owner");
+        }
+        return owner.toString().toLowerCase();
+    }
+
+    /**
+     * copies all documents from one index to another with the scroll and bulk APIs and refreshes the target.
+     *
+     * @param source
+     *         the index to copy from
+     * @param target
+     *         the index to copy to
+     * @return the number of copied documents
+     */
+    private long copy(@NotNull String source, @NotNull String target) {
+        long copied = 0;
+        SearchResponse response = client.prepareSearch(source)
+                .setScroll(COPY_SCROLL_KEEP_ALIVE)
+                .addSort("_doc", SortOrder.ASC)
+                .setSize(COPY_BATCH_SIZE)
+                .get();
+        try {
+            while (response.getHits().getHits().length > 0) {
+                final BulkRequestBuilder bulkRequest = client.prepareBulk();
+                for (SearchHit hit : response.getHits().getHits()) {
+                    bulkRequest.add(client.prepareIndex(target, type, hit.getId())
+                            .setRouting(routing(hit))
+                            .setSource(hit.getSourceRef()));
+                }
+                final BulkResponse bulkResponse = bulkRequest.get();
+                if (bulkResponse.hasFailures()) {
+                    throw new IllegalStateException("copying to " + target + " failed: "
+                            + bulkResponse.buildFailureMessage());
+                }
+                copied += bulkResponse.getItems().length;
+                logger.debug("copied {} of {} bookmarks", copied, response.getHits().getTotalHits());
+                response = client.prepareSearchScroll(response.getScrollId()).setScroll(COPY_SCROLL_KEEP_ALIVE).get();
+            }
+        } finally {
+            client.prepareClearScroll().addScrollId(response.getScrollId()).get();
+        }
+        client.admin().indices().prepareRefresh(target).get();
+        return copied;
+    }
+}
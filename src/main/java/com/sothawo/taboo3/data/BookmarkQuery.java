@@ -0,0 +1,105 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The selection of bookmarks a {@link BookmarkStore} is queried with: an optional owner, an optional text that must be
+ * contained in the title and tags that must all be present. Owner and tags are compared in lowercase.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public final class BookmarkQuery {
+
+    private static final BookmarkQuery ALL = new BookmarkQuery(null, null, Collections.emptyList());
+
+    /** the owner, null to match all owners. */
+    private final String owner;
+    /** the text to search in the title, null to match all titles. */
+    private final String text;
+    /** the lowercase tags that must all be present. */
+    private final Set<String> tags;
+
+    private BookmarkQuery(@Nullable String owner, @Nullable String text, @NotNull Collection<String> tags) {
+        this.owner = null == owner ? null : owner.toLowerCase();
+        this.text = null == text || text.isEmpty() ? null : text;
+        final Set<String> lowercaseTags = new TreeSet<>();
+        tags.forEach(tag -> lowercaseTags.add(tag.toLowerCase()));
+        this.tags = Collections.unmodifiableSet(lowercaseTags);
+    }
+
+    /**
+     * @return a query matching all bookmarks
+     */
+    @NotNull
+    public static BookmarkQuery all() {
+        return ALL;
+    }
+
+    /**
+     * creates a query.
+     *
+     * @param owner
+     *         the owner, may be null
+     * @param text
+     *         the text to search in the title, may be null or empty
+     * @param tags
+     *         the tags to match
+     * @return the query
+     */
+    @NotNull
+    public static BookmarkQuery of(@Nullable String owner, @Nullable String text, @NotNull Collection<String> tags) {
+        return new BookmarkQuery(owner, text, tags);
+    }
+
+    @NotNull
+    public static BookmarkQuery ofOwner(@NotNull String owner) {
+        return new BookmarkQuery(owner, null, Collections.emptyList());
+    }
+
+    @Nullable
+    public String getOwner() {
+        return owner;
+    }
+
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    @NotNull
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BookmarkQuery that = (BookmarkQuery) o;
+        return Objects.equals(owner, that.owner) && Objects.equals(text, that.text) && tags.equals(that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(owner, text, tags);
+    }
+
+    @Override
+    public String toString() {
+        return "BookmarkQuery{" +
+                "owner='" + owner + '\'' +
+                ", text='" + text + '\'' +
+                ", tags=" + tags +
+                '}';
+    }
+}
@@ -4,36 +4,85 @@
 package com.sothawo.taboo3.data;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.Stream;
 
 /**
- * Service to manage Bookmarks using an ElasticSearch repository.
+ * Service to manage Bookmarks using the configured {@link BookmarkStore}. Each operation records its duration, the
+ * size of its result and its errors in the actuator metrics named <i>timer.bookmarks.op</i>,
+ * <i>histogram.bookmarks.op.results</i> and <i>meter.bookmarks.op.errors</i>. The selection queries used by the list
+ * view are recorded per query shape, see {@link #shape(BookmarkQuery)}.
+ * <p>
+ * The results of the queries for one owner are kept in an {@link OwnerQueryCache}, so repeated list views do not go
+ * to the store. All changes go through this service, which removes the cached results of the changed bookmarks'
+ * owners.
  *
  * @author P.J. Meisch (pj.meisch@sothawo.com)
  */
 @Component
-public class BookmarkService {
+public class BookmarkService implements PublicMetrics {
 
-    /** the standard spring-data repository. */
-    private final BookmarkRepository bookmarkRepository;
+    private static final Logger logger = LoggerFactory.getLogger(BookmarkService.class);
+
+    /** the interval between two progress messages of an import. */
+    static final int IMPORT_PROGRESS_SECONDS = 10;
+    /** the number of imported bookmarks after which the time for the next progress message is checked. */
+    private static final int IMPORT_PROGRESS_CHECK = 1000;
+
+    /** the store holding the bookmarks. */
+    private final BookmarkStore bookmarkStore;
+    private final OperationMetrics metrics;
+    /** the cache for the results of the owner queries. */
+    private final OwnerQueryCache cache;
+    private final CounterService counterService;
 
     @Autowired
-    public BookmarkService(BookmarkRepository bookmarkRepository) {
-        this.bookmarkRepository = bookmarkRepository;
+    public BookmarkService(BookmarkStore bookmarkStore, CounterService counterService, GaugeService gaugeService,
+                           @Value("${taboo3.cache.max-entries:10000}") int cacheMaxEntries,
+                           @Value("${taboo3.cache.max-mb:64}") int cacheMaxMb) {
+        this.bookmarkStore = bookmarkStore;
+        this.counterService = counterService;
+        this.metrics = new OperationMetrics(counterService, gaugeService, "bookmarks");
+        this.cache = new OwnerQueryCache(cacheMaxEntries, cacheMaxMb * 1024L * 1024L);
     }
 
     /**
      * delete all entries from the repository.
      */
     public void deleteAll() {
-        bookmarkRepository.deleteAll();
+        try {
+            metrics.record("deleteAll", bookmarkStore::deleteAll);
+        } finally {
+            cache.invalidateAll();
+        }
     }
 
     /**
@@ -43,7 +92,81 @@ public class BookmarkService {
      *         the owner
      */
     public void deleteByOwner(@NotNull String owner) {
-        bookmarkRepository.delete(bookmarkRepository.findByOwner(owner));
+        bulkDelete("deleteByOwner", owner, bulkResult -> bookmarkStore.deleteMatching(BookmarkQuery.ofOwner(owner),
+                bulkResult, id -> {
+                }), new BulkResult());
+    }
+
+    /**
+     * deletes the bookmarks of an owner having all the given tags in batches. The bookmarks are not loaded, only the
+     * ids of the matching bookmarks are collected by the store.
+     *
+     * @param owner
+     *         the owner
+     * @param tags
+     *         the tags the bookmarks must have, all bookmarks of the owner are deleted when empty
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with the id of each bookmark before it is deleted; an exception thrown by the tracker stops the
+     *         operation, the batches that were already collected are still deleted
+     * @return the bulkResult with the number of deleted bookmarks as succeeded
+     */
+    @NotNull
+    public BulkResult bulkDeleteByOwnerAndTags(@NotNull String owner, @NotNull Collection<String> tags,
+                                               @NotNull BulkResult bulkResult, @NotNull Consumer<String> tracker) {
+        final BookmarkQuery query = BookmarkQuery.of(owner, null, tags);
+        return bulkDelete("bulkDeleteByOwnerAndTags", owner,
+                result -> bookmarkStore.deleteMatching(query, result, tracker), bulkResult);
+    }
+
+    /**
+     * deletes bookmarks of an owner by their ids in batches. Ids that are not found or belong to another owner are
+     * skipped.
+     *
+     * @param owner
+     *         the owner
+     * @param ids
+     *         the ids of the bookmarks
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with each id before it is deleted, see
+     *         {@link #bulkDeleteByOwnerAndTags(String, Collection, BulkResult, Consumer)}
+     * @return the bulkResult with the number of deleted bookmarks as succeeded
+     */
+    @NotNull
+    public BulkResult bulkDeleteByIds(@NotNull String owner, @NotNull Collection<String> ids,
+                                      @NotNull BulkResult bulkResult, @NotNull Consumer<String> tracker) {
+        return bulkDelete("bulkDeleteByIds", owner,
+                result -> bookmarkStore.deleteByIds(owner, ids, result, tracker), bulkResult);
+    }
+
+    /**
+     * runs a bulk delete of an owner's bookmarks, records it with the number of deleted bookmarks and removes the
+     * owner's cached results afterwards.
+     *
+     * @param operation
+     *         the name of the operation for the metrics
+     * @param owner
+     *         the owner
+     * @param delete
+     *         the delete operation of the store
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the bulkResult
+     */
+    @NotNull
+    private BulkResult bulkDelete(@NotNull String operation, @NotNull String owner,
+                                  @NotNull Consumer<BulkResult> delete, @NotNull BulkResult bulkResult) {
+        try {
+            return metrics.record(operation, () -> {
+                delete.accept(bulkResult);
+                return bulkResult;
+            }, result -> (int) result.getSucceeded());
+        } finally {
+            cache.invalidate(owner.toLowerCase());
+        }
     }
 
     /**
@@ -53,7 +176,11 @@ public class BookmarkService {
      *         the bookmark to save
      */
     public void save(@NotNull Bookmark bookmark) {
-        bookmarkRepository.save(bookmark);
+        try {
+            metrics.record("save", () -> bookmarkStore.save(Collections.singletonList(bookmark)));
+        } finally {
+            cache.invalidate(bookmark.getOwner());
+        }
     }
 
     /**
@@ -63,7 +190,162 @@ public class BookmarkService {
      *         the bookmarks to save
      */
     public void save(@NotNull Iterable<Bookmark> bookmarks) {
-        bookmarkRepository.save(bookmarks);
+        try {
+            metrics.record("saveAll", () -> bookmarkStore.save(bookmarks));
+        } finally {
+            final Set<String> owners = new HashSet<>();
+            bookmarks.forEach(bookmark -> owners.add(bookmark.getOwner()));
+            owners.forEach(cache::invalidate);
+        }
+    }
+
+    /**
+     * saves bookmarks from a stream with bulk requests. The stream is consumed lazily; bookmarks are collected into
+     * batches by the store, so the number of bookmarks held in memory is bounded.
+     *
+     * @param bookmarks
+     *         the bookmarks to save
+     * @return the number of saved and failed bookmarks per batch
+     */
+    @NotNull
+    public BulkResult bulkSave(@NotNull Stream<Bookmark> bookmarks) {
+        return bulkSave(bookmarks, new BulkResult());
+    }
+
+    /**
+     * saves bookmarks from a stream with bulk requests like {@link #bulkSave(Stream)}, adding the outcome of each
+     * batch to the given BulkResult as soon as the batch is finished, so the progress can be watched while saving.
+     *
+     * @param bookmarks
+     *         the bookmarks to save
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the bulkResult
+     */
+    @NotNull
+    public BulkResult bulkSave(@NotNull Stream<Bookmark> bookmarks, @NotNull BulkResult bulkResult) {
+        metrics.record("bulkSave", () -> {
+            try (BulkWriter bulkWriter = openBulkWriter(bulkResult)) {
+                bookmarks.forEach(bulkWriter::add);
+            }
+            return bulkResult;
+        }, result -> (int) (result.getSucceeded() + result.getFailed()));
+        logger.info("bulk save finished: {}", bulkResult);
+        return bulkResult;
+    }
+
+    /**
+     * opens a BulkWriter for saving bookmarks that are produced one by one, possibly by several threads. The writer
+     * must be closed to write the last batch. The cached results of an owner are removed when the owner's first
+     * bookmark is added and again when the writer is closed, as the store may make the changes visible only then.
+     *
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the BulkWriter
+     */
+    @NotNull
+    public BulkWriter openBulkWriter(@NotNull BulkResult bulkResult) {
+        return invalidatingCache(bookmarkStore.openBulkWriter(bulkResult), bulkResult);
+    }
+
+    /**
+     * imports bookmarks from a stream like {@link #bulkSave(Stream)}, but with a writer from
+     * {@link #openImportWriter(BulkResult)}, which is faster for a large number of bookmarks.
+     *
+     * @param bookmarks
+     *         the bookmarks to import
+     * @return the number of saved and failed bookmarks per batch, the duration and the throughput
+     */
+    @NotNull
+    public BulkResult bulkImport(@NotNull Stream<Bookmark> bookmarks) {
+        return bulkImport(bookmarks, new BulkResult());
+    }
+
+    /**
+     * imports bookmarks from a stream like {@link #bulkImport(Stream)}, adding the outcome of each batch to the given
+     * BulkResult as soon as the batch is finished.
+     *
+     * @param bookmarks
+     *         the bookmarks to import
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the bulkResult
+     */
+    @NotNull
+    public BulkResult bulkImport(@NotNull Stream<Bookmark> bookmarks, @NotNull BulkResult bulkResult) {
+        metrics.record("bulkImport", () -> {
+            try (BulkWriter bulkWriter = openImportWriter(bulkResult)) {
+                bookmarks.forEach(bulkWriter::add);
+            }
+            return bulkResult;
+        }, result -> (int) (result.getSucceeded() + result.getFailed()));
+        logger.info("bulk import finished: {}, {} docs/s", bulkResult, (long) bulkResult.getDocsPerSecond());
+        return bulkResult;
+    }
+
+    /**
+     * opens a BulkWriter for importing a large number of bookmarks, the store may suspend work that is not needed
+     * until the import is finished, see {@link BookmarkStore#openImportWriter(BulkResult)}. Cached results are removed
+     * like with {@link #openBulkWriter(BulkResult)}. While the writer is open, the number of added and saved bookmarks
+     * and the throughput are logged every {@value #IMPORT_PROGRESS_SECONDS} seconds; closing the writer sets the
+     * duration of the import in the BulkResult.
+     *
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the BulkWriter
+     */
+    @NotNull
+    public BulkWriter openImportWriter(@NotNull BulkResult bulkResult) {
+        final long start = System.nanoTime();
+        final long progressInterval = TimeUnit.SECONDS.toNanos(IMPORT_PROGRESS_SECONDS);
+        final AtomicLong added = new AtomicLong();
+        final AtomicLong nextProgress = new AtomicLong(start + progressInterval);
+        final BulkWriter writer = invalidatingCache(bookmarkStore.openImportWriter(bulkResult), bulkResult);
+        return new BulkWriter(bookmark -> {
+            writer.add(bookmark);
+            if (added.incrementAndGet() % IMPORT_PROGRESS_CHECK == 0) {
+                final long now = System.nanoTime();
+                final long next = nextProgress.get();
+                if (now >= next && nextProgress.compareAndSet(next, now + progressInterval)) {
+                    final long succeeded = bulkResult.getSucceeded();
+                    logger.info("import progress: {} added, {} saved, {} failed, {} docs/s", added.get(), succeeded,
+                            bulkResult.getFailed(), succeeded * TimeUnit.SECONDS.toNanos(1) / (now - start));
+                }
+            }
+        }, () -> {
+            try {
+                writer.close();
+            } finally {
+                bulkResult.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }, bulkResult);
+    }
+
+    /**
+     * wraps a BulkWriter of the store so that the cached results of an owner are removed when the owner's first
+     * bookmark is added and again when the writer is closed.
+     *
+     * @param storeWriter
+     *         the writer of the store
+     * @param bulkResult
+     *         the object the batch results are added to
+     * @return the wrapping writer
+     */
+    @NotNull
+    private BulkWriter invalidatingCache(@NotNull BulkWriter storeWriter, @NotNull BulkResult bulkResult) {
+        final Set<String> owners = ConcurrentHashMap.newKeySet();
+        return new BulkWriter(bookmark -> {
+            storeWriter.add(bookmark);
+            if (owners.add(bookmark.getOwner())) {
+                cache.invalidate(bookmark.getOwner());
+            }
+        }, () -> {
+            try {
+                storeWriter.close();
+            } finally {
+                owners.forEach(cache::invalidate);
+            }
+        }, bulkResult);
     }
 
     /**
@@ -73,8 +355,7 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findAll() {
-        return StreamSupport.stream(bookmarkRepository.findAll().spliterator(), false)
-                .collect(Collectors.toList());
+        return find("findAll", BookmarkQuery.all());
     }
 
     /**
@@ -84,8 +365,17 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<String> findAllTags() {
-        return StreamSupport.stream(bookmarkRepository.findAll().spliterator(), false).map(Bookmark::getTags)
-                .flatMap(Collection::stream).collect(Collectors.toSet());
+        return findAllTagCounts().keySet();
+    }
+
+    /**
+     * gets all the tags from the repository together with the number of bookmarks having each tag.
+     *
+     * @return map from tag to number of bookmarks, ordered by descending count
+     */
+    @NotNull
+    public Map<String, Long> findAllTagCounts() {
+        return countTags("findAllTagCounts", BookmarkQuery.all());
     }
 
     /**
@@ -97,7 +387,191 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findByOwner(@NotNull String owner) {
-        return bookmarkRepository.findByOwner(owner);
+        return findCached("findByOwner", BookmarkQuery.ofOwner(owner));
+    }
+
+    /**
+     * counts the bookmarks of a given owner.
+     *
+     * @param owner
+     *         the owner
+     * @return the number of bookmarks
+     */
+    public long countByOwner(@NotNull String owner) {
+        final BookmarkQuery query = BookmarkQuery.ofOwner(owner);
+        return metrics.record("countByOwner",
+                () -> cached(query, Arrays.asList("count", query), () -> bookmarkStore.count(query),
+                        count -> 0L, count -> count),
+                count -> (int) Math.min(count, Integer.MAX_VALUE));
+    }
+
+    /**
+     * counts the bookmarks of a given owner having all the given tags.
+     *
+     * @param owner
+     *         the owner
+     * @param tags
+     *         the tags
+     * @return the number of bookmarks
+     */
+    public long countByOwnerAndTags(@NotNull String owner, @NotNull Collection<String> tags) {
+        final BookmarkQuery query = BookmarkQuery.of(owner, null, tags);
+        return metrics.record("countByOwnerAndTags", () -> bookmarkStore.count(query),
+                count -> (int) Math.min(count, Integer.MAX_VALUE));
+    }
+
+    /**
+     * updates all bookmarks of an owner. The bookmarks are streamed from the store, passed to the update
+     * function and written back with bulk requests. The update must not change the owner or the url, as these make
+     * up the id. An exception thrown by the update stops the operation; the batches that were already collected are
+     * still saved.
+     *
+     * @param owner
+     *         the owner
+     * @param update
+     *         function modifying a bookmark
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the bulkResult
+     */
+    @NotNull
+    public BulkResult bulkUpdateByOwner(@NotNull String owner, @NotNull Consumer<Bookmark> update,
+                                        @NotNull BulkResult bulkResult) {
+        try (Stream<Bookmark> bookmarks = streamByOwner(owner)) {
+            return bulkSave(bookmarks.peek(update), bulkResult);
+        }
+    }
+
+    /**
+     * renames tags of an owner's bookmarks, replacing each of the given tags with the new tag. Giving several tags or
+     * a new tag that some bookmarks already have merges the tags. Only the bookmarks having one of the tags are
+     * loaded, one tag after the other, and written back with bulk requests. All the given tags are replaced when a
+     * bookmark is loaded, so each bookmark is changed only once.
+     *
+     * @param owner
+     *         the owner
+     * @param tags
+     *         the tags to rename, the new tag itself is ignored
+     * @param newTag
+     *         the new tag
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with each bookmark before it is changed; an exception thrown by the tracker stops the operation,
+     *         the batches that were already collected are still saved
+     * @return the bulkResult with the number of changed bookmarks
+     */
+    @NotNull
+    public BulkResult renameTags(@NotNull String owner, @NotNull Collection<String> tags, @NotNull String newTag,
+                                 @NotNull BulkResult bulkResult, @NotNull Consumer<Bookmark> tracker) {
+        final String lowerNewTag = newTag.toLowerCase();
+        final Set<String> renamed = tags.stream()
+                .map(String::toLowerCase)
+                .filter(tag -> !tag.equals(lowerNewTag))
+                .collect(Collectors.toCollection(TreeSet::new));
+        return metrics.record("renameTags", () -> {
+            final Consumer<Bookmark> rename = bookmark -> {
+                renamed.forEach(bookmark::removeTag);
+                bookmark.addTag(lowerNewTag);
+            };
+            renamed.forEach(tag -> bulkUpdateByOwnerAndTag(owner, tag, tracker.andThen(rename), bulkResult));
+            return bulkResult;
+        }, result -> (int) result.getSucceeded());
+    }
+
+    /**
+     * removes a tag from all bookmarks of an owner. Only the bookmarks having the tag are loaded and written back
+     * with bulk requests.
+     *
+     * @param owner
+     *         the owner
+     * @param tag
+     *         the tag to remove
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with each bookmark before it is changed, see
+     *         {@link #renameTags(String, Collection, String, BulkResult, Consumer)}
+     * @return the bulkResult with the number of changed bookmarks
+     */
+    @NotNull
+    public BulkResult removeTag(@NotNull String owner, @NotNull String tag, @NotNull BulkResult bulkResult,
+                                @NotNull Consumer<Bookmark> tracker) {
+        final Consumer<Bookmark> remove = bookmark -> bookmark.removeTag(tag);
+        return metrics.record("removeTag",
+                () -> bulkUpdateByOwnerAndTag(owner, tag, tracker.andThen(remove), bulkResult),
+                result -> (int) result.getSucceeded());
+    }
+
+    /**
+     * updates the bookmarks of an owner having a tag like {@link #bulkUpdateByOwner(String, Consumer, BulkResult)}.
+     *
+     * @param owner
+     *         the owner
+     * @param tag
+     *         the tag the bookmarks must have
+     * @param update
+     *         function modifying a bookmark
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the bulkResult
+     */
+    @NotNull
+    private BulkResult bulkUpdateByOwnerAndTag(@NotNull String owner, @NotNull String tag,
+                                               @NotNull Consumer<Bookmark> update, @NotNull BulkResult bulkResult) {
+        try (Stream<Bookmark> bookmarks = bookmarkStore.stream(BookmarkQuery.of(owner, null,
+                Collections.singletonList(tag)))) {
+            return bulkSave(bookmarks.peek(update), bulkResult);
+        }
+    }
+
+    /**
+     * streams all bookmarks for a given owner. The bookmarks are read in batches, so the whole result is never held
+     * in memory. The returned stream must be closed to release the resources of the store.
+     *
+     * @param owner
+     *         the owner
+     * @return the stream of the owner's bookmarks
+     */
+    @NotNull
+    public Stream<Bookmark> streamByOwner(@NotNull String owner) {
+        // only opening the stream is recorded, reading it is driven by the caller
+        return metrics.record("streamByOwner", () -> bookmarkStore.stream(BookmarkQuery.ofOwner(owner)), null);
+    }
+
+    /**
+     * finds the positions and tags of the bookmarks of an owner matching an optional title text and all the given tags,
+     * without loading the whole bookmarks. The result is not cached, it is meant to be kept by the caller.
+     *
+     * @param owner
+     *         the owner
+     * @param text
+     *         the text to search in the title, may be null or empty
+     * @param tags
+     *         the tags to match
+     * @param maxSize
+     *         the maximum number of bookmarks
+     * @return the positions and tags sorted like the pages of the bookmark list, empty if more than maxSize bookmarks
+     * match
+     */
+    @NotNull
+    public Optional<List<BookmarkTags>> findTagsByOwnerAndSelection(@NotNull String owner, @Nullable String text,
+                                                                    @NotNull Collection<String> tags, int maxSize) {
+        final BookmarkQuery query = BookmarkQuery.of(owner, text, tags);
+        return metrics.record("findTagsByOwnerAndSelection." + shape(query),
+                () -> bookmarkStore.findTags(query, maxSize), found -> found.map(List::size).orElse(0));
+    }
+
+    /**
+     * returns the version of an owner's bookmarks. The version changes whenever one of the owner's bookmarks is
+     * changed through this service, so results derived from the bookmarks can be checked for being current.
+     *
+     * @param owner
+     *         the owner
+     * @return the version
+     */
+    public long getOwnerVersion(@NotNull String owner) {
+        return cache.version(owner.toLowerCase());
     }
 
     /**
@@ -107,7 +581,11 @@ public class BookmarkService {
      *         the bookmark to delete
      */
     public void deleteBookmark(@NotNull Bookmark bookmark) {
-        bookmarkRepository.delete(bookmark);
+        try {
+            metrics.record("delete", () -> bookmarkStore.delete(bookmark.getOwner(), bookmark.getId()));
+        } finally {
+            cache.invalidate(bookmark.getOwner());
+        }
     }
 
     /**
@@ -119,20 +597,34 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<String> findAllTagsByOwner(@NotNull String owner) {
-        return StreamSupport.stream(bookmarkRepository.findByOwner(owner).spliterator(), false)
-                .map(Bookmark::getTags).flatMap(Collection::stream).collect(Collectors.toSet());
+        return findAllTagCountsByOwner(owner).keySet();
+    }
+
+    /**
+     * returns all distinct tags from the bookmarks belonging to an owner together with the number of the owner's
+     * bookmarks having each tag.
+     *
+     * @param owner
+     *         the owner
+     * @return map from tag to number of bookmarks, ordered by descending count
+     */
+    @NotNull
+    public Map<String, Long> findAllTagCountsByOwner(@NotNull String owner) {
+        return countTagsCached("findAllTagCountsByOwner", BookmarkQuery.ofOwner(owner));
     }
 
     /**
      * retrievs a Bookmark by its id
      *
+     * @param owner
+     *         the owner
      * @param id
      *         the id
      * @return the bookmark
      */
     @NotNull
-    public Optional<Bookmark> getBookmarkById(@NotNull String id) {
-        return Optional.ofNullable(bookmarkRepository.findOne(id));
+    public Optional<Bookmark> getBookmarkById(@NotNull String owner, @NotNull String id) {
+        return findById(owner, id);
     }
 
     /**
@@ -144,7 +636,7 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findByTitle(@NotNull String text) {
-        return bookmarkRepository.findByTitleContaining(text);
+        return find("findByTitle", BookmarkQuery.of(null, text, Collections.emptyList()));
     }
 
     /**
@@ -158,7 +650,7 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findByOwnerAndTitle(@NotNull String owner, @NotNull String text) {
-        return bookmarkRepository.findByOwnerAndTitleContaining(owner, text);
+        return findCached("findByOwnerAndTitle", BookmarkQuery.of(owner, text, Collections.emptyList()));
     }
 
     /**
@@ -170,11 +662,7 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findByTags(@NotNull Collection<String> tags) {
-        final List<String> lowerCaseTags = tags.stream().map(String::toLowerCase).collect(Collectors.toList());
-        return bookmarkRepository.findByTagsIn(tags).stream()
-                .filter(bookmark -> bookmark.getTags().stream().map(String::toLowerCase).collect(Collectors.toList())
-                        .containsAll(lowerCaseTags))
-                .collect(Collectors.toList());
+        return find("findByTags", BookmarkQuery.of(null, null, tags));
     }
 
     /**
@@ -186,11 +674,7 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findByOwnerAndTags(@NotNull String owner, @NotNull Collection<String> tags) {
-        final List<String> lowerCaseTags = tags.stream().map(String::toLowerCase).collect(Collectors.toList());
-        return bookmarkRepository.findByOwnerAndTagsIn(owner, tags).stream()
-                .filter(bookmark -> bookmark.getTags().stream().map(String::toLowerCase).collect(Collectors.toList())
-                        .containsAll(lowerCaseTags))
-                .collect(Collectors.toList());
+        return findCached("findByOwnerAndTags", BookmarkQuery.of(owner, null, tags));
     }
 
     /**
@@ -204,11 +688,7 @@ public class BookmarkService {
      */
     @NotNull
     public Collection<Bookmark> findByTitleAndTags(@NotNull String text, @NotNull Collection<String> tags) {
-        final List<String> lowerCaseTags = tags.stream().map(String::toLowerCase).collect(Collectors.toList());
-        return bookmarkRepository.findByTitleContainingAndTagsIn(text, tags).stream()
-                .filter(bookmark -> bookmark.getTags().stream().map(String::toLowerCase).collect(Collectors.toList())
-                        .containsAll(lowerCaseTags))
-                .collect(Collectors.toList());
+        return find("findByTitleAndTags", BookmarkQuery.of(null, text, tags));
     }
 
     /**
@@ -225,31 +705,197 @@ public class BookmarkService {
     @NotNull
     public Collection<Bookmark> findByOwnerAndTitleAndTags(@NotNull String owner, @NotNull String text,
                                                            @NotNull Collection<String> tags) {
-        final List<String> lowerCaseTags = tags.stream().map(String::toLowerCase).collect(Collectors.toList());
-        return bookmarkRepository.findByOwnerAndTitleContainingAndTagsIn(owner, text, tags).stream()
-                .filter(bookmark -> bookmark.getTags().stream().map(String::toLowerCase).collect(Collectors.toList())
-                        .containsAll(lowerCaseTags))
-                .collect(Collectors.toList());
+        return findCached("findByOwnerAndTitleAndTags", BookmarkQuery.of(owner, text, tags));
+    }
+
+    /**
+     * returns one page of the bookmarks of an owner matching an optional title text and all the given tags. The
+     * bookmarks are sorted by their title and then by their id as defined by {@link PageCursor#ORDER}, so the pages
+     * are stable between requests.
+     *
+     * @param owner
+     *         the owner
+     * @param text
+     *         the text to search in the title, may be null or empty
+     * @param tags
+     *         the tags to match
+     * @param pageable
+     *         page number and size
+     * @return the page of bookmarks
+     */
+    @NotNull
+    public Page<Bookmark> findByOwnerAndSelection(@NotNull String owner, @Nullable String text,
+                                                  @NotNull Collection<String> tags, @NotNull Pageable pageable) {
+        final BookmarkQuery query = BookmarkQuery.of(owner, text, tags);
+        return metrics.record("findByOwnerAndSelection." + shape(query),
+                () -> cached(query, Arrays.asList("page", query, pageable.getPageNumber(), pageable.getPageSize()),
+                        () -> bookmarkStore.findPage(query, pageable),
+                        page -> OwnerQueryCache.weigh(page.getContent()),
+                        page -> new PageImpl<>(OwnerQueryCache.copy(page.getContent()), pageable,
+                                page.getTotalElements())),
+                Page::getNumberOfElements);
     }
 
     /**
-     * finds a bookmark by its id.
+     * returns the bookmarks of an owner matching an optional title text and all the given tags which come after a
+     * cursor, sorted like {@link #findByOwnerAndSelection(String, String, Collection, Pageable)}. To get the next
+     * slice, the cursor of the last returned bookmark is passed. In contrast to the paged method the cost does not
+     * grow with the position in the result.
      *
+     * @param owner
+     *         the owner
+     * @param text
+     *         the text to search in the title, may be null or empty
+     * @param tags
+     *         the tags to match
+     * @param searchAfter
+     *         the cursor of the last bookmark of the previous slice, null for the first slice
+     * @param size
+     *         the maximum number of bookmarks to return
+     * @return the bookmarks, sorted by title and id
+     */
+    @NotNull
+    public List<Bookmark> findByOwnerAndSelectionAfter(@NotNull String owner, @Nullable String text,
+                                                       @NotNull Collection<String> tags,
+                                                       @Nullable PageCursor searchAfter, int size) {
+        final BookmarkQuery query = BookmarkQuery.of(owner, text, tags);
+        return metrics.record("findByOwnerAndSelectionAfter." + shape(query),
+                () -> cached(query, Arrays.asList("after", query, searchAfter, size),
+                        () -> bookmarkStore.findAfter(query, searchAfter, size), OwnerQueryCache::weigh,
+                        OwnerQueryCache::copy),
+                List::size);
+    }
+
+    /**
+     * returns the tags of all the bookmarks of an owner matching an optional title text and all the given tags,
+     * together with the number of matching bookmarks having each tag.
+     *
+     * @param owner
+     *         the owner
+     * @param text
+     *         the text to search in the title, may be null or empty
+     * @param tags
+     *         the tags to match
+     * @return map from tag to number of bookmarks, ordered by descending count
+     */
+    @NotNull
+    public Map<String, Long> findAllTagCountsByOwnerAndSelection(@NotNull String owner, @Nullable String text,
+                                                                 @NotNull Collection<String> tags) {
+        final BookmarkQuery query = BookmarkQuery.of(owner, text, tags);
+        return countTagsCached("findAllTagCountsByOwnerAndSelection." + shape(query), query);
+    }
+
+    /**
+     * finds bookmarks of an owner by their ids.
+     *
+     * @param owner
+     *         the owner
+     * @param ids
+     *         the ids
+     * @return the bookmarks in the order of the ids, ids that are not found or belong to another owner are skipped
+     */
+    @NotNull
+    public List<Bookmark> findByIds(@NotNull String owner, @NotNull List<String> ids) {
+        return metrics.record("findByIds", () -> bookmarkStore.findByIds(owner, ids), List::size);
+    }
+
+    /**
+     * finds a bookmark of an owner by its id.
+     *
+     * @param owner
+     *         the owner
      * @param id
      *         the id
-     * @return the optional bookmark
+     * @return the optional bookmark, empty if it belongs to another owner
      */
-    public Optional<Bookmark> findById(String id) {
-        return Optional.ofNullable(bookmarkRepository.findOne(id));
+    public Optional<Bookmark> findById(@NotNull String owner, @NotNull String id) {
+        return metrics.record("findById", () -> bookmarkStore.findById(owner, id),
+                found -> found.isPresent() ? 1 : 0);
     }
 
     /**
-     * deletes a bookmark idfentified by its id
+     * deletes a bookmark idfentified by its id. Nothing is deleted if the bookmark belongs to another owner.
      *
+     * @param owner
+     *         the owner
      * @param id
      *         the id
      */
-    public void deleteBookmark(String id) {
-        bookmarkRepository.delete(id);
+    public void deleteBookmark(@NotNull String owner, @NotNull String id) {
+        bookmarkStore.findById(owner, id).ifPresent(this::deleteBookmark);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("bookmarks.cache.size", cache.size()),
+                new Metric<>("bookmarks.cache.bytes", cache.bytes()));
+    }
+
+    @NotNull
+    private Collection<Bookmark> find(@NotNull String operation, @NotNull BookmarkQuery query) {
+        return metrics.record(operation, () -> bookmarkStore.findAll(query), Collection::size);
+    }
+
+    @NotNull
+    private Map<String, Long> countTags(@NotNull String operation, @NotNull BookmarkQuery query) {
+        return metrics.record(operation, () -> bookmarkStore.countTags(query), Map::size);
+    }
+
+    @NotNull
+    private Collection<Bookmark> findCached(@NotNull String operation, @NotNull BookmarkQuery query) {
+        return metrics.record(operation,
+                () -> cached(query, Arrays.asList("all", query), () -> bookmarkStore.findAll(query),
+                        OwnerQueryCache::weigh, OwnerQueryCache::copy),
+                Collection::size);
+    }
+
+    @NotNull
+    private Map<String, Long> countTagsCached(@NotNull String operation, @NotNull BookmarkQuery query) {
+        // the maps are not modified by the callers, so one unmodifiable map can be shared
+        return metrics.record(operation,
+                () -> cached(query, Arrays.asList("tags", query),
+                        () -> Collections.unmodifiableMap(bookmarkStore.countTags(query)),
+                        OwnerQueryCache::weigh, tagCounts -> tagCounts),
+                Map::size);
+    }
+
+    /**
+     * gets the result of an owner query from the cache or the store and records the hit or miss.
+     *
+     * @param query
+     *         the query, must have an owner
+     * @param key
+     *         the key of the query and its parameters
+     * @param loader
+     *         loads the result from the store
+     * @param weigher
+     *         estimates the memory size of the result
+     * @param copier
+     *         copies the result
+     * @param <T>
+     *         the type of the result
+     * @return the result
+     */
+    private <T> T cached(@NotNull BookmarkQuery query, @NotNull List<Object> key, @NotNull Supplier<T> loader,
+                         @NotNull OwnerQueryCache.Weigher<? super T> weigher,
+                         @NotNull OwnerQueryCache.Copier<T> copier) {
+        final OwnerQueryCache.Lookup<T> lookup = cache.get(query.getOwner(), key, loader, weigher, copier);
+        counterService.increment(lookup.isHit() ? "bookmarks.cache.hit" : "bookmarks.cache.miss");
+        return lookup.getValue();
+    }
+
+    /**
+     * builds the name of a query shape, consisting of whether there is a title text and the number of tags, where 3
+     * stands for 3 or more. The text and the tags themselves are not part of the name to keep the number of metrics
+     * small. Example: <i>text.tags2</i>.
+     *
+     * @param query
+     *         the query
+     * @return the shape name
+     */
+    @NotNull
+    static String shape(@NotNull BookmarkQuery query) {
+        return (null == query.getText() ? "notext" : "text") + ".tags" + Math.min(query.getTags().size(), 3);
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The storage below the {@link BookmarkService}. Which implementation is used is configured with the property
+ * <i>taboo3.store.engine</i>: <i>elasticsearch</i> (the default) or <i>log</i>.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public interface BookmarkStore {
+
+    /**
+     * deletes all bookmarks.
+     */
+    void deleteAll();
+
+    /**
+     * deletes the bookmarks matching a query in batches without loading them. The bookmarks that were deleted are
+     * counted as succeeded in the BulkResult. The deleted bookmarks are no longer found when the method returns.
+     *
+     * @param query
+     *         the query
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with the id of each matching bookmark before it is added to a batch. An exception thrown by the
+     *         tracker stops the operation; the batches that were already collected are still deleted.
+     */
+    void deleteMatching(@NotNull BookmarkQuery query, @NotNull BulkResult bulkResult,
+                        @NotNull Consumer<String> tracker);
+
+    /**
+     * deletes bookmarks of an owner in batches. Ids of bookmarks that do not exist or belong to another owner are
+     * skipped and counted neither as succeeded nor as failed in the BulkResult. The deleted bookmarks are no longer
+     * found when the method returns.
+     *
+     * @param owner
+     *         the owner of the bookmarks
+     * @param ids
+     *         the ids of the bookmarks
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with each id before it is added to a batch, see
+     *         {@link #deleteMatching(BookmarkQuery, BulkResult, Consumer)}
+     */
+    void deleteByIds(@NotNull String owner, @NotNull Collection<String> ids, @NotNull BulkResult bulkResult,
+                     @NotNull Consumer<String> tracker);
+
+    /**
+     * deletes a bookmark.
+     *
+     * @param owner
+     *         the owner of the bookmark, stores may use it to locate the bookmark
+     * @param id
+     *         the id of the bookmark
+     */
+    void delete(@NotNull String owner, @NotNull String id);
+
+    /**
+     * saves bookmarks, replacing stored bookmarks with the same id. The bookmarks are visible to queries when the
+     * method returns.
+     *
+     * @param bookmarks
+     *         the bookmarks
+     */
+    void save(@NotNull Iterable<Bookmark> bookmarks);
+
+    /**
+     * opens a writer for saving bookmarks in batches. The bookmarks are visible to queries when the writer is closed.
+     *
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the writer
+     */
+    @NotNull
+    BulkWriter openBulkWriter(@NotNull BulkResult bulkResult);
+
+    /**
+     * opens a writer for importing a large number of bookmarks. It works like {@link #openBulkWriter(BulkResult)}, but
+     * the store may trade the durability or visibility of the single batches for throughput while the writer is open.
+     * Closing the writer, also after a failed batch, restores the normal operation and makes the bookmarks visible to
+     * queries.
+     *
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the writer
+     */
+    @NotNull
+    BulkWriter openImportWriter(@NotNull BulkResult bulkResult);
+
+    /**
+     * @param owner
+     *         the owner
+     * @param id
+     *         the id
+     * @return the bookmark with the id if it belongs to the owner
+     */
+    @NotNull
+    Optional<Bookmark> findById(@NotNull String owner, @NotNull String id);
+
+    /**
+     * @param owner
+     *         the owner
+     * @param ids
+     *         the ids
+     * @return the bookmarks of the owner with the ids in the order of the ids, ids that are not found are skipped
+     */
+    @NotNull
+    List<Bookmark> findByIds(@NotNull String owner, @NotNull List<String> ids);
+
+    /**
+     * @param query
+     *         the query
+     * @return the number of matching bookmarks
+     */
+    long count(@NotNull BookmarkQuery query);
+
+    /**
+     * @param query
+     *         the query
+     * @return all matching bookmarks, in no special order
+     */
+    @NotNull
+    Collection<Bookmark> findAll(@NotNull BookmarkQuery query);
+
+    /**
+     * streams all matching bookmarks without keeping them in memory. The stream must be closed.
+     *
+     * @param query
+     *         the query
+     * @return the stream of bookmarks
+     */
+    @NotNull
+    Stream<Bookmark> stream(@NotNull BookmarkQuery query);
+
+    /**
+     * finds the positions and tags of the matching bookmarks with one query, without loading the whole bookmarks.
+     *
+     * @param query
+     *         the query
+     * @param maxSize
+     *         the maximum number of bookmarks
+     * @return the positions and tags sorted like the pages of {@link #findPage(BookmarkQuery, Pageable)}, empty if
+     * more than maxSize bookmarks match
+     */
+    @NotNull
+    Optional<List<BookmarkTags>> findTags(@NotNull BookmarkQuery query, int maxSize);
+
+    /**
+     * @param query
+     *         the query
+     * @param pageable
+     *         page number and size
+     * @return one page of the matching bookmarks sorted by title and id as defined by {@link PageCursor#ORDER}
+     */
+    @NotNull
+    Page<Bookmark> findPage(@NotNull BookmarkQuery query, @NotNull Pageable pageable);
+
+    /**
+     * @param query
+     *         the query
+     * @param searchAfter
+     *         the position after which the result starts, null to start at the beginning
+     * @param size
+     *         the maximum number of bookmarks
+     * @return the matching bookmarks after searchAfter, sorted like the pages of
+     * {@link #findPage(BookmarkQuery, Pageable)}
+     */
+    @NotNull
+    List<Bookmark> findAfter(@NotNull BookmarkQuery query, @Nullable PageCursor searchAfter, int size);
+
+    /**
+     * counts the tags of the matching bookmarks.
+     *
+     * @param query
+     *         the query
+     * @return map from tag to number of bookmarks, ordered by descending count and then by tag
+     */
+    @NotNull
+    Map<String, Long> countTags(@NotNull BookmarkQuery query);
+}
@@ -0,0 +1,50 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * The position and the tags of a bookmark, all that is needed to narrow a result by tags and to page through it without
+ * loading the whole bookmarks.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public final class BookmarkTags {
+
+    /** the id and sort title of the bookmark. */
+    private final PageCursor position;
+    /** the tags of the bookmark, lowercase. */
+    private final Collection<String> tags;
+
+    public BookmarkTags(@NotNull PageCursor position, @NotNull Collection<String> tags) {
+        this.position = position;
+        this.tags = tags;
+    }
+
+    @NotNull
+    public String getId() {
+        return position.getId();
+    }
+
+    @NotNull
+    public PageCursor getPosition() {
+        return position;
+    }
+
+    @NotNull
+    public Collection<String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return "BookmarkTags{" +
+                "position=" + position +
+                ", tags=" + tags +
+                '}';
+    }
+}
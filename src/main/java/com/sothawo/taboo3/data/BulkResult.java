@@ -0,0 +1,107 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a bulk operation, containing the number of succeeded and failed items for each batch that was sent
+ * to the repository. Batches may be added concurrently.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class BulkResult {
+
+    /** the results of the single batches in the order they completed. */
+    private final List<Batch> batches = new ArrayList<>();
+    /** the time the whole operation took in milliseconds, 0 if it is not known. */
+    private long durationMillis;
+
+    /**
+     * adds the result of a batch.
+     *
+     * @param batch
+     *         the batch result
+     */
+    public synchronized void addBatch(Batch batch) {
+        batches.add(batch);
+    }
+
+    public synchronized List<Batch> getBatches() {
+        return new ArrayList<>(batches);
+    }
+
+    public synchronized long getSucceeded() {
+        return batches.stream().mapToLong(Batch::getSucceeded).sum();
+    }
+
+    public synchronized long getFailed() {
+        return batches.stream().mapToLong(Batch::getFailed).sum();
+    }
+
+    public synchronized long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public synchronized void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return the number of succeeded items per second, 0 if the duration is not known
+     */
+    public synchronized double getDocsPerSecond() {
+        return durationMillis <= 0 ? 0 : getSucceeded() * 1000.0 / durationMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BulkResult{" +
+                "batches=" + batches.size() +
+                ", succeeded=" + getSucceeded() +
+                ", failed=" + getFailed() +
+                ", durationMillis=" + durationMillis +
+                '}';
+    }
+
+    /**
+     * the result of a single batch.
+     */
+    public static class Batch {
+        /** the number of the batch. */
+        private final long id;
+        /** the number of successfully processed items. */
+        private final int succeeded;
+        /** the number of failed items. */
+        private final int failed;
+
+        public Batch(long id, int succeeded, int failed) {
+            this.id = id;
+            this.succeeded = succeeded;
+            this.failed = failed;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return "Batch{" +
+                    "id=" + id +
+                    ", succeeded=" + succeeded +
+                    ", failed=" + failed +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Writes bookmarks to a {@link BookmarkStore} in batches. Bookmarks can be added from several threads; they are
+ * collected into batches which are written when they are full and when the writer is closed. Closing waits until all
+ * batches are finished and makes the bookmarks visible to queries. The outcome of the batches is recorded in the
+ * BulkResult the writer was created with.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class BulkWriter implements AutoCloseable {
+
+    /** takes the bookmarks into the current batch of the store, must be thread safe. */
+    private final Consumer<Bookmark> batcher;
+    /** called when the writer is closed, must write the last batch and wait for all batches. */
+    private final Runnable onClose;
+    /** the result the batch outcomes are added to. */
+    private final BulkResult bulkResult;
+
+    public BulkWriter(@NotNull Consumer<Bookmark> batcher, @NotNull Runnable onClose, @NotNull BulkResult bulkResult) {
+        this.batcher = batcher;
+        this.onClose = onClose;
+        this.bulkResult = bulkResult;
+    }
+
+    /**
+     * adds a bookmark to the current batch.
+     *
+     * @param bookmark
+     *         the bookmark to save
+     */
+    public void add(@NotNull Bookmark bookmark) {
+        batcher.accept(bookmark);
+    }
+
+    @NotNull
+    public BulkResult getBulkResult() {
+        return bulkResult;
+    }
+
+    @Override
+    public void close() {
+        onClose.run();
+    }
+}
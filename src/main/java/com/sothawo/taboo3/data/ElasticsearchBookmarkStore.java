@@ -0,0 +1,754 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.ElasticsearchException;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * BookmarkStore using ElasticSearch. The round trip time of each request to ElasticSearch is recorded in the actuator
+ * metrics as <i>timer.elasticsearch.request</i>, together with <i>histogram.elasticsearch.request.results</i> and
+ * <i>meter.elasticsearch.request.errors</i>, where the request is one of count, search, aggregation, get, index,
+ * delete, bulk and refresh. Opening a scroll is recorded as scroll.
+
+ * <p>
+ * The documents are routed by their owner, so the requests for the bookmarks of one owner only go to one shard. As
+ * spring-data does not pass the routing to searches and index requests, all requests are sent with the client.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+@ConditionalOnProperty(name = "taboo3.store.engine", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchBookmarkStore implements BookmarkStore {
+
+    /** name of the terms aggregation on the tags field. */
+    private static final String AGGREGATION_TAGS = "tags";
+    /** number of documents per shard fetched in one scroll request. */
+    private static final int SCROLL_BATCH_SIZE = 500;
+    /** keep alive of the scroll context between two scroll requests. */
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    /** maximum time to wait for outstanding bulk requests when a bulk operation is finished. */
+    private static final long BULK_AWAIT_MINUTES = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticsearchBookmarkStore.class);
+
+    /** the template, used for the client and for refreshing. */
+    private final ElasticsearchOperations elasticsearchOperations;
+    /** the index, it is set up before the store is used. */
+    private final BookmarkIndex bookmarkIndex;
+    /** maps bookmarks from and to the JSON source of the documents, the same way the template does. */
+    private final EntityMapper entityMapper = new DefaultEntityMapper();
+    /** the number of bookmarks sent in one bulk request. */
+    private final int bulkBatchSize;
+    /** the maximum number of bulk requests that are executed concurrently. */
+    private final int bulkConcurrentRequests;
+    /** the round trip metrics. */
+    private final OperationMetrics metrics;
+
+    @Autowired
+    public ElasticsearchBookmarkStore(ElasticsearchOperations elasticsearchOperations,
+                                      BookmarkIndex bookmarkIndex,
+                                      CounterService counterService, GaugeService gaugeService,
+                                      @Value("${taboo3.bulk.batch-size:1000}") int bulkBatchSize,
+                                      @Value("${taboo3.bulk.concurrent-requests:2}") int bulkConcurrentRequests) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.bookmarkIndex = bookmarkIndex;
+        this.bulkBatchSize = bulkBatchSize;
+        this.bulkConcurrentRequests = bulkConcurrentRequests;
+        this.metrics = new OperationMetrics(counterService, gaugeService, "elasticsearch");
+    }
+
+    @NotNull
+    private Client client() {
+        return elasticsearchOperations.getClient();
+    }
+
+    @Override
+    public void deleteAll() {
+        deleteMatching(BookmarkQuery.all(), new BulkResult(), id -> {
+        });
+    }
+
+    /**
+     * {@inheritDoc} ElasticSearch 2 has no delete by query without a plugin, so the ids of the matching bookmarks are
+     * scrolled and deleted with bulk requests routed by their owner. The scroll does not return the bookmarks, only
+     * the owner is loaded when the query is not restricted to one owner.
+     */
+    @Override
+    public void deleteMatching(@NotNull BookmarkQuery query, @NotNull BulkResult bulkResult,
+                               @NotNull Consumer<String> tracker) {
+        final String owner = query.getOwner();
+        final SearchRequestBuilder searchRequest = prepareSearch(query);
+        if (null == owner) {
+            searchRequest.setFetchSource("owner", null);
+        } else {
+            searchRequest.setFetchSource(false);
+        }
+        try (Stream<DeleteRequest> deleteRequests = scroll(searchRequest, hit -> deleteRequest(hit.getId(),
+                null == owner ? String.valueOf(hit.getSource().get("owner")) : owner))) {
+            deleteInBatches(bulkProcessor -> deleteRequests.forEach(deleteRequest -> {
+                tracker.accept(deleteRequest.id());
+                bulkProcessor.add(deleteRequest);
+            }), bulkResult);
+        }
+    }
+
+    /**
+     * {@inheritDoc} The routing only selects the shard of the owner, which may hold the bookmarks of other owners as
+     * well, so for each batch of ids the ones belonging to the owner are searched first.
+     */
+    @Override
+    public void deleteByIds(@NotNull String owner, @NotNull Collection<String> ids, @NotNull BulkResult bulkResult,
+                            @NotNull Consumer<String> tracker) {
+        final String lowerOwner = owner.toLowerCase();
+        final List<String> batch = new ArrayList<>(bulkBatchSize);
+        deleteInBatches(bulkProcessor -> {
+            try {
+                for (String id : ids) {
+                    tracker.accept(id);
+                    batch.add(id);
+                    if (batch.size() >= bulkBatchSize) {
+                        deleteOwned(lowerOwner, batch, bulkProcessor);
+                    }
+                }
+            } finally {
+                deleteOwned(lowerOwner, batch, bulkProcessor);
+            }
+        }, bulkResult);
+    }
+
+    /**
+     * adds delete requests for those of the given ids that belong to the owner to a BulkProcessor and clears the
+     * ids.
+     *
+     * @param owner
+     *         the lowercase owner
+     * @param ids
+     *         the ids
+     * @param bulkProcessor
+     *         the BulkProcessor
+     */
+    private void deleteOwned(@NotNull String owner, @NotNull List<String> ids, @NotNull BulkProcessor bulkProcessor) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final SearchRequestBuilder searchRequest = prepareSearch(BookmarkQuery.ofOwner(owner))
+                .setPostFilter(QueryBuilders.idsQuery(bookmarkIndex.getType()).addIds(ids))
+                .setFetchSource(false)
+                .setSize(ids.size());
+        for (SearchHit hit : metrics.record("search", searchRequest::get, r -> r.getHits().getHits().length)
+                .getHits().getHits()) {
+            bulkProcessor.add(deleteRequest(hit.getId(), owner));
+        }
+        ids.clear();
+    }
+
+    /**
+     * sends delete requests with a BulkProcessor and refreshes the index when all of them are finished, also when
+     * adding the requests throws an exception.
+     *
+     * @param producer
+     *         adds the delete requests to the BulkProcessor
+     * @param bulkResult
+     *         the object to add the batch results to
+     */
+    private void deleteInBatches(@NotNull Consumer<BulkProcessor> producer, @NotNull BulkResult bulkResult) {
+        final BulkProcessor bulkProcessor = createBulkProcessor(bulkResult);
+        try {
+            producer.accept(bulkProcessor);
+        } finally {
+            awaitClose(bulkProcessor);
+            metrics.record("refresh", () -> elasticsearchOperations.refresh(bookmarkIndex.getName()));
+        }
+    }
+
+    /**
+     * builds the request to delete a bookmark, routed by its owner.
+     *
+     * @param id
+     *         the id of the bookmark
+     * @param owner
+     *         the lowercase owner
+     * @return the request
+     */
+    @NotNull
+    private DeleteRequest deleteRequest(@NotNull String id, @NotNull String owner) {
+        return new DeleteRequest(bookmarkIndex.getName(), bookmarkIndex.getType(), id).routing(owner);
+    }
+
+    @Override
+    public void delete(@NotNull String owner, @NotNull String id) {
+        metrics.record("delete", () -> client()
+                .prepareDelete(bookmarkIndex.getName(), bookmarkIndex.getType(), id)
+                .setRouting(owner.toLowerCase())
+                .setRefresh(true)
+                .get());
+    }
+
+    /**
+     * {@inheritDoc} The bookmarks are sent in one bulk request that refreshes the index.
+     */
+    @Override
+    public void save(@NotNull Iterable<Bookmark> bookmarks) {
+        final BulkRequestBuilder bulkRequest = client().prepareBulk().setRefresh(true);
+        bookmarks.forEach(bookmark -> bulkRequest.add(indexRequest(bookmark)));
+        if (bulkRequest.numberOfActions() == 0) {
+            return;
+        }
+        final BulkResponse response = metrics.record("index", bulkRequest::get, r -> r.getItems().length);
+        if (response.hasFailures()) {
+            throw new ElasticsearchException("saving bookmarks failed: " + response.buildFailureMessage());
+        }
+    }
+
+    /**
+     * builds the request to index a bookmark, routed by its owner.
+     *
+     * @param bookmark
+     *         the bookmark
+     * @return the request
+     */
+    @NotNull
+    private IndexRequest indexRequest(@NotNull Bookmark bookmark) {
+        try {
+            return new IndexRequest(bookmarkIndex.getName(), bookmarkIndex.getType(), bookmark.getId())
+                    .routing(bookmark.getOwner())
+                    .source(entityMapper.mapToString(bookmark));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc} The writer uses the configured batch size and concurrency; closing it refreshes the index.
+     */
+    @NotNull
+    @Override
+    public BulkWriter openBulkWriter(@NotNull BulkResult bulkResult) {
+        final BulkProcessor bulkProcessor = createBulkProcessor(bulkResult);
+        return new BulkWriter(bookmark -> bulkProcessor.add(indexRequest(bookmark)), () -> {
+            awaitClose(bulkProcessor);
+            metrics.record("refresh", () -> elasticsearchOperations.refresh(bookmarkIndex.getName()));
+        }, bulkResult);
+    }
+
+    /**
+     * {@inheritDoc} While the writer is open, the index is in import mode without periodic refreshes and replicas, see
+     * {@link BookmarkIndex#beginImport()}. Closing the writer restores the settings, even if a batch failed, and
+     * refreshes the index.
+     */
+    @NotNull
+    @Override
+    public BulkWriter openImportWriter(@NotNull BulkResult bulkResult) {
+        bookmarkIndex.beginImport();
+        final BulkProcessor bulkProcessor = createBulkProcessor(bulkResult);
+        return new BulkWriter(bookmark -> bulkProcessor.add(indexRequest(bookmark)), () -> {
+            try {
+                awaitClose(bulkProcessor);
+            } finally {
+                try {
+                    bookmarkIndex.endImport();
+                } finally {
+                    metrics.record("refresh", () -> elasticsearchOperations.refresh(bookmarkIndex.getName()));
+                }
+            }
+        }, bulkResult);
+    }
+
+    /**
+     * creates a BulkProcessor with the configured batch size and concurrency that records the outcome of each batch
+     * in a BulkResult. The time between sending a batch and getting its response is recorded as bulk request.
+     *
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @return the BulkProcessor
+     */
+    @NotNull
+    private BulkProcessor createBulkProcessor(@NotNull BulkResult bulkResult) {
+        final ConcurrentMap<Long, Long> startTimes = new ConcurrentHashMap<>();
+        return BulkProcessor.builder(client(), new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+                logger.debug("sending batch {} with {} actions", executionId, request.numberOfActions());
+                startTimes.put(executionId, System.nanoTime());
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                final int failed = (int) Arrays.stream(response.getItems()).filter(BulkItemResponse::isFailed).count();
+                if (failed > 0) {
+                    logger.warn("batch {}: {}", executionId, response.buildFailureMessage());
+                }
+                // deleting a document that does not exist is no failure, but it is not counted as succeeded
+                final int notFound = (int) Arrays.stream(response.getItems())
+                        .filter(item -> !item.isFailed() && item.getResponse() instanceof DeleteResponse)
+                        .filter(item -> !((DeleteResponse) item.getResponse()).isFound())
+                        .count();
+                bulkResult.addBatch(new BulkResult.Batch(executionId, request.numberOfActions() - failed - notFound,
+                        failed));
+                recordBulk(executionId, request);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                logger.warn("batch {} failed", executionId, failure);
+                bulkResult.addBatch(new BulkResult.Batch(executionId, 0, request.numberOfActions()));
+                metrics.recordError("bulk");
+                recordBulk(executionId, request);
+            }
+
+            private void recordBulk(long executionId, BulkRequest request) {
+                final Long start = startTimes.remove(executionId);
+                if (null != start) {
+                    metrics.recordDuration("bulk", System.nanoTime() - start);
+                }
+                metrics.recordResults("bulk", request.numberOfActions());
+            }
+        })
+                .setBulkActions(bulkBatchSize)
+                .setConcurrentRequests(bulkConcurrentRequests)
+                .build();
+    }
+
+    /**
+     * flushes a BulkProcessor and waits until all its requests are finished.
+     *
+     * @param bulkProcessor
+     *         the BulkProcessor to close
+     */
+    private void awaitClose(@NotNull BulkProcessor bulkProcessor) {
+        try {
+            if (!bulkProcessor.awaitClose(BULK_AWAIT_MINUTES, TimeUnit.MINUTES)) {
+                logger.warn("bulk requests not finished after {} minutes", BULK_AWAIT_MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Optional<Bookmark> findById(@NotNull String owner, @NotNull String id) {
+        final String lowerOwner = owner.toLowerCase();
+        final GetResponse response = metrics.record("get", () -> client()
+                .prepareGet(bookmarkIndex.getName(), bookmarkIndex.getType(), id)
+                .setRouting(lowerOwner)
+                .get(), r -> r.isExists() ? 1 : 0);
+        return response.isExists()
+                ? Optional.of(toBookmark(response.getSourceAsString())).filter(b -> lowerOwner.equals(b.getOwner()))
+                : Optional.empty();
+    }
+
+    /**
+     * {@inheritDoc} The bookmarks are loaded with one multi get request.
+     */
+    @NotNull
+    @Override
+    public List<Bookmark> findByIds(@NotNull String owner, @NotNull List<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final String lowerOwner = owner.toLowerCase();
+        final MultiGetRequestBuilder multiGetRequest = client().prepareMultiGet();
+        ids.forEach(id -> multiGetRequest.add(
+                new MultiGetRequest.Item(bookmarkIndex.getName(), bookmarkIndex.getType(), id).routing(lowerOwner)));
+        final List<Bookmark> bookmarks = new ArrayList<>(ids.size());
+        // the responses are in the order of the requested ids
+        for (MultiGetItemResponse item : metrics.record("get", multiGetRequest::get, null)) {
+            if (!item.isFailed() && item.getResponse().isExists()) {
+                final Bookmark bookmark = toBookmark(item.getResponse().getSourceAsString());
+                if (lowerOwner.equals(bookmark.getOwner())) {
+                    bookmarks.add(bookmark);
+                }
+            }
+        }
+        metrics.recordResults("get", bookmarks.size());
+        return bookmarks;
+    }
+
+    @Override
+    public long count(@NotNull BookmarkQuery query) {
+        return metrics.record("count", () -> prepareSearch(query).setSize(0).get(), null).getHits().getTotalHits();
+    }
+
+    /**
+     * {@inheritDoc} Like the derived repository queries, the number of hits is counted first so that all of them are
+     * returned in one page.
+     */
+    @NotNull
+    @Override
+    public Collection<Bookmark> findAll(@NotNull BookmarkQuery query) {
+        final long count = count(query);
+        return search(prepareSearch(query).setSize((int) Math.max(1, count)));
+    }
+
+    /**
+     * {@inheritDoc} The bookmarks are read with the scroll API in batches, so the result is not capped by the maximum
+     * result window. Closing the stream releases the scroll context.
+     */
+    @NotNull
+    @Override
+    public Stream<Bookmark> stream(@NotNull BookmarkQuery query) {
+        return scroll(prepareSearch(query), hit -> toBookmark(hit.sourceAsString()));
+    }
+
+    /**
+     * opens a scroll for a search request in index order and streams the mapped hits. The stream must be closed to
+     * release the scroll context.
+     *
+     * @param searchRequest
+     *         the search request
+     * @param mapper
+     *         maps a hit to the stream element
+     * @param <T>
+     *         the element type
+     * @return the stream
+     */
+    @NotNull
+    private <T> Stream<T> scroll(@NotNull SearchRequestBuilder searchRequest, @NotNull Function<SearchHit, T> mapper) {
+        final ScrollSpliterator<T> spliterator =
+                new ScrollSpliterator<>(startScroll(searchRequest.addSort(SortBuilders.fieldSort("_doc"))), mapper);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * executes the first request of a scroll search.
+     *
+     * @param searchRequest
+     *         the search request with its sort order
+     * @return the response with the first batch of hits and the scroll id
+     */
+    @NotNull
+    private SearchResponse startScroll(@NotNull SearchRequestBuilder searchRequest) {
+        return metrics.record("scroll", () -> searchRequest
+                .setScroll(SCROLL_KEEP_ALIVE)
+                .setSize(SCROLL_BATCH_SIZE)
+                .get(), r -> r.getHits().getHits().length);
+    }
+
+    /**
+     * {@inheritDoc} The hits are scrolled with only the tags and the title in the source. The first response has the total number
+     * of hits, so a result that is too large is dropped after the first batch.
+     */
+    @NotNull
+    @Override
+    public Optional<List<BookmarkTags>> findTags(@NotNull BookmarkQuery query, int maxSize) {
+        final SearchResponse response = startScroll(addListSort(prepareSearch(query)
+                .setFetchSource(new String[]{"tags", "title"}, null)));
+        final ScrollSpliterator<BookmarkTags> spliterator = new ScrollSpliterator<>(response, hit -> {
+            @SuppressWarnings("unchecked")
+            final List<String> tags = (List<String>) hit.getSource().get("tags");
+            return new BookmarkTags(PageCursor.of(hit.getId(), (String) hit.getSource().get("title")),
+                    null == tags ? Collections.emptyList() : tags);
+        });
+        try (Stream<BookmarkTags> bookmarkTags = StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::close)) {
+            return response.getHits().getTotalHits() > maxSize
+                    ? Optional.empty()
+                    : Optional.of(bookmarkTags.collect(Collectors.toList()));
+        }
+    }
+
+    @NotNull
+    @Override
+    public Page<Bookmark> findPage(@NotNull BookmarkQuery query, @NotNull Pageable pageable) {
+        final SearchResponse response = metrics.record("search", () -> addListSort(prepareSearch(query))
+                .setFrom(pageable.getOffset())
+                .setSize(pageable.getPageSize())
+                .get(), r -> r.getHits().getHits().length);
+        return new PageImpl<>(toBookmarks(response), pageable, response.getHits().getTotalHits());
+    }
+
+    /**
+     * {@inheritDoc} ElasticSearch 2 has no search_after, the cursor is a filter on the sort title and the id.
+     */
+    @NotNull
+    @Override
+    public List<Bookmark> findAfter(@NotNull BookmarkQuery query, @Nullable PageCursor searchAfter, int size) {
+        final SearchRequestBuilder searchRequest = addListSort(prepareSearch(query)).setSize(size);
+        if (null != searchAfter) {
+            searchRequest.setQuery(toQueryBuilder(query).filter(afterQuery(searchAfter)));
+        }
+        return search(searchRequest);
+    }
+
+    /**
+     * adds the sort order of the bookmark lists to a search request, see {@link PageCursor#ORDER}. Bookmarks without
+     * a value in the title.sort field are sorted last.
+     *
+     * @param searchRequest
+     *         the search request
+     * @return the search request
+     */
+    @NotNull
+    private SearchRequestBuilder addListSort(@NotNull SearchRequestBuilder searchRequest) {
+        return searchRequest
+                .addSort(SortBuilders.fieldSort("title.sort").order(SortOrder.ASC).missing("_last"))
+                .addSort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+    }
+
+    /**
+     * builds the filter for the bookmarks that come after a cursor in the sort order of the bookmark lists: a greater
+     * title, the same title and a greater id, or no sort title at all. When the cursor has no sort title, only the
+     * bookmarks without sort title and a greater id follow.
+     *
+     * @param cursor
+     *         the cursor
+     * @return the filter
+     */
+    @NotNull
+    private QueryBuilder afterQuery(@NotNull PageCursor cursor) {
+        final QueryBuilder noSortTitle = QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery("title.sort"));
+        final QueryBuilder greaterId = QueryBuilders.rangeQuery("id").gt(cursor.getId());
+        if (null == cursor.getTitle()) {
+            return QueryBuilders.boolQuery().filter(noSortTitle).filter(greaterId);
+        }
+        return QueryBuilders.boolQuery()
+                .should(QueryBuilders.rangeQuery("title.sort").gt(cursor.getTitle()))
+                .should(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.termQuery("title.sort", cursor.getTitle()))
+                        .filter(greaterId))
+                .should(noSortTitle)
+                .minimumNumberShouldMatch(1);
+    }
+
+    /**
+     * {@inheritDoc} Runs a terms aggregation on the tags, no documents are returned, only the aggregation buckets.
+     */
+    @NotNull
+    @Override
+    public Map<String, Long> countTags(@NotNull BookmarkQuery query) {
+        final Terms terms = metrics.record("aggregation", () -> prepareSearch(query)
+                .setSize(0)
+                // size 0 returns all buckets
+                .addAggregation(AggregationBuilders.terms(AGGREGATION_TAGS).field("tags").size(0))
+                .get()
+                .getAggregations()
+                .<Terms>get(AGGREGATION_TAGS), result -> result.getBuckets().size());
+        final Map<String, Long> tagCounts = new LinkedHashMap<>();
+        terms.getBuckets().forEach(bucket -> tagCounts.put(bucket.getKeyAsString(), bucket.getDocCount()));
+        return tagCounts;
+    }
+
+    /**
+     * prepares a search request for a BookmarkQuery. When the query has an owner, the request is routed to the shard
+     * with the owner's bookmarks.
+     *
+     * @param query
+     *         the query
+     * @return the search request
+     */
+    @NotNull
+    private SearchRequestBuilder prepareSearch(@NotNull BookmarkQuery query) {
+        final SearchRequestBuilder searchRequest = client().prepareSearch(bookmarkIndex.getName())
+                .setTypes(bookmarkIndex.getType())
+                .setQuery(toQueryBuilder(query));
+        if (null != query.getOwner()) {
+            searchRequest.setRouting(query.getOwner());
+        }
+        return searchRequest;
+    }
+
+    /**
+     * executes a search request and records it as search.
+     *
+     * @param searchRequest
+     *         the request
+     * @return the found bookmarks
+     */
+    @NotNull
+    private List<Bookmark> search(@NotNull SearchRequestBuilder searchRequest) {
+        return toBookmarks(metrics.record("search", searchRequest::get, r -> r.getHits().getHits().length));
+    }
+
+    @NotNull
+    private List<Bookmark> toBookmarks(@NotNull SearchResponse response) {
+        final SearchHit[] hits = response.getHits().getHits();
+        final List<Bookmark> bookmarks = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            bookmarks.add(toBookmark(hit.sourceAsString()));
+        }
+        return bookmarks;
+    }
+
+    @NotNull
+    private Bookmark toBookmark(@NotNull String source) {
+        try {
+            return entityMapper.mapToObject(source, Bookmark.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * builds the ElasticSearch query for a BookmarkQuery: a filter on the owner, a query on the title and one term
+     * filter per tag, so that only bookmarks having all the tags match.
+     *
+     * @param query
+     *         the query
+     * @return the ElasticSearch query
+     */
+    @NotNull
+    private BoolQueryBuilder toQueryBuilder(@NotNull BookmarkQuery query) {
+        final BoolQueryBuilder queryBuilder = QueryBuilders.boolQuery();
+        if (null != query.getOwner()) {
+            queryBuilder.filter(ownerQuery(query.getOwner()));
+        }
+        if (null != query.getText()) {
+            queryBuilder.must(titleQuery(query.getText()));
+        }
+        query.getTags().forEach(tag -> queryBuilder.filter(QueryBuilders.termQuery("tags", tag)));
+        return queryBuilder;
+    }
+
+    /**
+     * builds the query searching for a text contained in the title. Each word of the text must be contained in a word
+     * of the title. The words are looked up in the ngram subfield of the title, which has all substrings of the title
+     * words with at least two characters, so no wildcard query scanning the terms is needed. Words longer than the
+     * longest ngram are truncated to its length, single character words are dropped.
+     *
+     * @param text
+     *         the text to search, non-word characters separate words
+     * @return the query
+     */
+    @NotNull
+    private QueryBuilder titleQuery(@NotNull String text) {
+        return QueryBuilders.matchQuery("title.ngram", text)
+                .operator(MatchQueryBuilder.Operator.AND)
+                .zeroTermsQuery(MatchQueryBuilder.ZeroTermsQuery.ALL);
+    }
+
+    /**
+     * builds the query restricting a search to the bookmarks of an owner. The owner is needed in the query as well as
+     * in the routing, as a shard holds the bookmarks of more than one owner.
+     *
+     * @param owner
+     *         the owner in lowercase, the owner field is not analyzed
+     * @return the query
+     */
+    @NotNull
+    private QueryBuilder ownerQuery(@NotNull String owner) {
+        return QueryBuilders.termQuery("owner", owner);
+    }
+
+    /**
+     * Spliterator over the hits of a scroll search, fetching the next batch when the current one is consumed. Closing
+     * it releases the scroll context.
+     *
+     * @param <T>
+     *         the type the hits are mapped to
+     */
+    private final class ScrollSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        /** maps a hit to the returned element. */
+        private final Function<SearchHit, T> mapper;
+        /** the current scroll id, null when the scroll is finished and released. */
+        private String scrollId;
+        /** the hits of the current batch. */
+        private SearchHit[] hits;
+        /** index of the next hit to return. */
+        private int next;
+        /** the number of hits that are not yet returned, when it is 0 no further batch needs to be fetched. */
+        private long remaining;
+
+        private ScrollSpliterator(@NotNull SearchResponse response, @NotNull Function<SearchHit, T> mapper) {
+            super(response.getHits().getTotalHits(), Spliterator.NONNULL);
+            this.mapper = mapper;
+            this.scrollId = response.getScrollId();
+            this.hits = response.getHits().getHits();
+            this.remaining = response.getHits().getTotalHits();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (next == hits.length) {
+                if (hits.length == 0 || remaining <= 0 || null == scrollId) {
+                    close();
+                    return false;
+                }
+                final SearchResponse response = client().prepareSearchScroll(scrollId)
+                        .setScroll(SCROLL_KEEP_ALIVE)
+                        .get();
+                scrollId = response.getScrollId();
+                hits = response.getHits().getHits();
+                next = 0;
+                if (hits.length == 0) {
+                    close();
+                    return false;
+                }
+            }
+            remaining--;
+            action.accept(mapper.apply(hits[next++]));
+            return true;
+        }
+
+        private void close() {
+            if (null != scrollId) {
+                client().prepareClearScroll().addScrollId(scrollId).get();
+                scrollId = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * The result of checking whether the url of a bookmark can be reached.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class LinkCheck {
+
+    /** the http status of the final response, 0 if no response was received. */
+    private int status;
+    /** the time for the check including redirects in milliseconds. */
+    private long latencyMillis;
+    /** the url the bookmark's url finally redirects to, null if there was no redirect. */
+    private String redirectUrl;
+    /** the time of the check in milliseconds since the epoch. */
+    private long checkedAt;
+    /** the error message if no response was received. */
+    private String error;
+
+    public LinkCheck() {
+    }
+
+    public LinkCheck(int status, long latencyMillis, String redirectUrl, long checkedAt, String error) {
+        this.status = status;
+        this.latencyMillis = latencyMillis;
+        this.redirectUrl = redirectUrl;
+        this.checkedAt = checkedAt;
+        this.error = error;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public String getRedirectUrl() {
+        return redirectUrl;
+    }
+
+    public void setRedirectUrl(String redirectUrl) {
+        this.redirectUrl = redirectUrl;
+    }
+
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public void setCheckedAt(long checkedAt) {
+        this.checkedAt = checkedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * a link is healthy when the final response has a 2xx status.
+     *
+     * @return true if the link is healthy
+     */
+    @JsonIgnore
+    public boolean isHealthy() {
+        return status >= 200 && status < 300;
+    }
+
+    @Override
+    public String toString() {
+        return "LinkCheck{" +
+                "status=" + status +
+                ", latencyMillis=" + latencyMillis +
+                ", redirectUrl='" + redirectUrl + '\'' +
+                ", checkedAt=" + checkedAt +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Records the duration, the result size and the errors of operations with the actuator metric services. For an
+ * operation <i>op</i> and the prefix <i>p</i> the metrics are <i>timer.p.op</i> in milliseconds,
+ * <i>histogram.p.op.results</i> and <i>meter.p.op.errors</i>. With Dropwizard metrics on the classpath timers and
+ * histograms keep percentiles and meters keep rates.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class OperationMetrics {
+
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+    private final String prefix;
+
+    public OperationMetrics(@NotNull CounterService counterService, @NotNull GaugeService gaugeService,
+                            @NotNull String prefix) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.prefix = prefix;
+    }
+
+    /**
+     * runs an operation and records its duration, the size of its result and whether it failed.
+     *
+     * @param operation
+     *         the name of the operation
+     * @param action
+     *         the operation
+     * @param resultSize
+     *         returns the size of the result, null when the size is not recorded
+     * @param <T>
+     *         the type of the result
+     * @return the result
+     */
+    public <T> T record(@NotNull String operation, @NotNull Supplier<T> action,
+                        @Nullable ToIntFunction<? super T> resultSize) {
+        final long start = System.nanoTime();
+        try {
+            final T result = action.get();
+            if (null != resultSize) {
+                gaugeService.submit("histogram." + prefix + '.' + operation + ".results",
+                        resultSize.applyAsInt(result));
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            counterService.increment("meter." + prefix + '.' + operation + ".errors");
+            throw e;
+        } finally {
+            recordDuration(operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * runs an operation without result and records its duration and whether it failed.
+     *
+     * @param operation
+     *         the name of the operation
+     * @param action
+     *         the operation
+     */
+    public void record(@NotNull String operation, @NotNull Runnable action) {
+        record(operation, () -> {
+            action.run();
+            return null;
+        }, null);
+    }
+
+    /**
+     * records the duration of an operation that was measured by the caller.
+     *
+     * @param operation
+     *         the name of the operation
+     * @param nanos
+     *         the duration in nanoseconds
+     */
+    public void recordDuration(@NotNull String operation, long nanos) {
+        gaugeService.submit("timer." + prefix + '.' + operation, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * records the size of a result for an operation that was measured by the caller.
+     *
+     * @param operation
+     *         the name of the operation
+     * @param size
+     *         the size
+     */
+    public void recordResults(@NotNull String operation, int size) {
+        gaugeService.submit("histogram." + prefix + '.' + operation + ".results", size);
+    }
+
+    /**
+     * records an error of an operation that was measured by the caller.
+     *
+     * @param operation
+     *         the name of the operation
+     */
+    public void recordError(@NotNull String operation) {
+        counterService.increment("meter." + prefix + '.' + operation + ".errors");
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache for the results of queries that are restricted to one owner. The least recently used entries are
+ * evicted when either the number of entries or the estimated memory of the cached results exceeds its maximum.
+ * <p>
+ * The entries of an owner are removed when one of the owner's bookmarks is changed. The cache keeps a version for
+ * each owner that changes with each invalidation of the owner's entries; a result that was loaded while the version
+ * changed is returned to the caller but not stored, as it may miss the change. The version is available to callers
+ * that keep results derived from the owner's bookmarks themselves.
+ * <p>
+ * The cached bookmarks are never handed out, callers get copies, as bookmarks are mutable.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+class OwnerQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(OwnerQueryCache.class);
+
+    /** estimated size of an entry without its value, including key and map nodes. */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    /** the maximum number of entries. */
+    private final int maxEntries;
+    /** the maximum estimated size of the cached values in bytes. */
+    private final long maxBytes;
+
+    /** the entries in access order, guarded by this. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** the keys of the entries for each owner, guarded by this. */
+    private final Map<String, Set<Key>> keysByOwner = new HashMap<>();
+    /** the number of invalidations, guarded by this. */
+    private long invalidations;
+    /** the value of invalidations when an owner's entries were last removed, guarded by this. */
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+    /** the value of invalidations when all entries were last removed, guarded by this. */
+    private long allInvalidatedAt;
+    /** the estimated size of all entries, guarded by this. */
+    private long bytes;
+
+    /**
+     * @param maxEntries
+     *         the maximum number of entries, 0 disables the cache
+     * @param maxBytes
+     *         the maximum estimated size of the entries in bytes, 0 disables the cache
+     */
+    OwnerQueryCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("maxEntries and maxBytes must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * the result of a lookup.
+     *
+     * @param <T>
+     *         the type of the value
+     */
+    static final class Lookup<T> {
+        private final T value;
+        private final boolean hit;
+
+        private Lookup(T value, boolean hit) {
+            this.value = value;
+            this.hit = hit;
+        }
+
+        T getValue() {
+            return value;
+        }
+
+        boolean isHit() {
+            return hit;
+        }
+    }
+
+    /**
+     * returns a cached value or loads and caches it. The loader is called outside of any lock.
+     *
+     * @param owner
+     *         the owner the query is restricted to
+     * @param key
+     *         the key identifying the query and its parameters
+     * @param loader
+     *         loads the value on a miss
+     * @param weigher
+     *         estimates the memory size of a value in bytes
+     * @param copier
+     *         creates a copy of a value that can be handed to the caller
+     * @param <T>
+     *         the type of the value
+     * @return the value with the information whether it came from the cache
+     */
+    @NotNull
+    <T> Lookup<T> get(@NotNull String owner, @NotNull Object key, @NotNull Supplier<T> loader,
+                      @NotNull Weigher<? super T> weigher, @NotNull Copier<T> copier) {
+        final Key cacheKey = new Key(owner, key);
+        final long version;
+        final T cached;
+        synchronized (this) {
+            final Entry entry = entries.get(cacheKey);
+            if (null != entry) {
+                @SuppressWarnings("unchecked")
+                final T value = (T) entry.value;
+                cached = value;
+            } else {
+                cached = null;
+            }
+            version = version(owner);
+        }
+        if (null != cached) {
+            // cached values are never modified, so they can be copied outside of the lock
+            return new Lookup<>(copier.copy(cached), true);
+        }
+
+        final T value = loader.get();
+        if (maxEntries == 0 || maxBytes == 0 || null == value) {
+            return new Lookup<>(value, false);
+        }
+        final long size = ENTRY_OVERHEAD + weigher.weigh(value);
+        if (size > maxBytes) {
+            logger.debug("not caching result of {} bytes for {}", size, owner);
+            return new Lookup<>(value, false);
+        }
+        // the caller may modify the returned value, so the cache keeps a copy
+        final T cachedValue = copier.copy(value);
+        synchronized (this) {
+            if (version(owner) == version) {
+                final Entry previous = entries.put(cacheKey, new Entry(cachedValue, size));
+                if (null != previous) {
+                    bytes -= previous.size;
+                }
+                keysByOwner.computeIfAbsent(owner, o -> new HashSet<>()).add(cacheKey);
+                bytes += size;
+                evict();
+            }
+        }
+        return new Lookup<>(value, false);
+    }
+
+    /**
+     * removes all entries of an owner.
+     *
+     * @param owner
+     *         the owner
+     */
+    synchronized void invalidate(@Nullable String owner) {
+        if (null == owner) {
+            return;
+        }
+        invalidatedAt.put(owner, ++invalidations);
+        final Set<Key> keys = keysByOwner.remove(owner);
+        if (null != keys) {
+            keys.forEach(key -> bytes -= entries.remove(key).size);
+        }
+    }
+
+    /**
+     * removes all entries.
+     */
+    synchronized void invalidateAll() {
+        allInvalidatedAt = ++invalidations;
+        invalidatedAt.clear();
+        entries.clear();
+        keysByOwner.clear();
+        bytes = 0;
+    }
+
+    /**
+     * returns the version of an owner's data. The version changes when the owner's entries are invalidated.
+     *
+     * @param owner
+     *         the owner
+     * @return the version
+     */
+    synchronized long version(@NotNull String owner) {
+        return Math.max(invalidatedAt.getOrDefault(owner, 0L), allInvalidatedAt);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated size of the entries in bytes
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            final Map.Entry<Key, Entry> eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.getValue().size;
+            final Set<Key> keys = keysByOwner.get(eldest.getKey().owner);
+            keys.remove(eldest.getKey());
+            if (keys.isEmpty()) {
+                keysByOwner.remove(eldest.getKey().owner);
+            }
+        }
+    }
+
+    /**
+     * estimates the memory size of a bookmark in bytes.
+     *
+     * @param bookmark
+     *         the bookmark
+     * @return the estimated size
+     */
+    static long weigh(@NotNull Bookmark bookmark) {
+        long size = 200 + 2L * (length(bookmark.getUrl()) + length(bookmark.getTitle()));
+        for (String tag : bookmark.getTags()) {
+            size += 64 + 2L * tag.length();
+        }
+        if (null != bookmark.getLinkCheck()) {
+            size += 100 + 2L * (length(bookmark.getLinkCheck().getRedirectUrl())
+                    + length(bookmark.getLinkCheck().getError()));
+        }
+        return size;
+    }
+
+    /**
+     * estimates the memory size of a collection of bookmarks in bytes.
+     *
+     * @param bookmarks
+     *         the bookmarks
+     * @return the estimated size
+     */
+    static long weigh(@NotNull Collection<Bookmark> bookmarks) {
+        long size = 64 + 8L * bookmarks.size();
+        for (Bookmark bookmark : bookmarks) {
+            size += weigh(bookmark);
+        }
+        return size;
+    }
+
+    /**
+     * estimates the memory size of a map from tags to counts in bytes.
+     *
+     * @param tagCounts
+     *         the map
+     * @return the estimated size
+     */
+    static long weigh(@NotNull Map<String, Long> tagCounts) {
+        long size = 64;
+        for (String tag : tagCounts.keySet()) {
+            size += 120 + 2L * tag.length();
+        }
+        return size;
+    }
+
+    /**
+     * copies a bookmark. The LinkCheck is shared, it is replaced and never modified when a bookmark is checked.
+     *
+     * @param bookmark
+     *         the bookmark
+     * @return the copy
+     */
+    @NotNull
+    static Bookmark copy(@NotNull Bookmark bookmark) {
+        final Bookmark copy = new Bookmark();
+        copy.setOwner(bookmark.getOwner());
+        copy.setUrl(bookmark.getUrl());
+        copy.setTitle(bookmark.getTitle());
+        bookmark.getTags().forEach(copy::addTag);
+        copy.setLinkCheck(bookmark.getLinkCheck());
+        copy.setId(bookmark.getId());
+        return copy;
+    }
+
+    /**
+     * copies a list of bookmarks.
+     *
+     * @param bookmarks
+     *         the bookmarks
+     * @return list with copies of the bookmarks
+     */
+    @NotNull
+    static List<Bookmark> copy(@NotNull Collection<Bookmark> bookmarks) {
+        final List<Bookmark> copy = new ArrayList<>(bookmarks.size());
+        bookmarks.forEach(bookmark -> copy.add(copy(bookmark)));
+        return copy;
+    }
+
+    private static int length(@Nullable String s) {
+        return null == s ? 0 : s.length();
+    }
+
+    /**
+     * estimates the memory size of a cached value.
+     *
+     * @param <T>
+     *         the type of the value
+     */
+    @FunctionalInterface
+    interface Weigher<T> {
+        long weigh(@NotNull T value);
+    }
+
+    /**
+     * copies a cached value.
+     *
+     * @param <T>
+     *         the type of the value
+     */
+    @FunctionalInterface
+    interface Copier<T> {
+        @NotNull
+        T copy(@NotNull T value);
+    }
+
+    private static final class Key {
+        private final String owner;
+        private final Object query;
+
+        private Key(String owner, Object query) {
+            this.owner = owner;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return owner.equals(key.owner) && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(owner, query);
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long size;
+
+        private Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
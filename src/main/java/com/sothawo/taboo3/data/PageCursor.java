@@ -0,0 +1,121 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Position of a bookmark in the order of the bookmark lists, which are sorted by title and then by id. Titles longer
+ * than {@link #MAX_SORT_TITLE_LENGTH} characters are not used for sorting, like the <i>title.sort</i> field of the
+ * ElasticSearch mapping ignores them; these bookmarks and the ones without title come after all others, sorted by id.
+ * <p>
+ * A cursor is passed between requests as String: the id, followed by a colon and the sort title if there is one.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public final class PageCursor {
+
+    /** the maximum length of a title that is used for sorting. */
+    public static final int MAX_SORT_TITLE_LENGTH = 256;
+
+    /** the order of the bookmark lists. */
+    public static final Comparator<PageCursor> ORDER =
+            Comparator.comparing(PageCursor::getTitle, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(PageCursor::getId);
+
+    private static final char SEPARATOR = ':';
+
+    private final String id;
+    /** the title used for sorting, null if the title is missing or too long. */
+    private final String title;
+
+    private PageCursor(@NotNull String id, @Nullable String title) {
+        this.id = id;
+        this.title = title;
+    }
+
+    /**
+     * @param id
+     *         the id of the bookmark
+     * @param title
+     *         the title of the bookmark, may be null
+     * @return the cursor of the bookmark
+     */
+    @NotNull
+    public static PageCursor of(@NotNull String id, @Nullable String title) {
+        return new PageCursor(id, null == title || title.length() > MAX_SORT_TITLE_LENGTH ? null : title);
+    }
+
+    /**
+     * @param bookmark
+     *         the bookmark
+     * @return the cursor of the bookmark
+     */
+    @NotNull
+    public static PageCursor of(@NotNull Bookmark bookmark) {
+        return of(bookmark.getId(), bookmark.getTitle());
+    }
+
+    /**
+     * decodes a cursor from its String form.
+     *
+     * @param s
+     *         the String from {@link #encode()}, may be null
+     * @return the cursor, empty if s is null or empty
+     */
+    @NotNull
+    public static Optional<PageCursor> decode(@Nullable String s) {
+        if (null == s || s.isEmpty()) {
+            return Optional.empty();
+        }
+        final int separator = s.indexOf(SEPARATOR);
+        return Optional.of(separator < 0
+                ? new PageCursor(s, null)
+                : of(s.substring(0, separator), s.substring(separator + 1)));
+    }
+
+    /**
+     * @return the String form of this cursor
+     */
+    @NotNull
+    public String encode() {
+        return null == title ? id : id + SEPARATOR + title;
+    }
+
+    @NotNull
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PageCursor that = (PageCursor) o;
+        return Objects.equals(id, that.id) && Objects.equals(title, that.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title);
+    }
+
+    @Override
+    public String toString() {
+        return "PageCursor{" +
+                "id='" + id + '\'' +
+                ", title='" + title + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data.log;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of records which is memory mapped for reading and writing. The file starts with a magic header,
+ * each record consists of its size (type and payload), the type byte, the payload and a CRC32 checksum of type and
+ * payload. The mapped region is larger than the written data and grows by doubling; the unwritten rest is filled with
+ * zeros, so a size of 0 marks the end of the log.
+ * <p>
+ * When the log is opened, the records are scanned up to the first one that is incomplete or has a wrong checksum,
+ * which is what a crash while writing leaves behind. Everything after that is discarded.
+ * <p>
+ * Appending is not thread safe and must be synchronized by the caller. Records can be read concurrently to appending,
+ * as the bytes of a written record never change.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+class BookmarkLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookmarkLog.class);
+
+    /** record type of a saved bookmark. */
+    static final byte TYPE_PUT = 1;
+    /** record type of a deleted bookmark. */
+    static final byte TYPE_DELETE = 2;
+
+    private static final byte[] MAGIC = "TABOO3L1".getBytes(StandardCharsets.US_ASCII);
+    /** size, type and checksum. */
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4;
+
+    private final Path path;
+    private final FileChannel channel;
+    /** the currently mapped region, replaced when it grows. */
+    private volatile MappedByteBuffer buffer;
+    /** the position where the next record is written. */
+    private int position;
+
+    /**
+     * a record found when scanning the log.
+     */
+    interface RecordVisitor {
+        /**
+         * @param offset
+         *         the offset of the record, used to read it later
+         * @param type
+         *         the record type
+         * @param payload
+         *         buffer positioned at the start of the payload, limited to its end
+         */
+        void visit(int offset, byte type, @NotNull ByteBuffer payload);
+    }
+
+    /**
+     * opens or creates a log.
+     *
+     * @param path
+     *         the file
+     * @param initialSize
+     *         the initial size of the mapped region in bytes
+     * @throws IOException
+     *         if the file cannot be opened or is no log
+     */
+    BookmarkLog(@NotNull Path path, int initialSize) throws IOException {
+        this.path = path;
+        if (null != path.getParent()) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            final long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("log file too large: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(Math.max(initialSize, MAGIC.length + RECORD_OVERHEAD), fileSize));
+            if (fileSize == 0) {
+                buffer.put(MAGIC);
+            } else {
+                final byte[] magic = new byte[MAGIC.length];
+                buffer.get(magic);
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new IOException("not a bookmark log: " + path);
+                }
+            }
+            position = MAGIC.length;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * scans all records and sets the position for appending after the last valid record. An invalid tail is
+     * overwritten with zeros.
+     *
+     * @param visitor
+     *         called for each valid record
+     */
+    void replay(@NotNull RecordVisitor visitor) {
+        final ByteBuffer view = view();
+        int offset = MAGIC.length;
+        while (true) {
+            final int payloadLength = validPayloadLength(view, offset);
+            if (payloadLength < 0) {
+                break;
+            }
+            final ByteBuffer payload = range(view.duplicate(), offset + 5, offset + 5 + payloadLength);
+            visitor.visit(offset, view.get(offset + 4), payload);
+            offset += RECORD_OVERHEAD + payloadLength;
+        }
+        position = offset;
+        // the rest must be zero, otherwise parts of it might be taken as records after new records are appended
+        if (!isZero(view, offset)) {
+            logger.warn("discarding invalid data after offset {} of {}", offset, path);
+            zero(offset, view.capacity());
+        }
+    }
+
+    private static boolean isZero(@NotNull ByteBuffer view, int from) {
+        int i = from;
+        for (; i + 8 <= view.capacity(); i += 8) {
+            if (view.getLong(i) != 0) {
+                return false;
+            }
+        }
+        for (; i < view.capacity(); i++) {
+            if (view.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * checks the record at an offset.
+     *
+     * @return the length of the payload or -1 if there is no valid record at the offset
+     */
+    private int validPayloadLength(@NotNull ByteBuffer view, int offset) {
+        if (offset + RECORD_OVERHEAD > view.capacity()) {
+            return -1;
+        }
+        final int size = view.getInt(offset);
+        if (size < 1 || size > view.capacity() - offset - RECORD_OVERHEAD + 1) {
+            return -1;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(range(view.duplicate(), offset + 4, offset + 4 + size));
+        if ((int) crc.getValue() != view.getInt(offset + 4 + size)) {
+            return -1;
+        }
+        return size - 1;
+    }
+
+    /**
+     * appends a record.
+     *
+     * @param type
+     *         the record type
+     * @param payload
+     *         the payload
+     * @return the offset of the record
+     * @throws IOException
+     *         if the log cannot grow
+     */
+    int append(byte type, @NotNull byte[] payload) throws IOException {
+        final int recordSize = RECORD_OVERHEAD + payload.length;
+        ensureCapacity((long) position + recordSize);
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        final ByteBuffer view = view();
+        ((Buffer) view).position(position);
+        view.putInt(payload.length + 1).put(type).put(payload).putInt((int) crc.getValue());
+        final int offset = position;
+        position += recordSize;
+        return offset;
+    }
+
+    /**
+     * reads the payload of a record.
+     *
+     * @param offset
+     *         the offset of the record
+     * @return buffer positioned at the start of the payload, limited to its end
+     */
+    @NotNull
+    ByteBuffer read(int offset) {
+        final ByteBuffer view = view();
+        return range(view, offset + 5, offset + 4 + view.getInt(offset));
+    }
+
+    /**
+     * removes all records.
+     */
+    void clear() {
+        zero(MAGIC.length, position);
+        position = MAGIC.length;
+    }
+
+    /**
+     * @return the number of bytes used by the header and the records
+     */
+    int size() {
+        return position;
+    }
+
+    /**
+     * writes the changes to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @NotNull
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException("log file is full: " + path);
+        }
+        final long newSize = Math.min(Integer.MAX_VALUE, Math.max(required, 2L * buffer.capacity()));
+        logger.debug("growing {} to {} bytes", path, newSize);
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+    }
+
+    private void zero(int from, int to) {
+        final ByteBuffer view = view();
+        final byte[] zeros = new byte[8192];
+        ((Buffer) view).position(from);
+        while (view.position() < to) {
+            view.put(zeros, 0, Math.min(zeros.length, to - view.position()));
+        }
+    }
+
+    /**
+     * returns an independent view of the mapped region. Newer JDKs override duplicate, position and limit in
+     * MappedByteBuffer and ByteBuffer with covariant return types that do not exist on Java 8, so these methods are
+     * called on ByteBuffer and Buffer here.
+     */
+    @NotNull
+    private ByteBuffer view() {
+        return ((ByteBuffer) buffer).duplicate();
+    }
+
+    /**
+     * restricts a buffer to a range.
+     *
+     * @return the buffer, positioned at from and limited to to
+     */
+    @NotNull
+    private static ByteBuffer range(@NotNull ByteBuffer buffer, int from, int to) {
+        ((Buffer) buffer).position(from);
+        ((Buffer) buffer).limit(to);
+        return buffer;
+    }
+}
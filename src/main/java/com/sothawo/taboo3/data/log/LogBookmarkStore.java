@@ -0,0 +1,793 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data.log;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkQuery;
+import com.sothawo.taboo3.data.BookmarkStore;
+import com.sothawo.taboo3.data.BookmarkTags;
+import com.sothawo.taboo3.data.BulkResult;
+import com.sothawo.taboo3.data.BulkWriter;
+import com.sothawo.taboo3.data.PageCursor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BookmarkStore keeping the bookmarks in an append-only, memory mapped {@link BookmarkLog}. Every save appends the
+ * whole bookmark, every delete appends the id. Only the offset of the latest record of each bookmark is kept in memory
+ * together with indexes on owner, tags and the words of the title; they are rebuilt from the log on startup. When
+ * the log contains more outdated than current records, it is compacted on startup.
+ * <p>
+ * A title text matches when each of its words is contained in a word of the title, which is how the ngram title
+ * query of the ElasticSearch store behaves.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+@ConditionalOnProperty(name = "taboo3.store.engine", havingValue = "log")
+public class LogBookmarkStore implements BookmarkStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogBookmarkStore.class);
+
+    /** logs smaller than this are not compacted. */
+    private static final int MIN_COMPACT_SIZE = 1 << 20;
+    /** splits titles into words. */
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /**
+     * the length of the shortest substring in the title substring index, like the ElasticSearch ngrams; shorter words
+     * of a search text are ignored.
+     */
+    private static final int MIN_GRAM = 2;
+    /** the length of the longest substring in the title substring index. */
+    private static final int MAX_GRAM = 10;
+
+    /** the number of bookmarks written in one batch by a BulkWriter. */
+    private final int bulkBatchSize;
+    private final int initialSize;
+
+    /** guards the log and the indexes. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private BookmarkLog log;
+    /** the current bookmarks by id. */
+    private final Map<String, Entry> entries = new HashMap<>();
+    /** the positions of the bookmarks of each owner in the order of the bookmark lists. */
+    private final Map<String, NavigableSet<PageCursor>> ownerIndex = new HashMap<>();
+    /** the ids of the bookmarks having a tag. */
+    private final Map<String, Set<String>> tagIndex = new HashMap<>();
+    /** the ids of the bookmarks having a word in their title. */
+    private final Map<String, Set<String>> titleIndex = new HashMap<>();
+    /** the title words containing a substring, for substrings from MIN_GRAM to MAX_GRAM characters. */
+    private final Map<String, Set<String>> titleGramIndex = new HashMap<>();
+    /** one instance of each owner and tag. */
+    private final Map<String, String> canonicalStrings = new HashMap<>();
+    /** the number of records in the log that are outdated by later records. */
+    private long outdatedRecords;
+
+    /**
+     * what is kept in memory for a bookmark.
+     */
+    private static final class Entry {
+        /** offset of the record in the log. */
+        private final int offset;
+        private final String owner;
+        private final String[] tags;
+        /** id and sort title of the bookmark. */
+        private final PageCursor position;
+
+        private Entry(int offset, String owner, String[] tags, PageCursor position) {
+            this.offset = offset;
+            this.owner = owner;
+            this.tags = tags;
+            this.position = position;
+        }
+    }
+
+    @Autowired
+    public LogBookmarkStore(@Value("${taboo3.store.log.path:tmpdata/bookmarks.log}") String path,
+                            @Value("${taboo3.store.log.initial-size-mb:16}") int initialSizeMb,
+                            @Value("${taboo3.bulk.batch-size:1000}") int bulkBatchSize) throws IOException {
+        this(Paths.get(path), initialSizeMb << 20, bulkBatchSize);
+    }
+
+    LogBookmarkStore(@NotNull Path path, int initialSize, int bulkBatchSize) throws IOException {
+        this.bulkBatchSize = bulkBatchSize;
+        this.initialSize = initialSize;
+        final long start = System.currentTimeMillis();
+        open(path);
+        if (log.size() > MIN_COMPACT_SIZE && outdatedRecords > entries.size()) {
+            compact();
+        }
+        logger.info("opened {} with {} bookmarks in {} ms", path, entries.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * opens the log and builds the indexes from its records.
+     */
+    private void open(@NotNull Path path) throws IOException {
+        log = new BookmarkLog(path, initialSize);
+        entries.clear();
+        ownerIndex.clear();
+        tagIndex.clear();
+        titleIndex.clear();
+        titleGramIndex.clear();
+        canonicalStrings.clear();
+        outdatedRecords = 0;
+        log.replay((offset, type, payload) -> {
+            if (type == BookmarkLog.TYPE_PUT) {
+                final Bookmark bookmark = RecordCodec.decode(payload);
+                if (unindex(bookmark.getId())) {
+                    outdatedRecords++;
+                }
+                index(bookmark, offset);
+            } else if (type == BookmarkLog.TYPE_DELETE) {
+                if (unindex(RecordCodec.decodeId(payload, payload.remaining()))) {
+                    outdatedRecords++;
+                }
+                outdatedRecords++;
+            }
+        });
+    }
+
+    /**
+     * rewrites the log with only the current records and replaces the old log with it.
+     */
+    private void compact() throws IOException {
+        final Path path = log.getPath();
+        final Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        logger.info("compacting {}: {} bookmarks, {} outdated records", path, entries.size(), outdatedRecords);
+        try (BookmarkLog target = new BookmarkLog(compacted, Math.max(initialSize, log.size()))) {
+            for (Entry entry : entries.values()) {
+                final ByteBuffer payload = log.read(entry.offset);
+                final byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                target.append(BookmarkLog.TYPE_PUT, bytes);
+            }
+        }
+        log.close();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(path);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc} The log is emptied, so streams that are not yet consumed must not be used anymore.
+     */
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            log.clear();
+            log.force();
+            entries.clear();
+            ownerIndex.clear();
+            tagIndex.clear();
+            titleIndex.clear();
+            titleGramIndex.clear();
+            canonicalStrings.clear();
+            outdatedRecords = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc} The ids of the matching bookmarks are taken from the indexes, the bookmarks are not read from the
+     * log.
+     */
+    @Override
+    public void deleteMatching(@NotNull BookmarkQuery query, @NotNull BulkResult bulkResult,
+                               @NotNull Consumer<String> tracker) {
+        final List<String> ids;
+        lock.readLock().lock();
+        try {
+            ids = matchingIds(query, null, Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+        deleteInBatches(null, ids, bulkResult, tracker);
+    }
+
+    @Override
+    public void deleteByIds(@NotNull String owner, @NotNull Collection<String> ids, @NotNull BulkResult bulkResult,
+                            @NotNull Consumer<String> tracker) {
+        deleteInBatches(owner.toLowerCase(), ids, bulkResult, tracker);
+    }
+
+    /**
+     * deletes bookmarks in batches that are appended with one lock each and forced to the storage device. Ids that
+     * are not stored or belong to another owner are skipped. When the tracker throws an exception, the collected
+     * batch is deleted before the exception is passed on.
+     *
+     * @param owner
+     *         the lowercase owner the bookmarks must belong to, null for no restriction
+     * @param ids
+     *         the ids of the bookmarks
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param tracker
+     *         called with each id before it is added to a batch
+     */
+    private void deleteInBatches(@Nullable String owner, @NotNull Collection<String> ids,
+                                 @NotNull BulkResult bulkResult, @NotNull Consumer<String> tracker) {
+        final List<String> batch = new ArrayList<>(bulkBatchSize);
+        long batchId = 0;
+        try {
+            for (String id : ids) {
+                tracker.accept(id);
+                batch.add(id);
+                if (batch.size() >= bulkBatchSize) {
+                    deleteBatch(++batchId, owner, batch, bulkResult);
+                }
+            }
+        } finally {
+            deleteBatch(++batchId, owner, batch, bulkResult);
+        }
+    }
+
+    private void deleteBatch(long batchId, @Nullable String owner, @NotNull List<String> batch,
+                             @NotNull BulkResult bulkResult) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int deleted = 0;
+        lock.writeLock().lock();
+        try {
+            for (String id : batch) {
+                final Entry entry = entries.get(id);
+                if (null != entry && (null == owner || owner.equals(entry.owner))) {
+                    appendDelete(id);
+                    deleted++;
+                }
+            }
+            log.force();
+            bulkResult.addBatch(new BulkResult.Batch(batchId, deleted, 0));
+        } catch (RuntimeException e) {
+            logger.warn("batch {} failed", batchId, e);
+            bulkResult.addBatch(new BulkResult.Batch(batchId, deleted, batch.size() - deleted));
+        } finally {
+            lock.writeLock().unlock();
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void delete(@NotNull String owner, @NotNull String id) {
+        lock.writeLock().lock();
+        try {
+            if (entries.containsKey(id)) {
+                appendDelete(id);
+                log.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(@NotNull Iterable<Bookmark> bookmarks) {
+        append(bookmarks, true);
+    }
+
+    /**
+     * appends bookmarks to the log and indexes them.
+     *
+     * @param bookmarks
+     *         the bookmarks
+     * @param force
+     *         whether the log is forced to the storage device before the method returns
+     */
+    private void append(@NotNull Iterable<Bookmark> bookmarks, boolean force) {
+        final List<byte[]> payloads = new ArrayList<>();
+        final List<Bookmark> toSave = new ArrayList<>();
+        bookmarks.forEach(bookmark -> {
+            toSave.add(bookmark);
+            payloads.add(RecordCodec.encode(bookmark));
+        });
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < toSave.size(); i++) {
+                final Bookmark bookmark = toSave.get(i);
+                final int offset = log.append(BookmarkLog.TYPE_PUT, payloads.get(i));
+                if (unindex(bookmark.getId())) {
+                    outdatedRecords++;
+                }
+                index(bookmark, offset);
+            }
+            if (force) {
+                log.force();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc} Each batch is appended to the log with one lock and one write to the storage device.
+     */
+    @NotNull
+    @Override
+    public BulkWriter openBulkWriter(@NotNull BulkResult bulkResult) {
+        return openWriter(bulkResult, true);
+    }
+
+    /**
+     * {@inheritDoc} The batches are appended to the log without forcing them to the storage device, this is done once
+     * when the writer is closed.
+     */
+    @NotNull
+    @Override
+    public BulkWriter openImportWriter(@NotNull BulkResult bulkResult) {
+        return openWriter(bulkResult, false);
+    }
+
+    /**
+     * opens a writer collecting the bookmarks into batches that are appended with one lock each.
+     *
+     * @param bulkResult
+     *         the object to add the batch results to
+     * @param forceEachBatch
+     *         whether each batch is forced to the storage device, otherwise the log is forced on close
+     * @return the writer
+     */
+    @NotNull
+    private BulkWriter openWriter(@NotNull BulkResult bulkResult, boolean forceEachBatch) {
+        final AtomicLong batchIds = new AtomicLong();
+        final List<Bookmark> batch = new ArrayList<>(bulkBatchSize);
+        final Runnable flush = () -> {
+            if (!batch.isEmpty()) {
+                final long batchId = batchIds.incrementAndGet();
+                try {
+                    append(batch, forceEachBatch);
+                    bulkResult.addBatch(new BulkResult.Batch(batchId, batch.size(), 0));
+                } catch (RuntimeException e) {
+                    logger.warn("batch {} failed", batchId, e);
+                    bulkResult.addBatch(new BulkResult.Batch(batchId, 0, batch.size()));
+                }
+                batch.clear();
+            }
+        };
+        return new BulkWriter(bookmark -> {
+            synchronized (batch) {
+                batch.add(bookmark);
+                if (batch.size() >= bulkBatchSize) {
+                    flush.run();
+                }
+            }
+        }, () -> {
+            synchronized (batch) {
+                flush.run();
+            }
+            if (!forceEachBatch) {
+                force();
+            }
+        }, bulkResult);
+    }
+
+    @NotNull
+    @Override
+    public Optional<Bookmark> findById(@NotNull String owner, @NotNull String id) {
+        final String lowerOwner = owner.toLowerCase();
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(entries.get(id)).filter(entry -> lowerOwner.equals(entry.owner)).map(this::read);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Bookmark> findByIds(@NotNull String owner, @NotNull List<String> ids) {
+        final String lowerOwner = owner.toLowerCase();
+        lock.readLock().lock();
+        try {
+            final List<Bookmark> bookmarks = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                final Entry entry = entries.get(id);
+                if (null != entry && lowerOwner.equals(entry.owner)) {
+                    bookmarks.add(read(entry));
+                }
+            }
+            return bookmarks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long count(@NotNull BookmarkQuery query) {
+        lock.readLock().lock();
+        try {
+            return matchingEntries(query, null, Integer.MAX_VALUE).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Collection<Bookmark> findAll(@NotNull BookmarkQuery query) {
+        lock.readLock().lock();
+        try {
+            return matchingEntries(query, null, Integer.MAX_VALUE).stream().map(this::read)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc} The stream returns the bookmarks that matched when it was created, they are read from the log
+     * when they are consumed.
+     */
+    @NotNull
+    @Override
+    public Stream<Bookmark> stream(@NotNull BookmarkQuery query) {
+        final List<Entry> matches;
+        lock.readLock().lock();
+        try {
+            matches = matchingEntries(query, null, Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.stream().map(this::read);
+    }
+
+    /**
+     * {@inheritDoc} The positions and tags are taken from the index, the log is not read.
+     */
+    @NotNull
+    @Override
+    public Optional<List<BookmarkTags>> findTags(@NotNull BookmarkQuery query, int maxSize) {
+        lock.readLock().lock();
+        try {
+            final List<String> ids = matchingIds(query, null, maxSize == Integer.MAX_VALUE ? maxSize : maxSize + 1);
+            if (ids.size() > maxSize) {
+                return Optional.empty();
+            }
+            return Optional.of(ids.stream()
+                    .map(entries::get)
+                    .map(entry -> new BookmarkTags(entry.position, Arrays.asList(entry.tags)))
+                    .collect(Collectors.toList()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Page<Bookmark> findPage(@NotNull BookmarkQuery query, @NotNull Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            final List<Entry> matches = matchingEntries(query, null, Integer.MAX_VALUE);
+            final List<Bookmark> content = matches.stream()
+                    .skip(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .map(this::read)
+                    .collect(Collectors.toList());
+            return new PageImpl<>(content, pageable, matches.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Bookmark> findAfter(@NotNull BookmarkQuery query, @Nullable PageCursor searchAfter, int size) {
+        lock.readLock().lock();
+        try {
+            return matchingEntries(query, searchAfter, size).stream().map(this::read).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Map<String, Long> countTags(@NotNull BookmarkQuery query) {
+        final Map<String, Long> counts = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (null == query.getOwner() && null == query.getText() && query.getTags().isEmpty()) {
+                tagIndex.forEach((tag, ids) -> counts.put(tag, (long) ids.size()));
+            } else {
+                for (Entry entry : matchingEntries(query, null, Integer.MAX_VALUE)) {
+                    for (String tag : entry.tags) {
+                        counts.merge(tag, 1L, Long::sum);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        final Map<String, Long> tagCounts = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .forEach(entry -> tagCounts.put(entry.getKey(), entry.getValue()));
+        return tagCounts;
+    }
+
+    /**
+     * finds the entries matching a query in the order of the bookmark lists. Must be called with the read lock held.
+     *
+     * @param query
+     *         the query
+     * @param searchAfter
+     *         only entries after this position are returned, null for no restriction
+     * @param limit
+     *         the maximum number of entries
+     * @return the matching entries sorted by {@link PageCursor#ORDER}
+     */
+    @NotNull
+    private List<Entry> matchingEntries(@NotNull BookmarkQuery query, @Nullable PageCursor searchAfter, int limit) {
+        return matchingIds(query, searchAfter, limit).stream().map(entries::get).collect(Collectors.toList());
+    }
+
+    /**
+     * finds the ids of the bookmarks matching a query in the order of the bookmark lists. The smallest of the index
+     * sets selected by the query is iterated and checked against the other conditions; only when this is the set of
+     * the owner's positions, which is sorted, the matches need not be sorted. Must be called with the read lock held.
+     *
+     * @param query
+     *         the query
+     * @param searchAfter
+     *         only ids after this position are returned, null for no restriction
+     * @param limit
+     *         the maximum number of ids
+     * @return the matching ids sorted by {@link PageCursor#ORDER}
+     */
+    @NotNull
+    private List<String> matchingIds(@NotNull BookmarkQuery query, @Nullable PageCursor searchAfter, int limit) {
+        final NavigableSet<PageCursor> ownerPositions = null == query.getOwner()
+                ? null
+                : ownerIndex.getOrDefault(query.getOwner(), Collections.emptyNavigableSet());
+        final List<Set<String>> conditions = new ArrayList<>();
+        for (String tag : query.getTags()) {
+            conditions.add(tagIndex.getOrDefault(tag, Collections.emptySet()));
+        }
+        if (null != query.getText()) {
+            titleMatches(query.getText()).ifPresent(conditions::add);
+        }
+        conditions.sort(Comparator.comparingInt(Set::size));
+
+        final List<String> matches = new ArrayList<>();
+        if (null != ownerPositions
+                && (conditions.isEmpty() || conditions.get(0).size() >= ownerPositions.size())) {
+            // the owner's positions are sorted, so the iteration can stop at the limit
+            final Iterator<PageCursor> positions =
+                    (null == searchAfter ? ownerPositions : ownerPositions.tailSet(searchAfter, false)).iterator();
+            while (positions.hasNext() && matches.size() < limit) {
+                final String id = positions.next().getId();
+                if (conditions.stream().allMatch(condition -> condition.contains(id))) {
+                    matches.add(id);
+                }
+            }
+        } else {
+            final Set<String> candidates = conditions.isEmpty() ? entries.keySet() : conditions.remove(0);
+            candidates.stream()
+                    .filter(id -> conditions.stream().allMatch(condition -> condition.contains(id)))
+                    .map(entries::get)
+                    .filter(entry -> null == query.getOwner() || query.getOwner().equals(entry.owner))
+                    .map(entry -> entry.position)
+                    .filter(position -> null == searchAfter || PageCursor.ORDER.compare(position, searchAfter) > 0)
+                    .sorted(PageCursor.ORDER)
+                    .limit(limit)
+                    .forEach(position -> matches.add(position.getId()));
+        }
+        return matches;
+    }
+
+    /**
+     * finds the ids of the bookmarks whose title contains the words of a text. Each word of the text must be contained
+     * in a word of the title. The title words containing a search word are looked up in the substring index; for
+     * search words longer than {@link #MAX_GRAM} the words found for their beginning are checked. Words shorter than
+     * {@link #MIN_GRAM} are ignored.
+     *
+     * @param text
+     *         the text
+     * @return the matching ids, empty if the text contains no words and so does not restrict the result
+     */
+    @NotNull
+    private Optional<Set<String>> titleMatches(@NotNull String text) {
+        Set<String> result = null;
+        for (String word : words(text)) {
+            if (word.length() < MIN_GRAM) {
+                continue;
+            }
+            final Set<String> ids = new HashSet<>();
+            final String gram = word.length() > MAX_GRAM ? word.substring(0, MAX_GRAM) : word;
+            for (String titleWord : titleGramIndex.getOrDefault(gram, Collections.emptySet())) {
+                if (word.length() <= MAX_GRAM || titleWord.contains(word)) {
+                    ids.addAll(titleIndex.get(titleWord));
+                }
+            }
+            if (null == result) {
+                result = ids;
+            } else {
+                result.retainAll(ids);
+            }
+        }
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * splits a text into lowercase words.
+     */
+    @NotNull
+    private static Set<String> words(@Nullable String text) {
+        if (null == text) {
+            return Collections.emptySet();
+        }
+        final Set<String> words = new TreeSet<>();
+        for (String word : NON_WORD.split(text.toLowerCase())) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return the distinct substrings of a word with MIN_GRAM to MAX_GRAM characters
+     */
+    @NotNull
+    private static Set<String> grams(@NotNull String word) {
+        final Set<String> grams = new HashSet<>();
+        for (int start = 0; start <= word.length() - MIN_GRAM; start++) {
+            final int maxEnd = Math.min(word.length(), start + MAX_GRAM);
+            for (int end = start + MIN_GRAM; end <= maxEnd; end++) {
+                grams.add(word.substring(start, end));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * forces the log to the storage device.
+     */
+    private void force() {
+        lock.writeLock().lock();
+        try {
+            log.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * appends a delete record and removes the bookmark from the indexes. Must be called with the write lock held.
+     */
+    private void appendDelete(@NotNull String id) {
+        try {
+            log.append(BookmarkLog.TYPE_DELETE, RecordCodec.encodeId(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        unindex(id);
+        outdatedRecords += 2;
+    }
+
+    /**
+     * adds a bookmark to the indexes. Must be called with the write lock held.
+     */
+    private void index(@NotNull Bookmark bookmark, int offset) {
+        final String id = bookmark.getId();
+        // owners and tags are repeated in many bookmarks, so only one instance of each is kept
+        final String owner = canonical(bookmark.getOwner());
+        final String[] tags = bookmark.getTags().stream().map(this::canonical).toArray(String[]::new);
+        final PageCursor position = PageCursor.of(id, bookmark.getTitle());
+        entries.put(id, new Entry(offset, owner, tags, position));
+        ownerIndex.computeIfAbsent(owner, o -> new TreeSet<>(PageCursor.ORDER)).add(position);
+        for (String tag : tags) {
+            tagIndex.computeIfAbsent(tag, t -> new HashSet<>()).add(id);
+        }
+        for (String word : words(bookmark.getTitle())) {
+            Set<String> ids = titleIndex.get(word);
+            if (null == ids) {
+                ids = new HashSet<>();
+                titleIndex.put(word, ids);
+                grams(word).forEach(gram -> titleGramIndex.computeIfAbsent(gram, g -> new HashSet<>()).add(word));
+            }
+            ids.add(id);
+        }
+    }
+
+    /**
+     * removes a bookmark from the indexes. The title words are taken from the log record. Must be called with the
+     * write lock held.
+     *
+     * @return true if the bookmark was indexed
+     */
+    private boolean unindex(@NotNull String id) {
+        final Entry entry = entries.remove(id);
+        if (null == entry) {
+            return false;
+        }
+        removeFromIndex(ownerIndex, entry.owner, entry.position);
+        for (String tag : entry.tags) {
+            removeFromIndex(tagIndex, tag, id);
+        }
+        for (String word : words(read(entry).getTitle())) {
+            removeFromIndex(titleIndex, word, id);
+            if (!titleIndex.containsKey(word)) {
+                grams(word).forEach(gram -> removeFromIndex(titleGramIndex, gram, word));
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    private String canonical(@NotNull String s) {
+        return canonicalStrings.computeIfAbsent(s, k -> k);
+    }
+
+    private static <T> void removeFromIndex(@NotNull Map<String, ? extends Set<T>> index, @NotNull String key,
+                                            @NotNull T value) {
+        final Set<T> values = index.get(key);
+        if (null != values) {
+            values.remove(value);
+            if (values.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    @NotNull
+    private Bookmark read(@NotNull Entry entry) {
+        return RecordCodec.decode(log.read(entry.offset));
+    }
+}
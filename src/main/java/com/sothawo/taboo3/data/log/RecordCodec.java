@@ -0,0 +1,146 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.data.log;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkBuilder;
+import com.sothawo.taboo3.data.LinkCheck;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+
+/**
+ * Converts bookmarks to and from the payload of the log records. Strings are written as length and UTF-8 bytes, a
+ * length of -1 stands for null.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+final class RecordCodec {
+
+    private RecordCodec() {
+    }
+
+    /**
+     * encodes a bookmark.
+     *
+     * @param bookmark
+     *         the bookmark
+     * @return the payload
+     */
+    @NotNull
+    static byte[] encode(@NotNull Bookmark bookmark) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, bookmark.getOwner());
+            writeString(out, bookmark.getUrl());
+            writeString(out, bookmark.getTitle());
+            out.writeInt(bookmark.getTags().size());
+            for (String tag : bookmark.getTags()) {
+                writeString(out, tag);
+            }
+            final LinkCheck linkCheck = bookmark.getLinkCheck();
+            out.writeBoolean(null != linkCheck);
+            if (null != linkCheck) {
+                out.writeInt(linkCheck.getStatus());
+                out.writeLong(linkCheck.getLatencyMillis());
+                writeString(out, linkCheck.getRedirectUrl());
+                out.writeLong(linkCheck.getCheckedAt());
+                writeString(out, linkCheck.getError());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // cannot happen with a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * decodes a bookmark.
+     *
+     * @param payload
+     *         the buffer positioned at the start of the payload
+     * @return the bookmark
+     */
+    @NotNull
+    static Bookmark decode(@NotNull ByteBuffer payload) {
+        final BookmarkBuilder builder = aBookmark()
+                .withOwner(readString(payload))
+                .withUrl(readString(payload))
+                .withTitle(readString(payload));
+        final int numTags = payload.getInt();
+        for (int i = 0; i < numTags; i++) {
+            builder.addTag(readString(payload));
+        }
+        final Bookmark bookmark = builder.build();
+        if (payload.get() != 0) {
+            final LinkCheck linkCheck = new LinkCheck();
+            linkCheck.setStatus(payload.getInt());
+            linkCheck.setLatencyMillis(payload.getLong());
+            linkCheck.setRedirectUrl(readString(payload));
+            linkCheck.setCheckedAt(payload.getLong());
+            linkCheck.setError(readString(payload));
+            bookmark.setLinkCheck(linkCheck);
+        }
+        return bookmark;
+    }
+
+    /**
+     * encodes the id of a deleted bookmark.
+     *
+     * @param id
+     *         the id
+     * @return the payload
+     */
+    @NotNull
+    static byte[] encodeId(@NotNull String id) {
+        return id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * decodes the id of a deleted bookmark.
+     *
+     * @param payload
+     *         the buffer positioned at the start of the payload
+     * @param length
+     *         the length of the payload
+     * @return the id
+     */
+    @NotNull
+    static String decodeId(@NotNull ByteBuffer payload, int length) {
+        final byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @Nullable String s) throws IOException {
+        if (null == s) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(@NotNull ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
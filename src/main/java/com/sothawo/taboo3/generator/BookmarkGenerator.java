@@ -0,0 +1,161 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.generator;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+
+/**
+ * Generates synthetic bookmarks with a shape similar to real data. Owners, tags, url hosts and title words are picked
+ * from vocabularies with a Zipf distribution, so that there are few owners with many bookmarks and few very popular
+ * tags and hosts next to a long tail. Titles vary in length, urls in the depth of their path. The generated bookmarks
+ * only depend on the settings and the seed, the same settings always produce the same bookmarks.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class BookmarkGenerator {
+
+    /** the syllables the vocabulary words are built from. */
+    private static final String[] SYLLABLES = {"ba", "de", "fi", "go", "ku", "la", "me", "ni", "po", "ru", "sa",
+            "te", "vi", "wo", "xa", "zu"};
+    /** the top level domains of the hosts. */
+    private static final String[] TLDS = {"com", "org", "net", "de", "io"};
+    /** the number of different words in titles and url paths. */
+    private static final int WORDS = 5000;
+    /** the maximum number of words in a title. */
+    private static final int MAX_TITLE_WORDS = 25;
+    /** the maximum depth of an url path, not counting the unique last segment. */
+    private static final int MAX_PATH_DEPTH = 4;
+
+    private final long seed;
+    private final int maxTags;
+    private final ZipfDistribution owners;
+    private final ZipfDistribution tags;
+    private final ZipfDistribution hosts;
+    private final ZipfDistribution words;
+
+    BookmarkGenerator(long seed, int numOwners, double ownerExponent, int numTags, double tagExponent,
+                      int maxTags, int numHosts, double hostExponent) {
+        this.seed = seed;
+        this.maxTags = maxTags;
+        this.owners = new ZipfDistribution(numOwners, ownerExponent);
+        this.tags = new ZipfDistribution(numTags, tagExponent);
+        this.hosts = new ZipfDistribution(numHosts, hostExponent);
+        this.words = new ZipfDistribution(WORDS, 1.0);
+    }
+
+    /**
+     * returns the name of the owner with the given rank; rank 0 is the owner with the most bookmarks.
+     *
+     * @param rank
+     *         the rank
+     * @return the owner name
+     */
+    @NotNull
+    public static String owner(int rank) {
+        return "user" + rank;
+    }
+
+    /**
+     * returns the tag with the given rank; rank 0 is the most popular tag.
+     *
+     * @param rank
+     *         the rank
+     * @return the tag
+     */
+    @NotNull
+    public static String tag(int rank) {
+        return word(rank);
+    }
+
+    /**
+     * builds a distinct word for a number by using the digits of the number in base 16 as syllables. Numbers below 16
+     * are moved up so that every word has at least two syllables.
+     *
+     * @param number
+     *         the number, not negative
+     * @return the word
+     */
+    @NotNull
+    static String word(int number) {
+        final StringBuilder sb = new StringBuilder();
+        int n = number + SYLLABLES.length;
+        while (n > 0) {
+            sb.append(SYLLABLES[n % SYLLABLES.length]);
+            n /= SYLLABLES.length;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * creates a stream of bookmarks. The stream is sequential and lazy, so that large numbers of bookmarks can be
+     * generated without keeping them in memory.
+     *
+     * @param count
+     *         the number of bookmarks
+     * @return the bookmarks
+     */
+    @NotNull
+    public Stream<Bookmark> generate(long count) {
+        final Random random = new Random(seed);
+        return LongStream.range(0, count).mapToObj(sequence -> generate(random, sequence));
+    }
+
+    @NotNull
+    private Bookmark generate(@NotNull Random random, long sequence) {
+        final BookmarkBuilder builder = aBookmark()
+                .withOwner(owner(owners.sample(random)))
+                .withUrl(url(random, sequence))
+                .withTitle(title(random));
+        // mostly one to three tags, sometimes none and sometimes more
+        final int numTags = Math.min(maxTags, (int) Math.round(Math.abs(random.nextGaussian()) * 2.0 + 0.3));
+        for (int i = 0; i < numTags; i++) {
+            builder.addTag(tag(tags.sample(random)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * builds an url which is unique by containing the sequence number as last path segment.
+     */
+    @NotNull
+    private String url(@NotNull Random random, long sequence) {
+        final int hostRank = hosts.sample(random);
+        final StringBuilder sb = new StringBuilder(random.nextInt(4) == 0 ? "http://" : "https://")
+                .append(hostRank % 3 == 0 ? "www." : "")
+                .append(word(hostRank))
+                .append('.')
+                .append(TLDS[hostRank % TLDS.length]);
+        final int depth = random.nextInt(MAX_PATH_DEPTH + 1);
+        for (int i = 0; i < depth; i++) {
+            sb.append('/').append(word(words.sample(random)));
+        }
+        return sb.append('/').append(Long.toString(sequence, Character.MAX_RADIX)).toString();
+    }
+
+    /**
+     * builds a title with a varying number of words, most titles have between two and ten words.
+     */
+    @NotNull
+    private String title(@NotNull Random random) {
+        final int numWords = Math.min(MAX_TITLE_WORDS, 1 + (int) Math.abs(random.nextGaussian() * 6.0));
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            final String word = word(words.sample(random));
+            if (i == 0) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                sb.append(' ').append(word);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.generator;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public final class BookmarkGeneratorBuilder {
+    private long seed = 42;
+    private int owners = 1000;
+    private double ownerExponent = 1.0;
+    private int tags = 10000;
+    private double tagExponent = 1.1;
+    private int maxTags = 8;
+    private int hosts = 20000;
+    private double hostExponent = 1.0;
+
+    private BookmarkGeneratorBuilder() {
+    }
+
+    public static BookmarkGeneratorBuilder aBookmarkGenerator() {
+        return new BookmarkGeneratorBuilder();
+    }
+
+    public BookmarkGeneratorBuilder withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withOwners(int owners) {
+        this.owners = owners;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withOwnerExponent(double ownerExponent) {
+        this.ownerExponent = ownerExponent;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withTags(int tags) {
+        this.tags = tags;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withTagExponent(double tagExponent) {
+        this.tagExponent = tagExponent;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withMaxTags(int maxTags) {
+        this.maxTags = maxTags;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withHosts(int hosts) {
+        this.hosts = hosts;
+        return this;
+    }
+
+    public BookmarkGeneratorBuilder withHostExponent(double hostExponent) {
+        this.hostExponent = hostExponent;
+        return this;
+    }
+
+    public BookmarkGenerator build() {
+        return new BookmarkGenerator(seed, owners, ownerExponent, tags, tagExponent, maxTags, hosts, hostExponent);
+    }
+}
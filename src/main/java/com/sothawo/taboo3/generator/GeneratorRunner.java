@@ -0,0 +1,102 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.generator;
+
+import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.data.BulkResult;
+import com.sothawo.taboo3.data.BulkWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.sothawo.taboo3.generator.BookmarkGeneratorBuilder.aBookmarkGenerator;
+
+/**
+ * Fills the repository with generated bookmarks when the application is started with the profile <i>generate</i>. The
+ * bookmarks are written with bulk requests. When <i>taboo3.generator.exit</i> is set, the application is stopped after
+ * the bookmarks are written, so that it can be used as a command line tool.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+@Profile("generate")
+public class GeneratorRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneratorRunner.class);
+
+    /** the number of bookmarks after which the progress is logged. */
+    private static final long LOG_INTERVAL = 100_000;
+
+    private final BookmarkService bookmarkService;
+    private final ApplicationContext applicationContext;
+    private final BookmarkGenerator bookmarkGenerator;
+    private final long count;
+    private final boolean exitWhenDone;
+
+    @Autowired
+    public GeneratorRunner(BookmarkService bookmarkService, ApplicationContext applicationContext,
+                           @Value("${taboo3.generator.bookmarks:1000000}") long count,
+                           @Value("${taboo3.generator.seed:42}") long seed,
+                           @Value("${taboo3.generator.owners:1000}") int owners,
+                           @Value("${taboo3.generator.owner-exponent:1.0}") double ownerExponent,
+                           @Value("${taboo3.generator.tags:10000}") int tags,
+                           @Value("${taboo3.generator.tag-exponent:1.1}") double tagExponent,
+                           @Value("${taboo3.generator.max-tags:8}") int maxTags,
+                           @Value("${taboo3.generator.hosts:20000}") int hosts,
+                           @Value("${taboo3.generator.host-exponent:1.0}") double hostExponent,
+                           @Value("${taboo3.generator.exit:false}") boolean exitWhenDone) {
+        this.bookmarkService = bookmarkService;
+        this.applicationContext = applicationContext;
+        this.count = count;
+        this.exitWhenDone = exitWhenDone;
+        this.bookmarkGenerator = aBookmarkGenerator()
+                .withSeed(seed)
+                .withOwners(owners)
+                .withOwnerExponent(ownerExponent)
+                .withTags(tags)
+                .withTagExponent(tagExponent)
+                .withMaxTags(maxTags)
+                .withHosts(hosts)
+                .withHostExponent(hostExponent)
+                .build();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        logger.info("generating {} bookmarks", count);
+        final long start = System.nanoTime();
+        final AtomicLong generated = new AtomicLong();
+        final BulkResult bulkResult;
+        try (BulkWriter bulkWriter = bookmarkService.openImportWriter(new BulkResult())) {
+            bookmarkGenerator.generate(count).forEach(bookmark -> {
+                bulkWriter.add(bookmark);
+                final long n = generated.incrementAndGet();
+                if (n % LOG_INTERVAL == 0) {
+                    logger.info("generated {} bookmarks, {} docs/s", n, docsPerSecond(n, start));
+                }
+            });
+            bulkResult = bulkWriter.getBulkResult();
+        }
+        logger.info("generated {} bookmarks in {} ms, {} docs/s: {}", generated.get(),
+                (System.nanoTime() - start) / 1_000_000, docsPerSecond(generated.get(), start), bulkResult);
+
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(applicationContext, () -> bulkResult.getFailed() > 0 ? 1 : 0));
+        }
+    }
+
+    private static long docsPerSecond(long docs, long startNanos) {
+        final long nanos = Math.max(1, System.nanoTime() - startNanos);
+        return docs * 1_000_000_000L / nanos;
+    }
+}
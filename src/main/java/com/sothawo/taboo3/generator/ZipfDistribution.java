@@ -0,0 +1,66 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.generator;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf distribution over the ranks 0 to n - 1: the probability of rank k is proportional to 1 / (k + 1)^exponent. The
+ * cumulative probabilities are computed once, a sample is found by binary search.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class ZipfDistribution {
+
+    /** the cumulative probabilities of the ranks, the last entry is 1. */
+    private final double[] cumulative;
+
+    /**
+     * @param n
+     *         the number of ranks, must be positive
+     * @param exponent
+     *         the exponent, must not be negative; 0 gives a uniform distribution
+     */
+    public ZipfDistribution(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("exponent must not be negative: " + exponent);
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+        cumulative[n - 1] = 1.0;
+    }
+
+    /**
+     * @return the number of ranks
+     */
+    public int size() {
+        return cumulative.length;
+    }
+
+    /**
+     * draws a rank.
+     *
+     * @param random
+     *         the random generator to use
+     * @return a rank between 0 and n - 1
+     */
+    public int sample(@NotNull Random random) {
+        // the rank k covers the values from cumulative[k - 1] inclusive to cumulative[k] exclusive
+        final int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index + 1 : -index - 1, cumulative.length - 1);
+    }
+}
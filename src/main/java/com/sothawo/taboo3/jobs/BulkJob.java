@@ -0,0 +1,215 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.jobs;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.sothawo.taboo3.data.BulkResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A bulk operation running in the background. The job keeps track of its state, the number of processed items and
+ * the outcome of the bulk requests, and it can be cancelled while it is queued or running.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class BulkJob {
+
+    /** the states of a job. */
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == CANCELLED || this == FAILED;
+        }
+    }
+
+    /** the job id. */
+    private final String id;
+    /** the owner of the processed bookmarks. */
+    private final String owner;
+    /** the name of the operation. */
+    private final String name;
+    /** the expected number of items to process. */
+    private final long total;
+    /** the clock for the job timestamps and the run time of a running job. */
+    private final Clock clock;
+    /** the time the job was submitted. */
+    private final Instant createdAt;
+    /** the outcome of the bulk requests sent by the job. */
+    private final BulkResult bulkResult = new BulkResult();
+    /** the number of items handed to the bulk requests. */
+    private final AtomicLong processed = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    BulkJob(@NotNull String id, @NotNull String owner, @NotNull String name, long total, @NotNull Clock clock) {
+        this.id = id;
+        this.owner = owner;
+        this.name = name;
+        this.total = total;
+        this.clock = clock;
+        this.createdAt = clock.instant();
+    }
+
+    /**
+     * wraps an action so that each call first checks for cancellation and afterwards counts the item as processed.
+     *
+     * @param action
+     *         the action to wrap
+     * @param <T>
+     *         the item type
+     * @return the wrapping action
+     */
+    @NotNull
+    public <T> Consumer<T> track(@NotNull Consumer<T> action) {
+        return item -> {
+            checkCancelled();
+            action.accept(item);
+            processed.incrementAndGet();
+        };
+    }
+
+    /**
+     * counts an item as processed, for items that are not processed with a {@link #track} action.
+     */
+    public void incrementProcessed() {
+        processed.incrementAndGet();
+    }
+
+    /**
+     * throws a CancellationException if the job was cancelled.
+     */
+    public void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("job " + id + " cancelled");
+        }
+    }
+
+    /**
+     * requests the cancellation of the job. A running job stops when it next checks for cancellation.
+     */
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    void started(@NotNull Instant now) {
+        startedAt = now;
+        status = Status.RUNNING;
+    }
+
+    void finished(@NotNull Status finalStatus, @NotNull Instant now, @Nullable String errorMessage) {
+        finishedAt = now;
+        error = errorMessage;
+        status = finalStatus;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getSucceeded() {
+        return bulkResult.getSucceeded();
+    }
+
+    public long getFailed() {
+        return bulkResult.getFailed();
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    @JsonIgnore
+    public BulkResult getBulkResult() {
+        return bulkResult;
+    }
+
+    public String getCreatedAt() {
+        return createdAt.toString();
+    }
+
+    @Nullable
+    public String getStartedAt() {
+        return null == startedAt ? null : startedAt.toString();
+    }
+
+    @Nullable
+    public String getFinishedAt() {
+        return null == finishedAt ? null : finishedAt.toString();
+    }
+
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * returns the run time of the job in milliseconds, up to now for a running job.
+     *
+     * @return the duration, 0 if the job has not started
+     */
+    public long getDurationMillis() {
+        final Instant start = startedAt;
+        if (null == start) {
+            return 0;
+        }
+        final Instant end = finishedAt;
+        return Duration.between(start, null == end ? clock.instant() : end).toMillis();
+    }
+
+    /**
+     * returns the number of processed items per second, up to now for a running job.
+     *
+     * @return the throughput
+     */
+    public double getDocsPerSecond() {
+        final long millis = getDurationMillis();
+        return millis <= 0 ? 0 : processed.get() * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkJob{" +
+                "id='" + id + '\'' +
+                ", owner='" + owner + '\'' +
+                ", name='" + name + '\'' +
+                ", status=" + status +
+                ", total=" + total +
+                ", processed=" + processed +
+                ", bulkResult=" + bulkResult +
+                '}';
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.jobs;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Service running {@link BulkJob}s on a dedicated executor with a bounded number of threads and a bounded queue.
+ * Jobs can be looked up and cancelled by their owner. Finished jobs are kept for inspection up to a configured
+ * number, the oldest finished jobs are removed first.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+public class BulkJobService implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkJobService.class);
+
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+    /** the executor running the jobs. */
+    private final ThreadPoolExecutor jobExecutor;
+    /** the maximum number of finished jobs that are kept. */
+    private final int retainedJobs;
+    /** the clock for the job timestamps. */
+    private final Clock clock;
+    /** the jobs in the order of submission, guarded by itself. */
+    private final Map<String, BulkJob> jobs = new LinkedHashMap<>();
+
+    @Autowired
+    public BulkJobService(CounterService counterService, GaugeService gaugeService,
+                          @Value("${taboo3.jobs.threads:2}") int jobThreads,
+                          @Value("${taboo3.jobs.queue-capacity:10}") int jobQueueCapacity,
+                          @Value("${taboo3.jobs.retained:100}") int retainedJobs) {
+        this(counterService, gaugeService, jobThreads, jobQueueCapacity, retainedJobs, Clock.systemUTC());
+    }
+
+    BulkJobService(CounterService counterService, GaugeService gaugeService, int jobThreads, int jobQueueCapacity,
+                   int retainedJobs, @NotNull Clock clock) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.retainedJobs = retainedJobs;
+        this.clock = clock;
+        this.jobExecutor = new ThreadPoolExecutor(jobThreads, jobThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(jobQueueCapacity), new CustomizableThreadFactory("bulk-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * cancels all jobs and shuts down the executor.
+     */
+    @PreDestroy
+    public void shutdown() {
+        synchronized (jobs) {
+            jobs.values().forEach(BulkJob::requestCancel);
+        }
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * submits a job for execution.
+     *
+     * @param owner
+     *         the owner of the job
+     * @param name
+     *         the name of the operation
+     * @param total
+     *         the expected number of items the job will process
+     * @param task
+     *         the work to do
+     * @return the queued job
+     * @throws RejectedExecutionException
+     *         if the executor's queue is full
+     */
+    @NotNull
+    public BulkJob submit(@NotNull String owner, @NotNull String name, long total, @NotNull BulkJobTask task) {
+        final BulkJob job = new BulkJob(UUID.randomUUID().toString(), owner, name, total, clock);
+        synchronized (jobs) {
+            jobExecutor.execute(() -> run(job, task));
+            jobs.put(job.getId(), job);
+            removeOldJobs();
+        }
+        logger.info("submitted {}", job);
+        counterService.increment("jobs.submitted");
+        return job;
+    }
+
+    /**
+     * returns a job of an owner.
+     *
+     * @param owner
+     *         the owner
+     * @param id
+     *         the job id
+     * @return the job, empty if there is no such job for the owner
+     */
+    @NotNull
+    public Optional<BulkJob> findJob(@NotNull String owner, @NotNull String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id)).filter(job -> owner.equals(job.getOwner()));
+        }
+    }
+
+    /**
+     * returns the jobs of an owner in the order of submission.
+     *
+     * @param owner
+     *         the owner
+     * @return the jobs
+     */
+    @NotNull
+    public List<BulkJob> findJobs(@NotNull String owner) {
+        synchronized (jobs) {
+            return jobs.values().stream()
+                    .filter(job -> owner.equals(job.getOwner()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * requests the cancellation of a job of an owner.
+     *
+     * @param owner
+     *         the owner
+     * @param id
+     *         the job id
+     * @return the job, empty if there is no such job for the owner
+     */
+    @NotNull
+    public Optional<BulkJob> cancel(@NotNull String owner, @NotNull String id) {
+        final Optional<BulkJob> job = findJob(owner, id);
+        job.ifPresent(j -> {
+            logger.info("cancelling {}", j);
+            j.requestCancel();
+        });
+        return job;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("jobs.queue.size", jobExecutor.getQueue().size()),
+                new Metric<>("jobs.active", jobExecutor.getActiveCount()));
+    }
+
+    /**
+     * runs a job and records the outcome.
+     *
+     * @param job
+     *         the job
+     * @param task
+     *         the work to do
+     */
+    private void run(@NotNull BulkJob job, @NotNull BulkJobTask task) {
+        job.started(clock.instant());
+        logger.info("starting {}", job);
+        BulkJob.Status status = BulkJob.Status.COMPLETED;
+        String error = null;
+        try {
+            job.checkCancelled();
+            task.run(job);
+        } catch (CancellationException e) {
+            status = BulkJob.Status.CANCELLED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = BulkJob.Status.CANCELLED;
+        } catch (Exception e) {
+            logger.warn("job {} failed", job.getId(), e);
+            status = BulkJob.Status.FAILED;
+            error = e.getMessage();
+        }
+        job.finished(status, clock.instant(), error);
+        logger.info("finished {}", job);
+        counterService.increment("jobs." + status.name().toLowerCase());
+        gaugeService.submit("timer.jobs.duration", job.getDurationMillis());
+        gaugeService.submit("jobs.throughput", job.getDocsPerSecond());
+    }
+
+    /**
+     * removes the oldest finished jobs when more than the configured number are kept. Must be called with the lock
+     * on {@link #jobs} held.
+     */
+    private void removeOldJobs() {
+        final List<String> finished = new ArrayList<>();
+        for (BulkJob job : jobs.values()) {
+            if (job.getStatus().isFinished()) {
+                finished.add(job.getId());
+            }
+        }
+        final Iterator<String> iterator = finished.iterator();
+        for (int excess = finished.size() - retainedJobs; excess > 0 && iterator.hasNext(); excess--) {
+            jobs.remove(iterator.next());
+        }
+    }
+}
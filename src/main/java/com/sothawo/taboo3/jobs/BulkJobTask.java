@@ -0,0 +1,26 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.jobs;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The work done by a {@link BulkJob}. Implementations should use {@link BulkJob#track} or
+ * {@link BulkJob#checkCancelled()} so the job reports its progress and can be cancelled.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@FunctionalInterface
+public interface BulkJobTask {
+
+    /**
+     * runs the task.
+     *
+     * @param job
+     *         the job running this task
+     * @throws Exception
+     *         on error, the job is marked as failed
+     */
+    void run(@NotNull BulkJob job) throws Exception;
+}
@@ -0,0 +1,97 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.links;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of concurrent requests to a host and the rate at which requests to a host are started. Callers
+ * do not block: {@link #tryAcquire(String)} either grants a permit or returns the time after which the caller should
+ * try again, so a thread waiting for a busy host can work for other hosts in the meantime.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class HostLimiter {
+
+    /** the retry delay when the maximum number of concurrent requests to a host is reached. */
+    static final long BUSY_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** the maximum number of concurrent requests per host. */
+    private final int maxConcurrent;
+    /** the minimum time between the starts of two requests to the same host. */
+    private final long minIntervalNanos;
+    /** the time source in nanoseconds. */
+    private final LongSupplier nanoTime;
+    /** the state for each host, guarded by this. */
+    private final Map<String, HostState> hosts = new HashMap<>();
+
+    public HostLimiter(int maxConcurrent, double requestsPerSecond) {
+        this(maxConcurrent, requestsPerSecond, System::nanoTime);
+    }
+
+    HostLimiter(int maxConcurrent, double requestsPerSecond, @NotNull LongSupplier nanoTime) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * tries to get a permit for a request to a host. A granted permit must be returned with
+     * {@link #release(String)}.
+     *
+     * @param host
+     *         the host
+     * @return 0 if the permit is granted, otherwise the nanoseconds to wait before trying again
+     */
+    public synchronized long tryAcquire(@NotNull String host) {
+        final HostState state = hosts.computeIfAbsent(host, h -> new HostState());
+        if (state.active >= maxConcurrent) {
+            return BUSY_RETRY_NANOS;
+        }
+        final long now = nanoTime.getAsLong();
+        if (state.started && now - state.nextStart < 0) {
+            return state.nextStart - now;
+        }
+        state.active++;
+        state.started = true;
+        state.nextStart = now + minIntervalNanos;
+        return 0;
+    }
+
+    /**
+     * returns a permit for a host.
+     *
+     * @param host
+     *         the host
+     */
+    public synchronized void release(@NotNull String host) {
+        final HostState state = hosts.get(host);
+        if (null != state && state.active > 0) {
+            state.active--;
+        }
+    }
+
+    /**
+     * the request state of one host.
+     */
+    private static class HostState {
+        /** the number of running requests. */
+        private int active;
+        /** whether a request was ever started. */
+        private boolean started;
+        /** the earliest time the next request may start. */
+        private long nextStart;
+    }
+}
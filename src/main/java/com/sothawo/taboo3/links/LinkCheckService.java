@@ -0,0 +1,230 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.links;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.data.BulkWriter;
+import com.sothawo.taboo3.data.LinkCheck;
+import com.sothawo.taboo3.data.PageCursor;
+import com.sothawo.taboo3.jobs.BulkJob;
+import com.sothawo.taboo3.title.TitleService;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to check the urls of the bookmarks that are tagged with {@link #TAG_TO_VALIDATE}. The checks run
+ * concurrently on a dedicated executor, while a {@link HostLimiter} bounds the number of concurrent requests and the
+ * request rate for each host. The result of each check is stored in the bookmark, and the tag is removed from
+ * bookmarks with a healthy link. The bookmarks are written back with bulk requests.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+public class LinkCheckService implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(LinkCheckService.class);
+
+    /** the tag marking bookmarks whose link should be checked. */
+    public static final String TAG_TO_VALIDATE = "_to_validate";
+
+    /** the number of bookmarks loaded from the repository at once. */
+    private static final int PAGE_SIZE = 500;
+
+    private final BookmarkService bookmarkService;
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+    /** the checker for single urls. */
+    private final LinkChecker linkChecker;
+    /** the executor running the checks, also used to retry checks for busy hosts later. */
+    private final ScheduledThreadPoolExecutor checkExecutor;
+    /** the maximum number of checks that are running or waiting for their host. */
+    private final int maxPending;
+    /** the maximum number of concurrent requests per host. */
+    private final int perHostConcurrency;
+    /** the maximum number of requests per second per host. */
+    private final double perHostRate;
+
+    @Autowired
+    public LinkCheckService(BookmarkService bookmarkService, CounterService counterService,
+                            GaugeService gaugeService,
+                            @Value("${taboo3.links.threads:16}") int threads,
+                            @Value("${taboo3.links.max-pending:1000}") int maxPending,
+                            @Value("${taboo3.links.per-host-concurrency:2}") int perHostConcurrency,
+                            @Value("${taboo3.links.per-host-rate:2.0}") double perHostRate,
+                            @Value("${taboo3.links.timeout-millis:5000}") int timeoutMillis,
+                            @Value("${taboo3.links.max-redirects:5}") int maxRedirects) {
+        this.bookmarkService = bookmarkService;
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.maxPending = maxPending;
+        this.perHostConcurrency = perHostConcurrency;
+        this.perHostRate = perHostRate;
+        this.linkChecker = new LinkChecker(timeoutMillis, maxRedirects, TitleService.USER_AGENT, Clock.systemUTC());
+        this.checkExecutor = new ScheduledThreadPoolExecutor(threads, new CustomizableThreadFactory("link-check-"));
+    }
+
+    /**
+     * shuts down the check executor.
+     */
+    @PreDestroy
+    public void shutdown() {
+        checkExecutor.shutdownNow();
+    }
+
+    /**
+     * returns the number of bookmarks of an owner that are tagged for validation.
+     *
+     * @param owner
+     *         the owner
+     * @return the number of bookmarks
+     */
+    public long countTaggedLinks(@NotNull String owner) {
+        return bookmarkService.findAllTagCountsByOwner(owner).getOrDefault(TAG_TO_VALIDATE, 0L);
+    }
+
+    /**
+     * checks the links of all bookmarks of an owner that are tagged for validation and returns when all checks are
+     * finished. The bookmarks are read in slices after a cursor, so no scroll context has to be kept open while slow
+     * hosts are checked.
+     *
+     * @param owner
+     *         the owner
+     * @param job
+     *         the job running the check, used for progress, cancellation and the bulk results
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting for the checks
+     */
+    public void checkTaggedLinks(@NotNull String owner, @NotNull BulkJob job) throws InterruptedException {
+        final HostLimiter hostLimiter = new HostLimiter(perHostConcurrency, perHostRate);
+        final Semaphore pending = new Semaphore(maxPending);
+        final Collection<String> tags = Collections.singleton(TAG_TO_VALIDATE);
+        try (BulkWriter bulkWriter = bookmarkService.openBulkWriter(job.getBulkResult())) {
+            try {
+                PageCursor after = null;
+                List<Bookmark> page;
+                do {
+                    page = bookmarkService.findByOwnerAndSelectionAfter(owner, null, tags, after, PAGE_SIZE);
+                    for (Bookmark bookmark : page) {
+                        job.checkCancelled();
+                        pending.acquire();
+                        final Check check = new Check(bookmark, hostLimiter, bulkWriter, pending, job);
+                        try {
+                            checkExecutor.execute(check);
+                        } catch (RejectedExecutionException e) {
+                            pending.release();
+                            throw e;
+                        }
+                    }
+                    after = page.isEmpty() ? after : PageCursor.of(page.get(page.size() - 1));
+                } while (page.size() == PAGE_SIZE);
+            } finally {
+                // the writer must stay open until all checks have added their bookmarks
+                pending.acquire(maxPending);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Collections.singletonList(new Metric<>("links.check.active", checkExecutor.getActiveCount()));
+    }
+
+    /**
+     * the check of one bookmark. Each request hop takes a permit for its own host, so redirect targets are limited as
+     * well; if the host of the next hop is busy, the check is scheduled again for later.
+     */
+    private class Check implements Runnable {
+        private final Bookmark bookmark;
+        private final LinkChecker.Progress progress;
+        private final HostLimiter hostLimiter;
+        private final BulkWriter bulkWriter;
+        private final Semaphore pending;
+        private final BulkJob job;
+
+        Check(Bookmark bookmark, HostLimiter hostLimiter, BulkWriter bulkWriter, Semaphore pending, BulkJob job) {
+            this.bookmark = bookmark;
+            this.progress = linkChecker.start(bookmark.getUrl());
+            this.hostLimiter = hostLimiter;
+            this.bulkWriter = bulkWriter;
+            this.pending = pending;
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            if (job.isCancelRequested()) {
+                pending.release();
+                return;
+            }
+            if (!progress.isDone()) {
+                final String host = progress.getHost();
+                final long waitNanos = hostLimiter.tryAcquire(host);
+                if (waitNanos > 0) {
+                    schedule(waitNanos);
+                    return;
+                }
+                try {
+                    linkChecker.step(progress);
+                } catch (RuntimeException e) {
+                    logger.warn("checking {} failed", bookmark.getUrl(), e);
+                    pending.release();
+                    return;
+                } finally {
+                    hostLimiter.release(host);
+                }
+                if (!progress.isDone()) {
+                    // a redirect, the next hop needs a permit for its host
+                    schedule(0);
+                    return;
+                }
+            }
+            try {
+                final LinkCheck linkCheck = progress.getResult();
+                gaugeService.submit("timer.links.check", linkCheck.getLatencyMillis());
+                bookmark.setLinkCheck(linkCheck);
+                if (linkCheck.isHealthy()) {
+                    counterService.increment("links.check.healthy");
+                    bookmark.removeTag(TAG_TO_VALIDATE);
+                } else {
+                    logger.info("broken link {}: {}", bookmark.getUrl(), linkCheck);
+                    counterService.increment("links.check.broken");
+                }
+                bulkWriter.add(bookmark);
+                job.incrementProcessed();
+            } catch (RuntimeException e) {
+                logger.warn("checking {} failed", bookmark.getUrl(), e);
+            } finally {
+                pending.release();
+            }
+        }
+
+        private void schedule(long delayNanos) {
+            try {
+                checkExecutor.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                pending.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.links;
+
+import com.sothawo.taboo3.data.LinkCheck;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Clock;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks whether a url can be reached. A HEAD request is sent first; if it fails or returns an error status, the url
+ * is requested with GET, as some servers do not support HEAD. Redirects are followed up to a maximum number, the
+ * body of a response is never read. A check can be run at once or one request hop at a time, each hop going to one
+ * url.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class LinkChecker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LinkChecker.class);
+
+    /** connect and read timeout in milliseconds. */
+    private final int timeoutMillis;
+    /** the maximum number of redirects that are followed. */
+    private final int maxRedirects;
+    /** the user agent sent with the requests. */
+    private final String userAgent;
+    /** the clock for the check timestamp. */
+    private final Clock clock;
+
+    public LinkChecker(int timeoutMillis, int maxRedirects, @NotNull String userAgent, @NotNull Clock clock) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxRedirects = maxRedirects;
+        this.userAgent = userAgent;
+        this.clock = clock;
+    }
+
+    /**
+     * checks a url, following the redirects.
+     *
+     * @param url
+     *         the url to check
+     * @return the check result, with status 0 and an error message if no response was received
+     */
+    @NotNull
+    public LinkCheck check(@NotNull String url) {
+        final Progress progress = start(url);
+        while (!progress.isDone()) {
+            step(progress);
+        }
+        return progress.getResult();
+    }
+
+    /**
+     * starts the check of a url, which is then advanced by {@link #step(Progress)} one request hop at a time, so that
+     * the caller can limit the requests to the host of each hop.
+     *
+     * @param url
+     *         the url to check
+     * @return the progress of the check, already done if the url is malformed
+     */
+    @NotNull
+    public Progress start(@NotNull String url) {
+        final Progress progress = new Progress(url);
+        try {
+            progress.currentUrl = new URL(url);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("checking {} failed: {}", url, e.toString());
+            progress.result = result(0, progress, e.toString());
+        }
+        return progress;
+    }
+
+    /**
+     * sends the requests for the current url of a check: HEAD, and GET if that fails. A redirect makes its target the
+     * current url, otherwise the check is done.
+     *
+     * @param progress
+     *         the check, must not be done
+     */
+    public void step(@NotNull Progress progress) {
+        if (progress.isDone()) {
+            throw new IllegalStateException("check of " + progress.url + " is done");
+        }
+        final long start = System.nanoTime();
+        try {
+            Response response;
+            try {
+                response = send(progress.currentUrl, "HEAD");
+            } catch (IOException e) {
+                logger.debug("HEAD {} failed: {}", progress.currentUrl, e.getMessage());
+                response = null;
+            }
+            if (null == response || response.status >= 400) {
+                response = send(progress.currentUrl, "GET");
+            }
+            progress.elapsedNanos += System.nanoTime() - start;
+            if (!response.isRedirect()) {
+                progress.result = result(response.status, progress, null);
+            } else if (progress.redirects >= maxRedirects) {
+                progress.result = result(response.status, progress, "too many redirects");
+            } else {
+                progress.redirects++;
+                progress.currentUrl = new URL(progress.currentUrl, response.location);
+                progress.redirectUrl = progress.currentUrl.toString();
+            }
+        } catch (IOException | RuntimeException e) {
+            progress.elapsedNanos += System.nanoTime() - start;
+            logger.debug("checking {} failed: {}", progress.url, e.toString());
+            progress.result = result(0, progress, e.toString());
+        }
+    }
+
+    @NotNull
+    private LinkCheck result(int status, @NotNull Progress progress, @Nullable String error) {
+        return new LinkCheck(status, TimeUnit.NANOSECONDS.toMillis(progress.elapsedNanos), progress.redirectUrl,
+                clock.millis(), error);
+    }
+
+    /**
+     * sends a request without reading the body.
+     *
+     * @param url
+     *         the url
+     * @param method
+     *         the http method
+     * @return the response status and location header
+     * @throws IOException
+     *         if no response is received
+     */
+    @NotNull
+    private Response send(@NotNull URL url, @NotNull String method) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod(method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setRequestProperty("User-Agent", userAgent);
+            return new Response(connection.getResponseCode(), connection.getHeaderField("Location"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * the state of the check of one url across its redirects.
+     */
+    public static final class Progress {
+        /** the url to check. */
+        private final String url;
+        /** the url of the next request. */
+        private URL currentUrl;
+        /** the last redirect target, null if there was no redirect. */
+        private String redirectUrl;
+        private int redirects;
+        /** the time spent in requests, without the time waiting between the hops. */
+        private long elapsedNanos;
+        /** the result, null while the check is not done. */
+        private LinkCheck result;
+
+        private Progress(@NotNull String url) {
+            this.url = url;
+        }
+
+        /**
+         * @return the lowercase host of the next request
+         */
+        @NotNull
+        public String getHost() {
+            return null == currentUrl ? "" : currentUrl.getHost().toLowerCase(Locale.ROOT);
+        }
+
+        public boolean isDone() {
+            return null != result;
+        }
+
+        /**
+         * @return the result, null while the check is not done
+         */
+        @Nullable
+        public LinkCheck getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * the relevant parts of a response.
+     */
+    private static class Response {
+        private final int status;
+        private final String location;
+
+        Response(int status, String location) {
+            this.status = status;
+            this.location = location;
+        }
+
+        boolean isRedirect() {
+            return status >= 300 && status < 400 && null != location;
+        }
+    }
+}
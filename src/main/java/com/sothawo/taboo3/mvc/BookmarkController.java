@@ -3,16 +3,25 @@
  */
 package com.sothawo.taboo3.mvc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sothawo.taboo3.data.Bookmark;
 import com.sothawo.taboo3.data.BookmarkEdit;
 import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.data.BulkResult;
+import com.sothawo.taboo3.jobs.BulkJob;
+import com.sothawo.taboo3.jobs.BulkJobService;
+import com.sothawo.taboo3.jobs.BulkJobTask;
+import com.sothawo.taboo3.links.LinkCheckService;
+import com.sothawo.taboo3.title.TitleService;
 import org.jetbrains.annotations.NotNull;
-import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
@@ -24,13 +33,26 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.security.Principal;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.concurrent.ForkJoinPool;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static com.sothawo.taboo3.links.LinkCheckService.TAG_TO_VALIDATE;
 import static com.sothawo.taboo3.mvc.AddEditConfigBuilder.anAddEditConfig;
 import static com.sothawo.taboo3.mvc.LoadTitleRequestBuilder.aLoadTitleRequest;
 
@@ -46,31 +68,37 @@ public class BookmarkController {
 
     private static final Logger logger = LoggerFactory.getLogger(BookmarkController.class);
 
-    /**
-     * user agent that jsoup sends when fetching the page title. Some sites send 403, when no known user agent is
-     * sent).
-     */
-    private static final String JSOUP_USER_AGENT =
-            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_11_1) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/45.0.2454.101 Safari/537.36";
-    private static final String TAG_TO_VALIDATE = "_to_validate";
-
     private final BookmarkService bookmarkService;
+    private final TitleService titleService;
+    private final BulkJobService bulkJobService;
+    private final LinkCheckService linkCheckService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public BookmarkController(BookmarkService bookmarkService) {
+    public BookmarkController(BookmarkService bookmarkService, TitleService titleService,
+                              BulkJobService bulkJobService, LinkCheckService linkCheckService,
+                              ObjectMapper objectMapper) {
         this.bookmarkService = bookmarkService;
+        this.titleService = titleService;
+        this.bulkJobService = bulkJobService;
+        this.linkCheckService = linkCheckService;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * display the given Bookmark and request deletion confirmation. If no bookmarks is found, the user is redirected to
      * the bookmark list size.
      *
+     * @param principal
+     *         the user owning the bookmark
+     * @param id
+     *         the id of the bookmark to delete
      * @return ModelAndView for the confirm page.
      */
     @GetMapping("/delete/{id}")
-    public ModelAndView showForDelete(@PathVariable String id) {
+    public ModelAndView showForDelete(@AuthenticationPrincipal Principal principal, @PathVariable String id) {
         logger.info("delete view requested for id {}", id);
-        return bookmarkService.findById(id)
+        return bookmarkService.findById(principal.getName(), id)
                 .map(bookmark -> new ModelAndView("delete")
                         .addObject("bookmark", bookmark))
                 .orElse(new ModelAndView("redirect:/"));
@@ -79,15 +107,17 @@ public class BookmarkController {
     /**
      * called to do a delete.
      *
+     * @param principal
+     *         the user owning the bookmark
      * @param id
      *         the id of the bookmark to delete
      * @return redirect to the list view
      */
     @PostMapping("/delete/{id}")
-    public ModelAndView doDelete(@PathVariable String id) {
+    public ModelAndView doDelete(@AuthenticationPrincipal Principal principal, @PathVariable String id) {
         logger.info("deleting bookmark with id {}", id);
         try {
-            bookmarkService.deleteBookmark(id);
+            bookmarkService.deleteBookmark(principal.getName(), id);
         } catch (Exception e) {
             logger.warn(e.getMessage());
         }
@@ -97,14 +127,16 @@ public class BookmarkController {
     /**
      * displays a bookmark for editing.
      *
+     * @param principal
+     *         the user owning the bookmark
      * @param id
      *         the id of the bookmark.
      * @return MOdelAndView for editing or redirect to home page if bookmark is not found
      */
     @GetMapping("/edit/{id}")
-    public ModelAndView showForEdit(@PathVariable String id) {
+    public ModelAndView showForEdit(@AuthenticationPrincipal Principal principal, @PathVariable String id) {
         logger.info("edit view requested for id {}", id);
-        return bookmarkService.findById(id)
+        return bookmarkService.findById(principal.getName(), id)
                 .map(bookmark -> new ModelAndView("edit")
                         .addObject("bookmark", new BookmarkEdit(bookmark))
                         .addObject("config", anAddEditConfig().withCaption("edit bookmark").withButtonLabel("update")
@@ -138,7 +170,7 @@ public class BookmarkController {
         if ("edit".equals(mode)) {
             logger.info("updating {}", bookmarkEdit);
             if (!bookmarkEdit.getOriginalId().equals(bookmarkEdit.getId())) {
-                bookmarkService.deleteBookmark(bookmarkEdit.getOriginalId());
+                bookmarkService.deleteBookmark(principal.getName(), bookmarkEdit.getOriginalId());
             }
             bookmarkService.save(bookmarkEdit.getBookmark());
         } else if ("add".equals(mode)) {
@@ -150,29 +182,35 @@ public class BookmarkController {
     }
 
     /**
-     * shows the view for adding a bookmark.
+     * shows the view for adding a bookmark. When a url is given, the view is rendered after the title has been
+     * loaded, without blocking a request thread while loading.
      *
      * @param url
      *         optional argument to preload a url, used for bookmarklet
      * @return ModelAndView for editiing with a new empty BookmarkEdit object.
      */
     @GetMapping("/add")
-    public ModelAndView showForAdd(@RequestParam(required = false) String url) {
+    public CompletableFuture<ModelAndView> showForAdd(@RequestParam(required = false) String url) {
         final BookmarkEdit bookmarkEdit = new BookmarkEdit();
-        if (null != url) {
-            bookmarkEdit.setUrl(url);
-            final ResponseEntity<String> responseEntity = loadTitle(aLoadTitleRequest().withUrl(url).build());
-            if (HttpStatus.OK.equals(responseEntity.getStatusCode())) {
-                bookmarkEdit.setTitle(responseEntity.getBody());
-            }
-        }
-        return new ModelAndView("edit").addObject("bookmark", bookmarkEdit)
+        final ModelAndView mav = new ModelAndView("edit").addObject("bookmark", bookmarkEdit)
                 .addObject("config",
                         anAddEditConfig().withCaption("add bookmark").withButtonLabel("add").withMode("add").build());
+        if (null == url) {
+            return CompletableFuture.completedFuture(mav);
+        }
+        bookmarkEdit.setUrl(url);
+        return loadTitle(aLoadTitleRequest().withUrl(url).build())
+                .thenApply(responseEntity -> {
+                    if (HttpStatus.OK.equals(responseEntity.getStatusCode())) {
+                        bookmarkEdit.setTitle(responseEntity.getBody());
+                    }
+                    return mav;
+                });
     }
 
     /**
-     * extracts the title for a webpage.
+     * extracts the title for a webpage. The page is loaded asynchronously; if too many loads are pending, the
+     * request is rejected with status SERVICE_UNAVAILABLE.
      *
      * @param loadTitleRequest
      *         the request object conatining the url.
@@ -181,86 +219,262 @@ public class BookmarkController {
     @PostMapping("/loadtitle")
     @ResponseBody
     @NotNull
-    public ResponseEntity<String> loadTitle(LoadTitleRequest loadTitleRequest) {
+    public CompletableFuture<ResponseEntity<String>> loadTitle(LoadTitleRequest loadTitleRequest) {
         String urlString = loadTitleRequest.getUrl();
-        if (null != urlString && !urlString.isEmpty()) {
-            if (!urlString.startsWith("http")) {
-                urlString = "http://" + urlString;
-            }
-            final String finalUrl = urlString;
-            logger.info("loading title for url {}", finalUrl);
-            try {
-                String htmlTitle = Jsoup
-                        .connect(finalUrl)
-                        .timeout(5000)
-                        .userAgent(JSOUP_USER_AGENT)
-                        .get()
-                        .title();
-                logger.info("got title: {}", htmlTitle);
-                return new ResponseEntity<>(htmlTitle, HttpStatus.OK);
-            } catch (HttpStatusException e) {
-                logger.info("loading url http error", e);
-                return new ResponseEntity<>(HttpStatus.valueOf(e.getStatusCode()));
-            } catch (IOException e) {
-                logger.info("loading url error", e);
-            }
+        if (null == urlString || urlString.isEmpty()) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.NO_CONTENT));
         }
-        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        return titleService.loadTitle(urlString)
+                .thenApply(titleResult -> titleResult.isOk()
+                        ? new ResponseEntity<>(titleResult.getTitle(), HttpStatus.OK)
+                        : new ResponseEntity<String>(titleResult.getStatus()))
+                .exceptionally(throwable -> {
+                    if (throwable instanceof CompletionException) {
+                        throwable = throwable.getCause();
+                    }
+                    if (throwable instanceof RejectedExecutionException) {
+                        return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+                    }
+                    logger.info("loading title failed", throwable);
+                    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+                });
     }
 
     /**
      * inserts a whole array of bookmarks into the service. id values contained in the repository are recalculated by
-     * setting the owner to the principal.
+     * setting the owner to the principal. The array is parsed incrementally from the request body and saved in bulk
+     * batches, so it is never held in memory as a whole. With the parameter <i>import=true</i> the bookmarks are saved
+     * with the import mode of the BookmarkService, so large uploads like restoring a dump are not slowed down by
+     * refreshing the index; as this changes the settings of the index for all users, it is not the default.
      *
      * @param principal
      *         the user calling the service
-     * @param bookmarks
-     *         the bookmarks to insert
-     * @return status code with message
+     * @param importMode
+     *         whether the bookmarks are saved in import mode
+     * @param inputStream
+     *         the request body containing the JSON array of bookmarks
+     * @return status code with the number of saved and failed bookmarks per batch, the duration and the throughput.
+     * If the data is not a valid array of bookmarks, BAD_REQUEST with the error message and the batches saved before
+     * the invalid data was read
+     * @throws IOException
+     *         if the request body cannot be read
      */
     @PostMapping("/upload")
     @ResponseBody
-    public ResponseEntity<String> upload(@AuthenticationPrincipal Principal principal,
-                                         @RequestBody Bookmark[] bookmarks) {
-        logger.info("should upload {} bookmarks", bookmarks.length);
-        for (Bookmark bookmark : bookmarks) {
-            bookmark.setOwner(principal.getName());
+    public ResponseEntity<?> upload(@AuthenticationPrincipal Principal principal,
+                                    @RequestParam(name = "import", defaultValue = "false") boolean importMode,
+                                    InputStream inputStream) throws IOException {
+        final String owner = principal.getName();
+        logger.info("uploading bookmarks for {}", owner);
+        final BulkResult bulkResult = new BulkResult();
+        try (MappingIterator<Bookmark> iterator = objectMapper.readerFor(Bookmark.class).readValues(inputStream)) {
+            final Stream<Bookmark> bookmarks =
+                    StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                            .peek(bookmark -> bookmark.setOwner(owner));
+            if (importMode) {
+                bookmarkService.bulkImport(bookmarks, bulkResult);
+            } else {
+                bookmarkService.bulkSave(bookmarks, bulkResult);
+            }
+            logger.info("uploaded bookmarks for {}: {}", owner, bulkResult);
+            return new ResponseEntity<>(bulkResult, HttpStatus.OK);
+        } catch (JsonProcessingException e) {
+            return invalidUpload(owner, e, bulkResult);
+        } catch (RuntimeException e) {
+            // the MappingIterator wraps errors from reading the next bookmark in unchecked exceptions
+            if (e.getCause() instanceof JsonProcessingException) {
+                return invalidUpload(owner, (JsonProcessingException) e.getCause(), bulkResult);
+            }
+            throw e;
         }
-        bookmarkService.save(Arrays.asList(bookmarks));
-        return new ResponseEntity<>("OK", HttpStatus.OK);
+    }
+
+    @NotNull
+    private ResponseEntity<UploadError> invalidUpload(@NotNull String owner, @NotNull JsonProcessingException e,
+                                                      @NotNull BulkResult bulkResult) {
+        logger.info("invalid upload data for {}, saved before: {}", owner, bulkResult, e);
+        return new ResponseEntity<>(new UploadError(e.getMessage(), bulkResult), HttpStatus.BAD_REQUEST);
     }
 
     /**
-     * dumps all bookmarks for a given principal.
+     * dumps all bookmarks for a given principal. The bookmarks are written as a JSON array directly to the response
+     * while they are scrolled from the repository, so memory use does not depend on the number of bookmarks.
      *
      * @param principal
      *         the principal whose bookmarks are to be dumped.
-     * @return possibliy empty list of bookmarks
+     * @return body writing the possibly empty list of bookmarks
      */
     @GetMapping("/dump")
     @ResponseBody
-    public ResponseEntity<Collection<Bookmark>> dumpBookmarks(@AuthenticationPrincipal Principal principal) {
-        final Collection<Bookmark> bookmarks = bookmarkService.findByOwner(principal.getName());
-        return new ResponseEntity<>(bookmarks, HttpStatus.OK);
+    public ResponseEntity<StreamingResponseBody> dumpBookmarks(@AuthenticationPrincipal Principal principal) {
+        final String owner = principal.getName();
+        final StreamingResponseBody body = outputStream -> {
+            try (Stream<Bookmark> bookmarks = bookmarkService.streamByOwner(owner);
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)
+                         .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                generator.writeStartArray();
+                final Iterator<Bookmark> iterator = bookmarks.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
     }
 
     /**
-     * adds the tag {@link #TAG_TO_VALIDATE} to each bookmarks
+     * starts a background job adding the tag {@link LinkCheckService#TAG_TO_VALIDATE} to each bookmark. The bookmarks
+     * are updated with bulk requests; the job's progress can be watched and the job can be cancelled with the /jobs
+     * endpoints.
      *
      * @param principal
      *         the principal whose bookmarks are to be marked.
-     * @return accepted status
+     * @return the job with accepted status, or SERVICE_UNAVAILABLE if too many jobs are pending
      */
     @GetMapping("/markForValidate")
     @ResponseBody
-    public ResponseEntity<String> markForValidate(@AuthenticationPrincipal Principal principal) {
-        ForkJoinPool.commonPool().execute(() -> {
-            final Collection<Bookmark> bookmarks = bookmarkService.findByOwner(principal.getName());
-            bookmarks.forEach(bookmark -> {
-                bookmark.addTag(TAG_TO_VALIDATE);
-                bookmarkService.save(bookmark);
-            });
-        });
-        return new ResponseEntity<>("started to mark", HttpStatus.ACCEPTED);
+    public ResponseEntity<BulkJob> markForValidate(@AuthenticationPrincipal Principal principal) {
+        final String owner = principal.getName();
+        return submitJob(owner, "markForValidate", bookmarkService.countByOwner(owner),
+                j -> bookmarkService.bulkUpdateByOwner(owner,
+                        j.track(bookmark -> bookmark.addTag(TAG_TO_VALIDATE)), j.getBulkResult()));
+    }
+
+    /**
+     * starts a background job deleting the bookmarks of the principal that have all the given tags. The bookmarks are
+     * deleted in batches without loading them; the job reports the number of deleted bookmarks as succeeded.
+     *
+     * @param principal
+     *         the principal whose bookmarks are to be deleted.
+     * @param tags
+     *         the tags, at least one is needed
+     * @return the job with accepted status, or SERVICE_UNAVAILABLE if too many jobs are pending
+     */
+    @PostMapping("/deleteByTags")
+    @ResponseBody
+    public ResponseEntity<BulkJob> deleteByTags(@AuthenticationPrincipal Principal principal,
+                                                @RequestParam("tag") List<String> tags) {
+        final String owner = principal.getName();
+        if (tags.stream().allMatch(String::isEmpty)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return submitJob(owner, "deleteByTags", bookmarkService.countByOwnerAndTags(owner, tags),
+                j -> bookmarkService.bulkDeleteByOwnerAndTags(owner, tags, j.getBulkResult(), j.track(id -> {
+                })));
+    }
+
+    /**
+     * starts a background job deleting bookmarks of the principal by their ids, which are sent as json array in the
+     * request body. Ids that are not found or belong to another user are skipped, so the number of deleted
+     * bookmarks which the job reports as succeeded may be less than the number of ids.
+     *
+     * @param principal
+     *         the principal whose bookmarks are to be deleted.
+     * @param ids
+     *         the ids of the bookmarks
+     * @return the job with accepted status, or SERVICE_UNAVAILABLE if too many jobs are pending
+     */
+    @PostMapping(value = "/deleteByIds", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<BulkJob> deleteByIds(@AuthenticationPrincipal Principal principal,
+                                               @RequestBody List<String> ids) {
+        final String owner = principal.getName();
+        return submitJob(owner, "deleteByIds", ids.size(),
+                j -> bookmarkService.bulkDeleteByIds(owner, ids, j.getBulkResult(), j.track(id -> {
+                })));
+    }
+
+    /**
+     * starts a background job renaming tags of the principal's bookmarks. Each of the given tags is replaced with the
+     * new tag; giving several tags merges them. The job reports the number of changed bookmarks as succeeded.
+     *
+     * @param principal
+     *         the principal whose bookmarks are to be changed.
+     * @param tags
+     *         the tags to rename
+     * @param newTag
+     *         the new tag
+     * @return the job with accepted status, BAD_REQUEST if a tag is empty or SERVICE_UNAVAILABLE if too many jobs
+     * are pending
+     */
+    @PostMapping("/tags/rename")
+    @ResponseBody
+    public ResponseEntity<BulkJob> renameTags(@AuthenticationPrincipal Principal principal,
+                                              @RequestParam("tag") List<String> tags,
+                                              @RequestParam("to") String newTag) {
+        final List<String> trimmedTags = tags.stream().map(String::trim).collect(Collectors.toList());
+        final String trimmedNewTag = newTag.trim();
+        if (trimmedNewTag.isEmpty() || trimmedTags.stream().anyMatch(String::isEmpty)) {
+            return ResponseEntity.badRequest().build();
+        }
+        final String owner = principal.getName();
+        final String lowerNewTag = trimmedNewTag.toLowerCase();
+        final Map<String, Long> tagCounts = bookmarkService.findAllTagCountsByOwner(owner);
+        // bookmarks having several of the tags are counted more than once
+        final long total = trimmedTags.stream()
+                .map(String::toLowerCase)
+                .distinct()
+                .filter(tag -> !tag.equals(lowerNewTag))
+                .mapToLong(tag -> tagCounts.getOrDefault(tag, 0L))
+                .sum();
+        return submitJob(owner, "renameTags", total,
+                j -> bookmarkService.renameTags(owner, trimmedTags, lowerNewTag, j.getBulkResult(), j.track(bookmark -> {
+                })));
+    }
+
+    /**
+     * starts a background job removing a tag from the principal's bookmarks. The job reports the number of changed
+     * bookmarks as succeeded.
+     *
+     * @param principal
+     *         the principal whose bookmarks are to be changed.
+     * @param tag
+     *         the tag to remove
+     * @return the job with accepted status, BAD_REQUEST if the tag is empty or SERVICE_UNAVAILABLE if too many jobs
+     * are pending
+     */
+    @PostMapping("/tags/remove")
+    @ResponseBody
+    public ResponseEntity<BulkJob> removeTag(@AuthenticationPrincipal Principal principal,
+                                             @RequestParam("tag") String tag) {
+        final String trimmedTag = tag.trim();
+        if (trimmedTag.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        final String owner = principal.getName();
+        return submitJob(owner, "removeTag",
+                bookmarkService.countByOwnerAndTags(owner, Collections.singletonList(trimmedTag)),
+                j -> bookmarkService.removeTag(owner, trimmedTag, j.getBulkResult(), j.track(bookmark -> {
+                })));
+    }
+
+    @NotNull
+    private ResponseEntity<BulkJob> submitJob(@NotNull String owner, @NotNull String name, long total,
+                                                 @NotNull BulkJobTask task) {
+        try {
+            final BulkJob job = bulkJobService.submit(owner, name, total, task);
+            return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getId())).body(job);
+        } catch (RejectedExecutionException e) {
+            logger.info("job queue full, rejecting {} for {}", name, owner);
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * starts a background job checking the links of the bookmarks tagged with
+     * {@link LinkCheckService#TAG_TO_VALIDATE}. The check result is stored with each bookmark, and the tag is
+     * removed from bookmarks whose link is healthy.
+     *
+     * @param principal
+     *         the principal whose bookmarks are to be checked.
+     * @return the job with accepted status, or SERVICE_UNAVAILABLE if too many jobs are pending
+     */
+    @PostMapping("/validate")
+    @ResponseBody
+    public ResponseEntity<BulkJob> validate(@AuthenticationPrincipal Principal principal) {
+        final String owner = principal.getName();
+        return submitJob(owner, "validate", linkCheckService.countTaggedLinks(owner),
+                j -> linkCheckService.checkTaggedLinks(owner, j));
     }
 }
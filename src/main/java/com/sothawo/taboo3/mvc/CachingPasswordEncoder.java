@@ -0,0 +1,135 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.mvc;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PasswordEncoder that remembers successful password checks for a short time, so that repeated HTTP Basic requests
+ * with the same credentials do not pay for the expensive hash of the delegate each time. Only successful checks are
+ * cached; a wrong password always goes to the delegate, so guessing passwords is not made cheaper.
+ * <p>
+ * The cache key is an HMAC of the stored password hash and the raw password with a random key that only exists in
+ * memory, so the cache holds neither the password nor a value that can be checked against guesses offline. As the
+ * stored hash is salted per user, the key is specific to the user; a changed password has a different hash and
+ * misses the cache.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /** the encoder doing the real work. */
+    private final PasswordEncoder delegate;
+    /** the maximum number of entries. */
+    private final int maxSize;
+    /** the time a successful check is remembered. */
+    private final Duration ttl;
+    /** the clock to determine expiry. */
+    private final Clock clock;
+    /** one Mac per thread as Mac is not thread safe. */
+    private final ThreadLocal<Mac> mac;
+
+    /** the expiry time of the verified credentials in access order, guarded by itself. */
+    private final Map<String, Instant> verified;
+
+    public CachingPasswordEncoder(@NotNull PasswordEncoder delegate, int maxSize, @NotNull Duration ttl,
+                                  @NotNull Clock clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.clock = clock;
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        final SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                final Mac m = Mac.getInstance(HMAC_ALGORITHM);
+                m.init(keySpec);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        this.verified = new LinkedHashMap<String, Instant>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+                return size() > CachingPasswordEncoder.this.maxSize;
+            }
+        };
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (null == rawPassword || null == encodedPassword) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        final String key = key(rawPassword, encodedPassword);
+        synchronized (verified) {
+            final Instant expiresAt = verified.get(key);
+            if (null != expiresAt) {
+                if (clock.instant().isBefore(expiresAt)) {
+                    return true;
+                }
+                verified.remove(key);
+            }
+        }
+        final boolean matches = delegate.matches(rawPassword, encodedPassword);
+        if (matches) {
+            synchronized (verified) {
+                verified.put(key, clock.instant().plus(ttl));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * removes all remembered checks.
+     */
+    public void clear() {
+        synchronized (verified) {
+            verified.clear();
+        }
+    }
+
+    /**
+     * @return the number of remembered checks, including expired ones that were not yet removed
+     */
+    public int size() {
+        synchronized (verified) {
+            return verified.size();
+        }
+    }
+
+    @NotNull
+    private String key(@NotNull CharSequence rawPassword, @NotNull String encodedPassword) {
+        final Mac m = mac.get();
+        m.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+        // separates the parts, a hash never contains a zero byte
+        m.update((byte) 0);
+        return Base64.getEncoder().encodeToString(m.doFinal(rawPassword.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
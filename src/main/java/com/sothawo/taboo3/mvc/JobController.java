@@ -0,0 +1,89 @@
+/*
+ * (c) Copyright 2017 sothawo.com
+ */
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.jobs.BulkJob;
+import com.sothawo.taboo3.jobs.BulkJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * Controller to watch and cancel the background jobs of the current user.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Controller
+@RequestMapping("/jobs")
+public class JobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobController.class);
+
+    private final BulkJobService bulkJobService;
+
+    @Autowired
+    public JobController(BulkJobService bulkJobService) {
+        this.bulkJobService = bulkJobService;
+    }
+
+    /**
+     * returns the jobs of the principal.
+     *
+     * @param principal
+     *         the user
+     * @return the jobs
+     */
+    @GetMapping
+    @ResponseBody
+    public List<BulkJob> jobs(@AuthenticationPrincipal Principal principal) {
+        return bulkJobService.findJobs(principal.getName());
+    }
+
+    /**
+     * returns the state and progress of a job.
+     *
+     * @param principal
+     *         the user
+     * @param id
+     *         the job id
+     * @return the job or NOT_FOUND
+     */
+    @GetMapping("/{id}")
+    @ResponseBody
+    public ResponseEntity<BulkJob> job(@AuthenticationPrincipal Principal principal, @PathVariable String id) {
+        return bulkJobService.findJob(principal.getName(), id)
+                .map(ResponseEntity::ok)
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * cancels a job.
+     *
+     * @param principal
+     *         the user
+     * @param id
+     *         the job id
+     * @return the job with status ACCEPTED or NOT_FOUND
+     */
+    @PostMapping("/{id}/cancel")
+    @ResponseBody
+    public ResponseEntity<BulkJob> cancel(@AuthenticationPrincipal Principal principal, @PathVariable String id) {
+        logger.info("cancel requested for job {}", id);
+        return bulkJobService.cancel(principal.getName(), id)
+                .map(job -> new ResponseEntity<>(job, HttpStatus.ACCEPTED))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+}
@@ -5,10 +5,15 @@ package com.sothawo.taboo3.mvc;
 
 import com.sothawo.taboo3.data.Bookmark;
 import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.data.PageCursor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -36,22 +41,39 @@ public class ListController {
 
     private final SessionStore sessionStore;
     private final BookmarkService bookmarkService;
+    /** the number of bookmarks displayed on one page. */
+    private final int pageSize;
+    /** the maximum number of bookmarks in the snapshot of a result, 0 to disable snapshots. */
+    private final int snapshotMaxSize;
 
     @Autowired
-    public ListController(SessionStore sessionStore, BookmarkService bookmarkService) {
+    public ListController(SessionStore sessionStore, BookmarkService bookmarkService,
+                          @Value("${taboo3.list.page-size:50}") int pageSize,
+                          @Value("${taboo3.list.snapshot.max-size:5000}") int snapshotMaxSize) {
         this.sessionStore = sessionStore;
         this.bookmarkService = bookmarkService;
+        this.pageSize = pageSize;
+        this.snapshotMaxSize = snapshotMaxSize;
     }
 
     /**
-     * returns all bookmarks to display. Takes the slection criteria from the injected SessionStorage.
+     * returns one page of the bookmarks to display. Takes the slection criteria from the injected SessionStorage.
+     * The bookmarks are sorted by title and id. The link to the next page has the page number and the cursor of the
+     * last bookmark of the page; when a cursor is given, the page is loaded after it, so the cost of a page does not
+     * grow with the page number. Without cursor, the page is addressed by its number.
+     * <p>
+     * When the result of a selection is small enough, a {@link ResultSnapshot} of it is kept in the session. The pages
+     * and the available tags of the result and of selecting another tag are then answered from the snapshot, only the
+     * bookmarks of the displayed page are loaded from the store by their ids.
      *
      * @return model data and view name
      */
     @GetMapping
     public ModelAndView bookmarksList(@AuthenticationPrincipal Principal principal,
                                       @RequestParam(value = "selectTag", required = false) String selectTag,
-                                      @RequestParam(value = "deselectTag", required = false) String deselectTag) {
+                                      @RequestParam(value = "deselectTag", required = false) String deselectTag,
+                                      @RequestParam(value = "page", defaultValue = "0") int page,
+                                      @RequestParam(value = "after", required = false) String after) {
         ModelAndView mav = new ModelAndView("list");
 
         String owner = (null != principal) ? principal.getName() : null;
@@ -61,44 +83,86 @@ public class ListController {
             sessionStore.removeSelectedTag(deselectTag);
 
             Collection<Bookmark> bookmarks = new ArrayList<>();
-            final Collection<String> availableTags = new ArrayList<>();
+            final List<String> availableTags;
             final Collection<String> selectedTags = sessionStore.getSelectedTags();
 
             final String searchText = sessionStore.getSearchText();
             if (sessionStore.hasSelectCriteria()) {
-                if (null != searchText && !searchText.isEmpty()) {
-                    if (selectedTags.isEmpty()) {
-                        bookmarks = bookmarkService.findByOwnerAndTitle(owner, searchText);
+                // the version must be taken before the store is queried, so a concurrent change outdates the snapshot
+                final long version = bookmarkService.getOwnerVersion(owner);
+                ResultSnapshot snapshot = sessionStore.getResultSnapshot();
+                if (null != snapshot && snapshot.canNarrowTo(owner, version, searchText, selectedTags)) {
+                    logger.debug("narrowing {}", snapshot);
+                    snapshot = snapshot.narrow(selectedTags);
+                } else {
+                    snapshot = createSnapshot(owner, version, searchText, selectedTags);
+                }
+
+                final int pageNumber = Math.max(0, page);
+                final PageCursor cursor = PageCursor.decode(after).orElse(null);
+                final List<Bookmark> pageBookmarks;
+                final boolean hasNext;
+                if (null == snapshot && null != cursor) {
+                    // one more bookmark than displayed is loaded to find out if there is a next page
+                    final List<Bookmark> slice = bookmarkService.findByOwnerAndSelectionAfter(owner, searchText,
+                            selectedTags, cursor, pageSize + 1);
+                    hasNext = slice.size() > pageSize;
+                    pageBookmarks = hasNext ? slice.subList(0, pageSize) : slice;
+                    // available tags are the tags from all matching bookmarks which are not selected.
+                    availableTags = availableTags(
+                            bookmarkService.findAllTagCountsByOwnerAndSelection(owner, searchText, selectedTags)
+                                    .keySet(),
+                            selectedTags);
+                } else if (null == snapshot) {
+                    final Page<Bookmark> bookmarkPage =
+                            bookmarkService.findByOwnerAndSelection(owner, searchText, selectedTags,
+                                    new PageRequest(pageNumber, pageSize));
+                    mav.addObject("bookmarksMessage", bookmarkPage.getTotalElements() + " bookmarks found.");
+                    hasNext = bookmarkPage.hasNext();
+                    pageBookmarks = bookmarkPage.getContent();
+                    availableTags = availableTags(
+                            bookmarkService.findAllTagCountsByOwnerAndSelection(owner, searchText, selectedTags)
+                                    .keySet(),
+                            selectedTags);
+                } else {
+                    mav.addObject("bookmarksMessage", snapshot.size() + " bookmarks found.");
+                    List<String> ids;
+                    if (null != cursor) {
+                        ids = snapshot.after(cursor, pageSize + 1);
+                        hasNext = ids.size() > pageSize;
+                        ids = hasNext ? ids.subList(0, pageSize) : ids;
                     } else {
-                        bookmarks = bookmarkService.findByOwnerAndTitleAndTags(owner, searchText, selectedTags);
+                        ids = snapshot.page(pageNumber, pageSize);
+                        hasNext = (long) (pageNumber + 1) * pageSize < snapshot.size();
                     }
-                } else {
-                    bookmarks = bookmarkService.findByOwnerAndTags(owner, selectedTags);
+                    pageBookmarks = bookmarkService.findByIds(owner, ids);
+                    availableTags = availableTags(snapshot.tags(), selectedTags);
                 }
-                // available tags are the tags from the bookmarks which are not in the available tags.
-                bookmarks.stream()
-                        .map(Bookmark::getTags).flatMap(Collection::stream)
-                        .collect(Collectors.toSet())
-                        .stream()
-                        .filter(tag -> !selectedTags.contains(tag))
-                        .forEach(availableTags::add);
+                bookmarks = pageBookmarks;
+
+                // the next page is addressed by the cursor of the last bookmark, the page number is kept for going
+                // back
+                if (pageNumber > 0) {
+                    mav.addObject("previousPage", pageNumber - 1);
+                }
+                if (hasNext && !pageBookmarks.isEmpty()) {
+                    mav.addObject("nextPage", pageNumber + 1);
+                    mav.addObject("nextAfter",
+                            PageCursor.of(pageBookmarks.get(pageBookmarks.size() - 1)).encode());
+                }
+                sessionStore.setResultSnapshot(snapshot);
             } else {
                 // leave bookmarks empty
 
                 mav.addObject("bookmarksMessage", "no selection.");
 
                 // get all available tags
-                availableTags.addAll(bookmarkService.findAllTagsByOwner(owner)
-                        .stream()
-                        .filter(tag -> !Objects.isNull(tag))
-                        .filter(tag -> !tag.isEmpty())
-                        .sorted()
-                        .collect(Collectors.toList()));
+                availableTags = availableTags(bookmarkService.findAllTagsByOwner(owner), selectedTags);
             }
 
             // set all objects, eventually to empty lists
             mav.addObject("bookmarks", bookmarks);
-            mav.addObject("availableTags", sortStrings(availableTags));
+            mav.addObject("availableTags", availableTags);
             mav.addObject("selectedTags", sortStrings(selectedTags));
 
             // need this to bind the form to
@@ -107,6 +171,31 @@ public class ListController {
         return mav;
     }
 
+    /**
+     * creates the snapshot of the result of a selection from the positions and tags of the matching bookmarks, which are
+     * loaded with one query; the bookmarks of the displayed page are then loaded by their ids.
+     *
+     * @param owner
+     *         the owner
+     * @param version
+     *         the owner's data version taken before the result was queried
+     * @param searchText
+     *         the search text
+     * @param selectedTags
+     *         the selected tags
+     * @return the snapshot, null if snapshots are disabled or the result is too large
+     */
+    @Nullable
+    private ResultSnapshot createSnapshot(@NotNull String owner, long version, @Nullable String searchText,
+                                          @NotNull Collection<String> selectedTags) {
+        if (snapshotMaxSize <= 0) {
+            return null;
+        }
+        return bookmarkService.findTagsByOwnerAndSelection(owner, searchText, selectedTags, snapshotMaxSize)
+                .map(matches -> ResultSnapshot.of(owner, version, searchText, selectedTags, matches))
+                .orElse(null);
+    }
+
     /**
      * sets the search text and calls the bookmarks method.
      *
@@ -117,8 +206,7 @@ public class ListController {
     @PostMapping("/searchText")
     public ModelAndView searchText(SearchData searchData) {
         if (null != searchData && null != searchData.getText()) {
-            // replace blank with asterisk
-            final String searchText = searchData.getText().trim().replaceAll("\\W+", "*");
+            final String searchText = searchData.getText().trim();
             logger.info("setting search text to {}", searchText);
             sessionStore.setSearchText(searchText);
         }
@@ -136,6 +224,25 @@ public class ListController {
         return new ModelAndView("redirect:/");
     }
 
+    /**
+     * computes the tags that can be added to the selection: the non-empty tags which are not yet selected, sorted.
+     *
+     * @param tags
+     *         the tags of the bookmarks matching the current selection
+     * @param selectedTags
+     *         the selected tags
+     * @return the sorted available tags
+     */
+    @NotNull
+    static List<String> availableTags(@NotNull Collection<String> tags, @NotNull Collection<String> selectedTags) {
+        return tags.stream()
+                .filter(tag -> !Objects.isNull(tag))
+                .filter(tag -> !tag.isEmpty())
+                .filter(tag -> !selectedTags.contains(tag))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
     /**
      * converts a String colleciton to a sorted list.
      *
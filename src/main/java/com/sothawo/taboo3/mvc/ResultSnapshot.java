@@ -0,0 +1,221 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.data.BookmarkTags;
+import com.sothawo.taboo3.data.PageCursor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of the result of a selection: the positions (id and sort title) of the matching bookmarks in the
+ * order of {@link PageCursor#ORDER}, and the tags of each bookmark. The snapshot is stamped with the owner's data version from the
+ * {@link com.sothawo.taboo3.data.BookmarkService}, so it is only used as long as the owner's bookmarks are unchanged.
+ * <p>
+ * Selecting an additional tag narrows the result to a subset of the snapshot, which is computed in memory. Changing
+ * the search text or deselecting a tag needs a new query.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+final class ResultSnapshot {
+
+    private final String owner;
+    private final long version;
+    /** the search text of the selection, null if there is none. */
+    private final String searchText;
+    /** the selected tags, lowercase. */
+    private final Set<String> selectedTags;
+    /** the positions of the matching bookmarks, sorted by {@link PageCursor#ORDER}. */
+    private final PageCursor[] positions;
+    /** the tags of the bookmark with the position at the same index. */
+    private final String[][] tags;
+
+    private ResultSnapshot(String owner, long version, String searchText, Set<String> selectedTags,
+                           PageCursor[] positions, String[][] tags) {
+        this.owner = owner;
+        this.version = version;
+        this.searchText = searchText;
+        this.selectedTags = selectedTags;
+        this.positions = positions;
+        this.tags = tags;
+    }
+
+    /**
+     * builds a snapshot from the positions and tags of the bookmarks matching a selection.
+     *
+     * @param owner
+     *         the owner
+     * @param version
+     *         the owner's data version, taken before the bookmarks were queried
+     * @param searchText
+     *         the search text of the selection
+     * @param selectedTags
+     *         the selected tags
+     * @param matches
+     *         the positions and tags of the matching bookmarks, sorted by {@link PageCursor#ORDER} like the store
+     *         sorts them
+     * @return the snapshot
+     */
+    @NotNull
+    static ResultSnapshot of(@NotNull String owner, long version, @Nullable String searchText,
+                             @NotNull Collection<String> selectedTags, @NotNull List<BookmarkTags> matches) {
+        // the tags of the bookmarks repeat a lot, so only one instance of each is kept
+        final Map<String, String> canonicalTags = new HashMap<>();
+        final PageCursor[] positions = new PageCursor[matches.size()];
+        final String[][] tags = new String[matches.size()][];
+        for (int i = 0; i < positions.length; i++) {
+            final BookmarkTags bookmarkTags = matches.get(i);
+            positions[i] = bookmarkTags.getPosition();
+            tags[i] = bookmarkTags.getTags().stream()
+                    .map(tag -> canonicalTags.computeIfAbsent(tag, t -> t))
+                    .toArray(String[]::new);
+        }
+        return new ResultSnapshot(owner, version, emptyToNull(searchText), lowercase(selectedTags), positions, tags);
+    }
+
+    /**
+     * checks whether the result of a selection can be computed from this snapshot, which is the case when the owner's
+     * data is unchanged, the search text is the same and the selected tags include the ones of this snapshot.
+     *
+     * @param owner
+     *         the owner
+     * @param version
+     *         the owner's current data version
+     * @param searchText
+     *         the search text of the selection
+     * @param selectedTags
+     *         the selected tags
+     * @return true if the selection can be narrowed from this snapshot
+     */
+    boolean canNarrowTo(@NotNull String owner, long version, @Nullable String searchText,
+                        @NotNull Collection<String> selectedTags) {
+        return this.owner.equals(owner) && this.version == version
+                && Objects.equals(this.searchText, emptyToNull(searchText))
+                && lowercase(selectedTags).containsAll(this.selectedTags);
+    }
+
+    /**
+     * computes the snapshot for a selection with additional tags.
+     *
+     * @param selectedTags
+     *         the selected tags, must include the ones of this snapshot
+     * @return the snapshot with the bookmarks having all the selected tags
+     */
+    @NotNull
+    ResultSnapshot narrow(@NotNull Collection<String> selectedTags) {
+        final Set<String> newTags = lowercase(selectedTags);
+        if (newTags.equals(this.selectedTags)) {
+            return this;
+        }
+        final List<String> addedTags = newTags.stream()
+                .filter(tag -> !this.selectedTags.contains(tag))
+                .collect(Collectors.toList());
+        final List<PageCursor> newPositions = new ArrayList<>();
+        final List<String[]> newTagsOfPositions = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            if (Arrays.asList(tags[i]).containsAll(addedTags)) {
+                newPositions.add(positions[i]);
+                newTagsOfPositions.add(tags[i]);
+            }
+        }
+        return new ResultSnapshot(owner, version, searchText, newTags, newPositions.toArray(new PageCursor[0]),
+                newTagsOfPositions.toArray(new String[0][]));
+    }
+
+    /**
+     * @return the number of bookmarks
+     */
+    int size() {
+        return positions.length;
+    }
+
+    /**
+     * returns the ids of one page of the bookmarks.
+     *
+     * @param page
+     *         the page number
+     * @param pageSize
+     *         the page size
+     * @return the ids
+     */
+    @NotNull
+    List<String> page(int page, int pageSize) {
+        final long from = (long) page * pageSize;
+        if (from >= positions.length) {
+            return Collections.emptyList();
+        }
+        return ids((int) from, (int) Math.min(positions.length, from + pageSize));
+    }
+
+    /**
+     * returns the ids of the bookmarks that come after a cursor. The cursor is searched by title and id, so a cursor
+     * of a bookmark that is not in the snapshot continues with the bookmarks following its position.
+     *
+     * @param after
+     *         the cursor of the last bookmark of the previous slice
+     * @param size
+     *         the maximum number of ids
+     * @return the ids
+     */
+    @NotNull
+    List<String> after(@NotNull PageCursor after, int size) {
+        final int index = Arrays.binarySearch(positions, after, PageCursor.ORDER);
+        final int from = index >= 0 ? index + 1 : -index - 1;
+        return ids(from, Math.min(positions.length, from + size));
+    }
+
+    @NotNull
+    private List<String> ids(int from, int to) {
+        final List<String> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(positions[i].getId());
+        }
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * @return the distinct tags of all the bookmarks
+     */
+    @NotNull
+    Set<String> tags() {
+        final Set<String> allTags = new TreeSet<>();
+        for (String[] tagsOfId : tags) {
+            Collections.addAll(allTags, tagsOfId);
+        }
+        return allTags;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultSnapshot{" +
+                "owner='" + owner + '\'' +
+                ", version=" + version +
+                ", searchText='" + searchText + '\'' +
+                ", selectedTags=" + selectedTags +
+                ", size=" + positions.length +
+                '}';
+    }
+
+    @Nullable
+    private static String emptyToNull(@Nullable String s) {
+        return (null == s || s.isEmpty()) ? null : s;
+    }
+
+    @NotNull
+    private static Set<String> lowercase(@NotNull Collection<String> tags) {
+        return tags.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    }
+}
@@ -3,13 +3,28 @@
  */
 package com.sothawo.taboo3.mvc;
 
+import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.csrf.CsrfFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 /**
  * security configuration.
@@ -20,11 +35,28 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    /**
+     * paths of endpoints changing many bookmarks or cancelling jobs that scripts may call without a CSRF token when
+     * they send HTTP Basic credentials. A browser cannot be made to send these credentials by a form on another site, while it does send
+     * the session and remember-me cookies.
+     */
+    static final String[] BASIC_AUTH_CSRF_EXEMPT =
+            {"/bookmark/deleteByTags", "/bookmark/deleteByIds", "/bookmark/tags/rename", "/bookmark/tags/remove",
+                    "/bookmark/validate", "/jobs/*/cancel"};
+
     private final Taboo3UserService userService;
+    /** the maximum number of remembered password checks, 0 disables remembering. */
+    private final int credentialCacheMaxSize;
+    /** the time a successful password check is remembered. */
+    private final long credentialCacheTtlSeconds;
 
     @Autowired
-    public SecurityConfig(Taboo3UserService userService) {
+    public SecurityConfig(Taboo3UserService userService,
+                          @Value("${taboo3.auth.cache.max-size:1000}") int credentialCacheMaxSize,
+                          @Value("${taboo3.auth.cache.ttl-seconds:300}") long credentialCacheTtlSeconds) {
         this.userService = userService;
+        this.credentialCacheMaxSize = credentialCacheMaxSize;
+        this.credentialCacheTtlSeconds = credentialCacheTtlSeconds;
     }
 
     /**
@@ -37,7 +69,41 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
      */
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userService).passwordEncoder(new BCryptPasswordEncoder());
+        auth.userDetailsService(userService).passwordEncoder(passwordEncoder());
+    }
+
+    /**
+     * creates the BCrypt encoder, wrapped in a CachingPasswordEncoder unless that is disabled. The remembered checks
+     * are dropped when the users file changes.
+     *
+     * @return the password encoder
+     */
+    private PasswordEncoder passwordEncoder() {
+        final PasswordEncoder bcrypt = new BCryptPasswordEncoder();
+        if (credentialCacheMaxSize <= 0 || credentialCacheTtlSeconds <= 0) {
+            return bcrypt;
+        }
+        final CachingPasswordEncoder cachingPasswordEncoder = new CachingPasswordEncoder(bcrypt,
+                credentialCacheMaxSize, Duration.ofSeconds(credentialCacheTtlSeconds), Clock.systemUTC());
+        userService.addChangeListener(cachingPasswordEncoder::clear);
+        return cachingPasswordEncoder;
+    }
+
+    /**
+     * @param paths
+     *         ant patterns of paths
+     * @return a matcher for requests to one of the paths that carry HTTP Basic credentials
+     */
+    @NotNull
+    static RequestMatcher basicAuthenticated(@NotNull String... paths) {
+        final RequestMatcher pathMatcher = new OrRequestMatcher(Arrays.stream(paths)
+                .map(AntPathRequestMatcher::new)
+                .collect(Collectors.toList()));
+        return request -> {
+            final String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+            return null != authorization && authorization.regionMatches(true, 0, "Basic ", 0, 6)
+                    && pathMatcher.matches(request);
+        };
     }
 
     /**
@@ -60,6 +126,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .logout().logoutSuccessUrl("/login?logout")
                 .and()
                 .csrf().ignoringAntMatchers("/bookmark/loadtitle", "/bookmark/upload", "/bookmark/dump")
+                .requireCsrfProtectionMatcher(new AndRequestMatcher(CsrfFilter.DEFAULT_CSRF_MATCHER,
+                        new NegatedRequestMatcher(basicAuthenticated(BASIC_AUTH_CSRF_EXEMPT))))
                 .and()
                 .authorizeRequests()
                 .regexMatchers("/(images|css|js|fonts)/.*").permitAll()
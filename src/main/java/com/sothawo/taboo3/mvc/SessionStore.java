@@ -33,6 +33,9 @@ public class SessionStore {
     /** the search text. */
     private String searchText;
 
+    /** the snapshot of the result of the last selection, null if there is none. */
+    private ResultSnapshot resultSnapshot;
+
     public String getSearchText() {
         return searchText;
     }
@@ -41,12 +44,22 @@ public class SessionStore {
         this.searchText = searchText;
     }
 
+    @Nullable
+    ResultSnapshot getResultSnapshot() {
+        return resultSnapshot;
+    }
+
+    void setResultSnapshot(@Nullable ResultSnapshot resultSnapshot) {
+        this.resultSnapshot = resultSnapshot;
+    }
+
     @Override
     public String toString() {
         return "SessionStore{" +
                 "creationTime=" + creationTime +
                 ", selectedTags=" + selectedTags +
                 ", searchText='" + searchText + '\'' +
+                ", resultSnapshot=" + resultSnapshot +
                 '}';
     }
 
@@ -96,5 +109,6 @@ public class SessionStore {
     public void clearSelection() {
         searchText = null;
         selectedTags.clear();
+        resultSnapshot = null;
     }
 }
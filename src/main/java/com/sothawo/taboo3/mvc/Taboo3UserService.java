@@ -15,6 +15,7 @@
 */
 package com.sothawo.taboo3.mvc;
 
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,17 +29,31 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
 
 /**
- * Service to provide User details.
+ * Service to provide User details. The users are read from the configured users file into an immutable map which is
+ * replaced as a whole when the file changes, so lookups need no lock and never read the file. Changes are detected
+ * with a WatchService on the file's directory.
  *
  * @author P.J. Meisch (pj.meisch@sothawo.com).
  */
@@ -49,13 +64,24 @@ public class Taboo3UserService implements UserDetailsService {
     /** Logger for the class */
     private final static Logger log = LoggerFactory.getLogger(Taboo3UserService.class);
 
-
     /** configured user file */
-    @Value("${taboo3.users}")
-    private String userfile;
+    private final Path userfile;
+
+    /** Map with known users. Key is the username, password ist hashed. Replaced when the file is reloaded. */
+    private volatile Map<String, User> knownUsers = Collections.emptyMap();
+
+    /** the service watching the directory of the users file. */
+    private WatchService watchService;
 
-    /** Map with known users. Key is the username, password ist hashed */
-    private final Map<String, User> knownUsers = new HashMap<>();
+    /** called after the users were reloaded. */
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+// --------------------------- CONSTRUCTORS ---------------------------
+
+    @Autowired
+    public Taboo3UserService(@Value("${taboo3.users}") String userfile) {
+        this.userfile = Paths.get(userfile).toAbsolutePath();
+    }
 
 // ------------------------ INTERFACE METHODS ------------------------
 
@@ -64,52 +90,138 @@ public class Taboo3UserService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<User> optionalUser;
-        synchronized (knownUsers) {
-            optionalUser = Optional.ofNullable(knownUsers.get(username));
-            if (!optionalUser.isPresent()) {
-                // reload the data from users file
-                log.debug("loading user data");
-                knownUsers.clear();
-                Optional.ofNullable(userfile)
-                        .ifPresent(filename -> {
-                            log.debug("user file: {}", filename);
-                            try {
-                                Files.lines(Paths.get(filename))
-                                        .map(String::trim)
-                                        .filter(line -> !line.isEmpty())
-                                        .filter(line -> !line.startsWith("#"))
-                                        .forEach(line -> {
-                                            String[] fields = line.split(":");
-                                            if (fields.length == 3) {
-                                                String user = fields[0];
-                                                String hashedPassword = fields[1];
-                                                String[] roles = fields[2].split(",");
-                                                if (roles.length < 1) {
-                                                    roles = new String []{"undef"};
-                                                }
-                                                List<GrantedAuthority> authorities = new ArrayList<>();
-                                                for (String role : roles) {
-                                                    authorities.add(new SimpleGrantedAuthority(role));
-                                                }
-                                                knownUsers.put(user, new User(user, hashedPassword, authorities));
-                                            }
-                                        });
-                                log.debug("loaded {} user(s)", knownUsers.size());
-                            } catch (IOException e) {
-                                log.debug("reading file", e);
-                            }
-                        });
-
-                // search again after reload
-                optionalUser = Optional.ofNullable(knownUsers.get(username));
-            }
+        final User user = knownUsers.get(username);
+        if (null == user) {
+            throw new UsernameNotFoundException(username);
         }
         // need to return a copy as Spring security erases the password in the object after verification
-        User user = optionalUser.orElseThrow(() -> new UsernameNotFoundException(username));
         return new User(user.getUsername(), user.getPassword(), user.getAuthorities());
     }
 
+// -------------------------- OTHER METHODS --------------------------
+
+    /**
+     * registers a listener that is called after the users were reloaded from the changed file, for example to drop
+     * data derived from the old users.
+     *
+     * @param listener
+     *         the listener
+     */
+    public void addChangeListener(@NotNull Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * loads the users and starts watching the users file.
+     *
+     * @throws IOException
+     *         if the directory of the users file cannot be watched
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        reload();
+        final Path directory = userfile.getParent();
+        if (null == directory || !Files.isDirectory(directory)) {
+            log.warn("directory of user file {} does not exist, changes are not detected", userfile);
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        final Thread watcher = new Thread(this::watch, "users-file-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * stops watching the users file.
+     *
+     * @throws IOException
+     *         if the WatchService cannot be closed
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (null != watchService) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * waits for changes in the directory of the users file and reloads the users when the file is affected. Runs
+     * until the WatchService is closed.
+     */
+    private void watch() {
+        final Path filename = userfile.getFileName();
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || filename.equals(event.context());
+                }
+                if (changed) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    log.warn("directory of user file {} is no longer watched", userfile);
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.debug("stopped watching {}", userfile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * reads the users file and replaces the known users. When the file does not exist, there are no users; when it
+     * cannot be read, the previously loaded users are kept.
+     */
+    void reload() {
+        log.debug("loading user data from {}", userfile);
+        final Map<String, User> users = new HashMap<>();
+        try (Stream<String> lines = Files.lines(userfile)) {
+            lines.map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .filter(line -> !line.startsWith("#"))
+                    .forEach(line -> parseUser(line, users));
+        } catch (NoSuchFileException e) {
+            log.warn("user file {} does not exist", userfile);
+        } catch (IOException e) {
+            log.warn("cannot read user file {}, keeping {} user(s)", userfile, knownUsers.size(), e);
+            return;
+        }
+        knownUsers = Collections.unmodifiableMap(users);
+        log.info("loaded {} user(s)", users.size());
+        changeListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * parses a line of the users file with name, hashed password and comma separated roles, separated by colons.
+     *
+     * @param line
+     *         the line
+     * @param users
+     *         the map to add the user to
+     */
+    private static void parseUser(@NotNull String line, @NotNull Map<String, User> users) {
+        String[] fields = line.split(":");
+        if (fields.length == 3) {
+            String user = fields[0];
+            String hashedPassword = fields[1];
+            String[] roles = fields[2].split(",");
+            if (roles.length < 1) {
+                roles = new String[]{"undef"};
+            }
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for (String role : roles) {
+                authorities.add(new SimpleGrantedAuthority(role));
+            }
+            users.put(user, new User(user, hashedPassword, authorities));
+        }
+    }
+
 // --------------------------- main() method ---------------------------
 
     /**
@@ -0,0 +1,40 @@
+/*
+ * (c) Copyright 2017 sothawo.com
+ */
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.data.BulkResult;
+
+/**
+ * response data for an upload with invalid data. The bookmarks read before the invalid data were saved, their batches
+ * are contained in the bulk result.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class UploadError {
+    /** the message describing the invalid data. */
+    private final String message;
+    /** the batches saved before the invalid data was read. */
+    private final BulkResult bulkResult;
+
+    public UploadError(String message, BulkResult bulkResult) {
+        this.message = message;
+        this.bulkResult = bulkResult;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public BulkResult getBulkResult() {
+        return bulkResult;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadError{" +
+                "message='" + message + '\'' +
+                ", bulkResult=" + bulkResult +
+                '}';
+    }
+}
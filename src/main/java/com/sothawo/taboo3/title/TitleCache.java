@@ -0,0 +1,178 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.title;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A bounded cache for page titles keyed by the normalized url. The least recently used entry is evicted when the
+ * cache is full. Successfully loaded titles expire after the ttl, failed loads are cached as negative entries with
+ * their own ttl. Loads that are in progress are kept in the cache as well, so concurrent requests for the same url
+ * share one load.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class TitleCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TitleCache.class);
+
+    /** the maximum number of entries. */
+    private final int maxSize;
+    /** time to live for loaded titles. */
+    private final Duration ttl;
+    /** time to live for failed loads. */
+    private final Duration negativeTtl;
+    /** the clock to determine expiry. */
+    private final Clock clock;
+
+    /** the entries in access order, guarded by itself. */
+    private final Map<String, Entry> entries;
+
+    public TitleCache(int maxSize, @NotNull Duration ttl, @NotNull Duration negativeTtl, @NotNull Clock clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > TitleCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * returns the title result for a url. If the cache has no valid entry for the url and no load is in progress,
+     * the loader is called outside of any lock and its result is stored.
+     *
+     * @param url
+     *         the url
+     * @param loader
+     *         function to load the title for the url
+     * @return future with the title result
+     */
+    @NotNull
+    public CompletableFuture<TitleResult> get(@NotNull String url,
+                                              @NotNull Function<String, CompletableFuture<TitleResult>> loader) {
+        final String key = normalize(url);
+        final Entry entry;
+        synchronized (entries) {
+            final Entry existing = entries.get(key);
+            if (null != existing && !existing.isExpired(clock.instant())) {
+                logger.debug("cache hit for {}", key);
+                return existing.future;
+            }
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+
+        logger.debug("cache miss for {}", key);
+        CompletableFuture<TitleResult> loading;
+        try {
+            loading = loader.apply(url);
+        } catch (RuntimeException e) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(e);
+        }
+        loading.whenComplete((titleResult, throwable) -> {
+            if (null != throwable) {
+                // do not cache unexpected errors
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+                entry.future.completeExceptionally(throwable);
+            } else {
+                entry.expiresAt = clock.instant().plus(titleResult.isOk() ? ttl : negativeTtl);
+                entry.future.complete(titleResult);
+            }
+        });
+        return entry.future;
+    }
+
+    /**
+     * returns the number of entries in the cache, including loads in progress.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * normalizes a url so that equivalent urls map to the same cache entry: a missing scheme is set to http, scheme
+     * and host are converted to lowercase, the default port and the fragment are removed and an empty path is
+     * replaced by /.
+     *
+     * @param url
+     *         the url
+     * @return the normalized url
+     */
+    @NotNull
+    static String normalize(@NotNull String url) {
+        String s = url.trim();
+        if (!s.regionMatches(true, 0, "http", 0, 4)) {
+            s = "http://" + s;
+        }
+        try {
+            final URI uri = new URI(s);
+            if (null == uri.getRawAuthority()) {
+                return s;
+            }
+            final String scheme = null == uri.getScheme() ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+            final String host =
+                    null == uri.getHost() ? uri.getRawAuthority() : uri.getHost().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            final String path = (null == uri.getRawPath() || uri.getRawPath().isEmpty()) ? "/" : uri.getRawPath();
+            final StringBuilder sb = new StringBuilder(scheme).append("://");
+            if (null != uri.getHost() && null != uri.getRawUserInfo()) {
+                sb.append(uri.getRawUserInfo()).append('@');
+            }
+            sb.append(host);
+            if (null != uri.getHost() && port != -1) {
+                sb.append(':').append(port);
+            }
+            sb.append(path);
+            if (null != uri.getRawQuery()) {
+                sb.append('?').append(uri.getRawQuery());
+            }
+            return sb.toString();
+        } catch (URISyntaxException e) {
+            return s;
+        }
+    }
+
+    /**
+     * a cache entry. The expiry is set when the load is finished, until then the entry does not expire.
+     */
+    private static class Entry {
+        private final CompletableFuture<TitleResult> future = new CompletableFuture<>();
+        private volatile Instant expiresAt;
+
+        boolean isExpired(Instant now) {
+            final Instant expiry = expiresAt;
+            return null != expiry && !now.isBefore(expiry);
+        }
+    }
+}
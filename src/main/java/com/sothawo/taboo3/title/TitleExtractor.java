@@ -0,0 +1,301 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.title;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts the title of a web page without loading the whole page. The response is read in chunks until the end of
+ * the html head (or a non-empty title) is seen, or until the configured maximum number of bytes is read. Only this
+ * part is parsed. If the page has no title, the og:title meta property is used.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class TitleExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TitleExtractor.class);
+
+    /** the maximum number of redirects that are followed. */
+    private static final int MAX_REDIRECTS = 5;
+    /** the size of the chunks read from the response. */
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final byte[] TITLE_START = "<title".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TITLE_END = "</title".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEAD_END = "</head".getBytes(StandardCharsets.US_ASCII);
+
+    /** charset from a Content-Type header or meta tag. */
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /** the maximum number of bytes read from a response. */
+    private final int maxBytes;
+    /** connect and read timeout in milliseconds. */
+    private final int timeoutMillis;
+    /** the user agent sent with the requests. */
+    private final String userAgent;
+
+    public TitleExtractor(int maxBytes, int timeoutMillis, @NotNull String userAgent) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * loads the beginning of a web page and extracts the title.
+     *
+     * @param url
+     *         the url of the page
+     * @return the title result, OK with a possibly empty title or the http error status
+     * @throws IOException
+     *         if the page cannot be loaded
+     */
+    @NotNull
+    public TitleResult extract(@NotNull String url) throws IOException {
+        URL currentUrl = new URL(url);
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            final HttpURLConnection connection = (HttpURLConnection) currentUrl.openConnection();
+            try {
+                connection.setInstanceFollowRedirects(false);
+                connection.setConnectTimeout(timeoutMillis);
+                connection.setReadTimeout(timeoutMillis);
+                connection.setRequestProperty("User-Agent", userAgent);
+                connection.setRequestProperty("Accept", "text/html,application/xhtml+xml");
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+
+                final int status = connection.getResponseCode();
+                if (status >= 300 && status < 400 && null != connection.getHeaderField("Location")) {
+                    currentUrl = new URL(currentUrl, connection.getHeaderField("Location"));
+                    logger.debug("redirected to {}", currentUrl);
+                    continue;
+                }
+                if (status >= 400) {
+                    return TitleResult.ofError(resolveStatus(status));
+                }
+                try (InputStream inputStream = responseStream(connection)) {
+                    final byte[] head = readHead(inputStream);
+                    final Charset charset = detectCharset(connection.getContentType(), head);
+                    return TitleResult.ofTitle(extractTitle(new String(head, charset), currentUrl.toString()));
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+        logger.info("too many redirects for {}", url);
+        return TitleResult.ofError(HttpStatus.NO_CONTENT);
+    }
+
+    /**
+     * reads the response until the end of the head or a non-empty title is found or the maximum number of bytes is
+     * read.
+     *
+     * @param inputStream
+     *         the response stream
+     * @return the bytes read
+     * @throws IOException
+     *         on read errors
+     */
+    @NotNull
+    byte[] readHead(@NotNull InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[Math.min(maxBytes, CHUNK_SIZE)];
+        int filled = 0;
+        int searchFrom = 0;
+        int titleStart = -1;
+        boolean titleChecked = false;
+        while (filled < maxBytes) {
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes, 2L * buffer.length));
+            }
+            final int read = inputStream.read(buffer, filled, buffer.length - filled);
+            if (read == -1) {
+                break;
+            }
+            filled += read;
+            if (indexOfIgnoreCase(buffer, filled, HEAD_END, searchFrom) >= 0) {
+                break;
+            }
+            if (!titleChecked) {
+                if (titleStart < 0) {
+                    titleStart = indexOfIgnoreCase(buffer, filled, TITLE_START, searchFrom);
+                }
+                if (titleStart >= 0) {
+                    final int titleEnd = indexOfIgnoreCase(buffer, filled, TITLE_END,
+                            Math.max(titleStart + TITLE_START.length, searchFrom));
+                    if (titleEnd >= 0) {
+                        if (hasText(buffer, titleStart, titleEnd)) {
+                            break;
+                        }
+                        // an empty title, only the end of the head stops reading now
+                        titleChecked = true;
+                    }
+                }
+            }
+            // markers may span two reads
+            searchFrom = Math.max(0, filled - TITLE_END.length + 1);
+        }
+        return filled == buffer.length ? buffer : Arrays.copyOf(buffer, filled);
+    }
+
+    /**
+     * checks whether a title element has some text.
+     *
+     * @param bytes
+     *         the bytes to search
+     * @param start
+     *         the index of the title start tag
+     * @param end
+     *         the index of the title end tag
+     * @return true if there is a non-whitespace character between the tags
+     */
+    private static boolean hasText(@NotNull byte[] bytes, int start, int end) {
+        int i = start + TITLE_START.length;
+        while (i < end && bytes[i] != '>') {
+            i++;
+        }
+        for (i++; i < end; i++) {
+            if (!Character.isWhitespace(bytes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * parses the html and returns the title or, if that is empty, the og:title property.
+     *
+     * @param html
+     *         the html, usually only the head
+     * @param baseUri
+     *         the url of the page
+     * @return the title, empty if none is found
+     */
+    @NotNull
+    static String extractTitle(@NotNull String html, @NotNull String baseUri) {
+        final Document document = Jsoup.parse(html, baseUri);
+        final String title = document.title();
+        if (!title.isEmpty()) {
+            return title;
+        }
+        return document.select("meta[property=og:title]").attr("content").trim();
+    }
+
+    /**
+     * determines the charset of the page from the Content-Type header or a meta tag, defaulting to UTF-8.
+     *
+     * @param contentType
+     *         the Content-Type header
+     * @param head
+     *         the bytes read from the page
+     * @return the charset
+     */
+    @NotNull
+    static Charset detectCharset(@Nullable String contentType, @NotNull byte[] head) {
+        Charset charset = charsetFrom(contentType);
+        if (null == charset) {
+            charset = charsetFrom(new String(head, StandardCharsets.ISO_8859_1));
+        }
+        return null == charset ? StandardCharsets.UTF_8 : charset;
+    }
+
+    @Nullable
+    private static Charset charsetFrom(@Nullable String s) {
+        if (null != s) {
+            final Matcher matcher = CHARSET_PATTERN.matcher(s);
+            if (matcher.find()) {
+                try {
+                    return Charset.forName(matcher.group(1));
+                } catch (IllegalArgumentException e) {
+                    logger.debug("unsupported charset {}", matcher.group(1));
+                }
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static InputStream responseStream(@NotNull HttpURLConnection connection) throws IOException {
+        final InputStream inputStream = connection.getInputStream();
+        final String contentEncoding = connection.getContentEncoding();
+        if (null != contentEncoding && contentEncoding.toLowerCase(Locale.ROOT).contains("gzip")) {
+            return new GZIPInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    @NotNull
+    private static HttpStatus resolveStatus(int status) {
+        try {
+            return HttpStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return HttpStatus.NO_CONTENT;
+        }
+    }
+
+    /**
+     * searches for an ASCII pattern in a byte array ignoring case.
+     *
+     * @param bytes
+     *         the bytes to search
+     * @param lowerCasePattern
+     *         the pattern in lowercase
+     * @param from
+     *         the start index
+     * @return the index of the pattern or -1
+     */
+    static int indexOfIgnoreCase(@NotNull byte[] bytes, @NotNull byte[] lowerCasePattern, int from) {
+        return indexOfIgnoreCase(bytes, bytes.length, lowerCasePattern, from);
+    }
+
+    /**
+     * searches for an ASCII pattern in the first length bytes of a byte array ignoring case.
+     *
+     * @param bytes
+     *         the bytes to search
+     * @param length
+     *         the number of valid bytes in the array
+     * @param lowerCasePattern
+     *         the pattern in lowercase
+     * @param from
+     *         the start index
+     * @return the index of the pattern or -1
+     */
+    private static int indexOfIgnoreCase(@NotNull byte[] bytes, int length, @NotNull byte[] lowerCasePattern,
+                                         int from) {
+        outer:
+        for (int i = Math.max(0, from); i <= length - lowerCasePattern.length; i++) {
+            for (int j = 0; j < lowerCasePattern.length; j++) {
+                byte b = bytes[i + j];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != lowerCasePattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.title;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpStatus;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The outcome of loading the title of a web page. Either the status is OK and the title is set, or the status is
+ * the http error returned by the site or NO_CONTENT if the page could not be loaded at all.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public final class TitleResult {
+    /** the status of the load. */
+    private final HttpStatus status;
+    /** the title, only set when the status is OK. */
+    private final String title;
+
+    private TitleResult(HttpStatus status, String title) {
+        this.status = requireNonNull(status);
+        this.title = title;
+    }
+
+    /**
+     * creates a result for a successfully loaded title.
+     *
+     * @param title
+     *         the title
+     * @return the result
+     */
+    @NotNull
+    public static TitleResult ofTitle(@NotNull String title) {
+        return new TitleResult(HttpStatus.OK, requireNonNull(title));
+    }
+
+    /**
+     * creates a result for a failed load.
+     *
+     * @param status
+     *         the http status returned by the site or NO_CONTENT if there was no response
+     * @return the result
+     */
+    @NotNull
+    public static TitleResult ofError(@NotNull HttpStatus status) {
+        return new TitleResult(status, null);
+    }
+
+    @NotNull
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * checks whether the title was loaded.
+     *
+     * @return true if the status is OK
+     */
+    public boolean isOk() {
+        return HttpStatus.OK.equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return "TitleResult{" +
+                "status=" + status +
+                ", title='" + title + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * (c) Copyright 2017 sothawo
+ */
+package com.sothawo.taboo3.title;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to load the titles of web pages. The pages are fetched on a dedicated executor with a bounded number of
+ * threads and a bounded queue, so slow sites do not block the request threads of the servlet container. When the
+ * queue is full, new loads are rejected. Results are kept in a {@link TitleCache}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@Component
+public class TitleService implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(TitleService.class);
+
+    /**
+     * user agent that is sent when fetching the page title. Some sites send 403, when no known user agent is
+     * sent).
+     */
+    public static final String USER_AGENT =
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_11_1) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/45.0.2454.101 Safari/537.36";
+
+    /** the cache for the loaded titles. */
+    private final TitleCache titleCache;
+    /** the extractor reading the titles from the pages. */
+    private final TitleExtractor titleExtractor;
+    /** the executor fetching the pages. */
+    private final ThreadPoolExecutor fetchExecutor;
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+
+    @Autowired
+    public TitleService(CounterService counterService, GaugeService gaugeService,
+                        @Value("${taboo3.title.cache.max-size:1000}") int cacheMaxSize,
+                        @Value("${taboo3.title.cache.ttl-seconds:3600}") long cacheTtlSeconds,
+                        @Value("${taboo3.title.cache.negative-ttl-seconds:300}") long cacheNegativeTtlSeconds,
+                        @Value("${taboo3.title.fetch.threads:8}") int fetchThreads,
+                        @Value("${taboo3.title.fetch.queue-capacity:100}") int fetchQueueCapacity,
+                        @Value("${taboo3.title.fetch.max-bytes:131072}") int fetchMaxBytes,
+                        @Value("${taboo3.title.fetch.timeout-millis:5000}") int fetchTimeoutMillis) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.titleCache = new TitleCache(cacheMaxSize, Duration.ofSeconds(cacheTtlSeconds),
+                Duration.ofSeconds(cacheNegativeTtlSeconds), Clock.systemUTC());
+        this.titleExtractor = new TitleExtractor(fetchMaxBytes, fetchTimeoutMillis, USER_AGENT);
+        this.fetchExecutor = new ThreadPoolExecutor(fetchThreads, fetchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fetchQueueCapacity), new CustomizableThreadFactory("title-fetch-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * shuts down the fetch executor.
+     */
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    /**
+     * returns the title for a web page, either from the cache or by loading the page on the fetch executor. If the
+     * executor's queue is full, the returned future completes exceptionally with a
+     * {@link RejectedExecutionException}.
+     *
+     * @param url
+     *         the url of the page, http:// is prepended when it has no scheme
+     * @return future with the title result
+     */
+    @NotNull
+    public CompletableFuture<TitleResult> loadTitle(@NotNull String url) {
+        return titleCache.get(url, u -> {
+            try {
+                return CompletableFuture.supplyAsync(() -> fetchTitle(u), fetchExecutor);
+            } catch (RejectedExecutionException e) {
+                logger.info("title fetch queue full, rejecting {}", u);
+                counterService.increment("title.fetch.rejected");
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("title.fetch.queue.size", fetchExecutor.getQueue().size()),
+                new Metric<>("title.fetch.active", fetchExecutor.getActiveCount()),
+                new Metric<>("title.cache.size", titleCache.size()));
+    }
+
+    /**
+     * loads the head of a web page and extracts its title.
+     *
+     * @param url
+     *         the url of the page, http:// is prepended when it has no scheme
+     * @return the title result
+     */
+    @NotNull
+    private TitleResult fetchTitle(@NotNull String url) {
+        final String finalUrl = url.startsWith("http") ? url : "http://" + url;
+        logger.info("loading title for url {}", finalUrl);
+        final long start = System.nanoTime();
+        try {
+            final TitleResult titleResult = titleExtractor.extract(finalUrl);
+            if (titleResult.isOk()) {
+                logger.info("got title: {}", titleResult.getTitle());
+            } else {
+                logger.info("loading url http error {}", titleResult.getStatus());
+                counterService.increment("meter.title.fetch.errors");
+            }
+            return titleResult;
+        } catch (IOException e) {
+            logger.info("loading url error", e);
+            counterService.increment("meter.title.fetch.errors");
+        } finally {
+            gaugeService.submit("timer.title.fetch", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return TitleResult.ofError(HttpStatus.NO_CONTENT);
+    }
+}
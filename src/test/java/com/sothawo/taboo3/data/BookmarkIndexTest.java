@@ -0,0 +1,144 @@
+package com.sothawo.taboo3.data;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@DirtiesContext
+public class BookmarkIndexTest {
+
+    private static final String ALIAS = "index-test";
+
+    @Autowired
+    private ElasticsearchOperations elasticsearchOperations;
+
+    private Client client;
+    private BookmarkIndex bookmarkIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        client = elasticsearchOperations.getClient();
+        bookmarkIndex = new BookmarkIndex(client, ALIAS, "bookmark", 1, 0, "1s");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.admin().indices().prepareDelete(ALIAS + "*").get();
+    }
+
+    private void index(String index, String id, String owner, boolean routed) {
+        client.prepareIndex(index, "bookmark", id)
+                .setRouting(routed ? owner : null)
+                .setSource("{\"id\":\"" + id + "\",\"owner\":\"" + owner + "\",\"url\":\"url" + id + "\"}")
+                .setRefresh(true)
+                .get();
+    }
+
+    private long count(String owner) {
+        return client.prepareSearch(ALIAS)
+                .setQuery(null == owner ? QueryBuilders.matchAllQuery() : QueryBuilders.termQuery("owner", owner))
+                .setRouting(owner)
+                .setSize(0)
+                .get()
+                .getHits()
+                .getTotalHits();
+    }
+
+    private String setting(String name) {
+        return client.admin().indices().prepareGetSettings(ALIAS).get()
+                .getSetting(bookmarkIndex.getVersionedName(), name);
+    }
+
+    private String aliasTarget() {
+        return client.admin().indices().prepareGetAliases(ALIAS).get().getAliases().keysIt().next();
+    }
+
+    @Test
+    public void newIndexIsCreatedWithSettingsAndAlias() throws Exception {
+        bookmarkIndex.init();
+
+        assertThat(aliasTarget()).isEqualTo(ALIAS + "-v" + bookmarkIndex.getVersion());
+        assertThat(client.admin().indices().prepareGetSettings(bookmarkIndex.getVersionedName()).get()
+                .getSetting(bookmarkIndex.getVersionedName(), "index.codec")).isEqualTo("best_compression");
+    }
+
+    @Test
+    public void concreteIndexIsMigratedAndRoutedByOwner() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            index(ALIAS, String.valueOf(i), "owner" + (i % 2), false);
+        }
+
+        bookmarkIndex = new BookmarkIndex(client, ALIAS, "bookmark", 3, 0, "1s");
+        bookmarkIndex.init();
+
+        assertThat(aliasTarget()).isEqualTo(bookmarkIndex.getVersionedName());
+        assertThat(count(null)).isEqualTo(20);
+        assertThat(count("owner0")).isEqualTo(10);
+        assertThat(count("owner1")).isEqualTo(10);
+        assertThat(client.prepareGet(ALIAS, "bookmark", "1").setRouting("owner1").get().isExists()).isTrue();
+    }
+
+    @Test
+    public void olderVersionIsMigratedAndDeleted() throws Exception {
+        client.admin().indices().prepareCreate(ALIAS + "-v0").get();
+        client.admin().indices().prepareAliases().addAlias(ALIAS + "-v0", ALIAS).get();
+        index(ALIAS, "1", "jane", false);
+
+        bookmarkIndex.init();
+
+        assertThat(aliasTarget()).isEqualTo(bookmarkIndex.getVersionedName());
+        assertThat(count("jane")).isEqualTo(1);
+        assertThat(client.admin().indices().prepareExists(ALIAS + "-v0").get().isExists()).isFalse();
+    }
+
+    @Test
+    public void currentVersionIsKept() throws Exception {
+        bookmarkIndex.init();
+        index(ALIAS, "1", "jane", true);
+
+        new BookmarkIndex(client, ALIAS, "bookmark", 1, 0, "1s").init();
+
+        assertThat(count("jane")).isEqualTo(1);
+    }
+
+    @Test
+    public void importModeIsKeptUntilTheLastImportEnds() throws Exception {
+        bookmarkIndex.init();
+
+        bookmarkIndex.beginImport();
+        bookmarkIndex.beginImport();
+        assertThat(setting("index.refresh_interval")).isEqualTo("-1");
+
+        bookmarkIndex.endImport();
+        assertThat(setting("index.refresh_interval")).isEqualTo("-1");
+
+        bookmarkIndex.endImport();
+        assertThat(setting("index.refresh_interval")).isEqualTo("1s");
+        assertThat(setting("index.number_of_replicas")).isEqualTo("0");
+    }
+
+    @Test
+    public void initRestoresSettingsOfAnInterruptedImport() throws Exception {
+        bookmarkIndex.init();
+        bookmarkIndex.beginImport();
+
+        new BookmarkIndex(client, ALIAS, "bookmark", 1, 0, "1s").init();
+
+        assertThat(setting("index.refresh_interval")).isEqualTo("1s");
+    }
+}
@@ -5,16 +5,26 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Fail.fail;
 
 /**
@@ -72,6 +82,89 @@ public class BookmarkServiceTest {
     }
 
 
+    @Test
+    public void bulkSaveInBatches() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).withTitle("title" + i).addTag("tag")
+                    .build());
+        }
+
+        BulkResult bulkResult = bookmarkService.bulkSave(bookmarks.stream());
+
+        assertThat(bulkResult.getSucceeded()).isEqualTo(1200);
+        assertThat(bulkResult.getFailed()).isEqualTo(0);
+        assertThat(bulkResult.getBatches()).extracting(BulkResult.Batch::getSucceeded)
+                .containsExactlyInAnyOrder(500, 500, 200);
+        try (Stream<Bookmark> stream = bookmarkService.streamByOwner("owner")) {
+            assertThat(stream.collect(Collectors.toList())).containsExactlyInAnyOrderElementsOf(bookmarks);
+        }
+    }
+
+    @Test
+    public void bulkImportSavesBookmarksAndMeasuresDuration() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).addTag("tag").build());
+        }
+
+        BulkResult bulkResult = bookmarkService.bulkImport(bookmarks.stream());
+
+        assertThat(bulkResult.getSucceeded()).isEqualTo(1200);
+        assertThat(bulkResult.getDurationMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(bookmarkService.countByOwner("owner")).isEqualTo(1200);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("tag", 1200L));
+    }
+
+    @Test
+    public void interruptedImportKeepsAddedBookmarks() throws Exception {
+        Stream<Bookmark> bookmarks = IntStream.range(0, 700).mapToObj(i -> {
+            if (i == 600) {
+                throw new IllegalStateException("broken upload");
+            }
+            return aBookmark().withOwner("owner").withUrl("url" + i).build();
+        });
+
+        try {
+            bookmarkService.bulkImport(bookmarks);
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("broken upload");
+        }
+
+        assertThat(bookmarkService.countByOwner("owner")).isEqualTo(600);
+    }
+
+    @Test
+    public void bulkUpdateByOwner() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).addTag("tag").build());
+        }
+        bookmarkService.bulkSave(bookmarks.stream());
+        bookmarkService.save(aBookmark().withOwner("other").withUrl("url").addTag("tag").build());
+
+        BulkResult bulkResult =
+                bookmarkService.bulkUpdateByOwner("owner", bookmark -> bookmark.addTag("new"), new BulkResult());
+
+        assertThat(bulkResult.getSucceeded()).isEqualTo(1200);
+        assertThat(bookmarkService.countByOwner("owner")).isEqualTo(1200);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner"))
+                .containsOnly(entry("tag", 1200L), entry("new", 1200L));
+        assertThat(bookmarkService.findAllTagCountsByOwner("other")).containsOnly(entry("tag", 1L));
+    }
+
+    @Test
+    public void saveBookmarkWithChangedUrl() throws Exception {
+        Bookmark bookmark = aBookmark().withOwner("owner").withUrl("url").build();
+        bookmark.setUrl("changed");
+
+        bookmarkService.save(bookmark);
+
+        assertThat(bookmarkService.findById("owner", bookmark.getId())).contains(bookmark);
+        assertThat(bookmarkService.findAll()).extracting(Bookmark::getUrl).containsExactly("changed");
+    }
+
     @Test
     public void initiallyEmpty() throws Exception {
         assertThat(bookmarkService.findAll()).isEmpty();
@@ -108,7 +201,7 @@ public class BookmarkServiceTest {
         Bookmark bookmark2 = aBookmark().withOwner("owner").withUrl("url2").withTitle("title2").addTag("tag2").build();
 
         bookmarkService.save(Arrays.asList(bookmark1, bookmark2));
-        bookmarkService.deleteBookmark(bookmark2.getId());
+        bookmarkService.deleteBookmark("owner", bookmark2.getId());
 
         final Collection<Bookmark> bookmarks = bookmarkService.findAll();
         assertThat(bookmarks).containsExactlyInAnyOrder(bookmark1);
@@ -126,17 +219,130 @@ public class BookmarkServiceTest {
         assertThat(bookmarks).containsExactlyInAnyOrder(bookmark2);
     }
 
+    @Test
+    public void bulkDeleteByOwnerAndTags() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).addTag(i % 2 == 0 ? "old" : "new")
+                    .build());
+        }
+        bookmarks.add(aBookmark().withOwner("other").withUrl("url").addTag("old").build());
+        bookmarkService.bulkSave(bookmarks.stream());
+        assertThat(bookmarkService.countByOwnerAndTags("owner", Collections.singletonList("old"))).isEqualTo(600);
+
+        BulkResult bulkResult = bookmarkService.bulkDeleteByOwnerAndTags("owner", Collections.singletonList("old"),
+                new BulkResult(), id -> {
+                });
+
+        assertThat(bulkResult.getSucceeded()).isEqualTo(600);
+        assertThat(bulkResult.getFailed()).isEqualTo(0);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("new", 600L));
+        assertThat(bookmarkService.findAllTagCountsByOwner("other")).containsOnly(entry("old", 1L));
+    }
+
+    @Test
+    public void bulkDeleteByIdsSkipsUnknownIdsAndOtherOwners() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner").withUrl("url1").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner").withUrl("url2").build();
+        Bookmark bookmark3 = aBookmark().withOwner("owner").withUrl("url3").build();
+        Bookmark other = aBookmark().withOwner("other").withUrl("url1").build();
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2, bookmark3, other));
+
+        BulkResult bulkResult = bookmarkService.bulkDeleteByIds("owner",
+                Arrays.asList(bookmark1.getId(), bookmark3.getId(), other.getId(), "unknown"), new BulkResult(),
+                id -> {
+                });
+
+        assertThat(bulkResult.getSucceeded()).isEqualTo(2);
+        assertThat(bulkResult.getFailed()).isEqualTo(0);
+        assertThat(bookmarkService.findAll()).containsExactlyInAnyOrder(bookmark2, other);
+    }
+
+    @Test
+    public void stoppedBulkDeleteDeletesCollectedBookmarks() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).addTag("tag").build());
+        }
+        bookmarkService.bulkSave(bookmarks.stream());
+        final int[] tracked = new int[1];
+
+        try {
+            bookmarkService.bulkDeleteByOwnerAndTags("owner", Collections.singletonList("tag"), new BulkResult(),
+                    id -> {
+                        if (++tracked[0] > 700) {
+                            throw new IllegalStateException("stopped");
+                        }
+                    });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("stopped");
+        }
+
+        assertThat(bookmarkService.countByOwner("owner")).isEqualTo(500);
+    }
+
+    @Test
+    public void renameTagsMergesTags() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i)
+                    .addTag(i % 3 == 0 ? "javascript" : "ecmascript").addTag(i % 2 == 0 ? "js" : "web").build());
+        }
+        bookmarks.add(aBookmark().withOwner("owner").withUrl("both").addTag("javascript").addTag("ecmascript").build());
+        bookmarks.add(aBookmark().withOwner("other").withUrl("url").addTag("javascript").build());
+        bookmarkService.bulkSave(bookmarks.stream());
+
+        BulkResult bulkResult = bookmarkService.renameTags("owner", Arrays.asList("JavaScript", "ecmascript", "js"),
+                "js", new BulkResult(), bookmark -> {
+                });
+
+        assertThat(bulkResult.getSucceeded()).isEqualTo(1201);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("js", 1201L),
+                entry("web", 600L));
+        assertThat(bookmarkService.findAllTagCountsByOwner("other")).containsOnly(entry("javascript", 1L));
+    }
+
+    @Test
+    public void removeTag() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner").withUrl("url1").addTag("dead").addTag("tag").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner").withUrl("url2").addTag("tag").build();
+        Bookmark other = aBookmark().withOwner("other").withUrl("url1").addTag("dead").build();
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2, other));
+
+        final List<Bookmark> tracked = new ArrayList<>();
+
+        BulkResult bulkResult = bookmarkService.removeTag("owner", "dead", new BulkResult(), tracked::add);
+
+        assertThat(tracked).containsExactly(bookmark1);
+        assertThat(bulkResult.getSucceeded()).isEqualTo(1);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("tag", 2L));
+        assertThat(bookmarkService.findAllTagCountsByOwner("other")).containsOnly(entry("dead", 1L));
+    }
+
     @Test
     public void findById() throws Exception {
         Bookmark bookmark1 = aBookmark().withOwner("owner1").withUrl("url1").withTitle("title1").addTag("tag1").build();
 
         bookmarkService.save(bookmark1);
-        final Optional<Bookmark> bookmarkOptional = bookmarkService.findById(bookmark1.getId());
+        final Optional<Bookmark> bookmarkOptional = bookmarkService.findById("Owner1", bookmark1.getId());
 
         assertThat(bookmarkOptional.isPresent()).isTrue();
         assertThat(bookmarkOptional.get()).isEqualTo(bookmark1);
     }
 
+    @Test
+    public void bookmarksOfOtherOwnersAreNotFoundOrDeletedById() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner1").withUrl("url1").withTitle("title1").addTag("tag1").build();
+        bookmarkService.save(bookmark1);
+
+        assertThat(bookmarkService.findById("owner2", bookmark1.getId())).isEmpty();
+        assertThat(bookmarkService.findByIds("owner2", Collections.singletonList(bookmark1.getId()))).isEmpty();
+        bookmarkService.deleteBookmark("owner2", bookmark1.getId());
+
+        assertThat(bookmarkService.findAll()).containsExactly(bookmark1);
+    }
+
     @Test
     public void findAllBookmarks() throws Exception {
         Bookmark bookmark1 = aBookmark().withOwner("owner1").withUrl("url1").withTitle("title1").addTag("tag1").build();
@@ -159,6 +365,21 @@ public class BookmarkServiceTest {
         assertThat(bookmarks).containsExactlyInAnyOrder(bookmark1);
     }
 
+    @Test
+    public void streamAllBookmarksForUser() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            bookmarks.add(aBookmark().withOwner("owner1").withUrl("url" + i).withTitle("title" + i).build());
+        }
+        bookmarks.add(aBookmark().withOwner("owner2").withUrl("url").withTitle("title").build());
+        bookmarkService.save(bookmarks);
+
+        try (Stream<Bookmark> stream = bookmarkService.streamByOwner("owner1")) {
+            assertThat(stream.collect(Collectors.toList())).containsExactlyInAnyOrderElementsOf(
+                    bookmarks.subList(0, 1200));
+        }
+    }
+
     @Test
     public void findAllTags() throws Exception {
         Bookmark bookmark1 =
@@ -191,6 +412,24 @@ public class BookmarkServiceTest {
         assertThat(tags).containsExactlyInAnyOrder("tag1", "tag2", "common");
     }
 
+    @Test
+    public void findAllTagCountsByOwner() throws Exception {
+        Bookmark bookmark1 =
+                aBookmark().withOwner("owner1").withUrl("url1").withTitle("title1").addTag("spring-boot")
+                        .addTag("common").build();
+        Bookmark bookmark2 =
+                aBookmark().withOwner("owner1").withUrl("url2").withTitle("title2").addTag("tag2").addTag("common")
+                        .build();
+        Bookmark bookmark3 = aBookmark().withOwner("owner2").withUrl("url3").withTitle("title3").addTag("common")
+                .build();
+
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2, bookmark3));
+        Map<String, Long> tagCounts = bookmarkService.findAllTagCountsByOwner("owner1");
+
+        assertThat(tagCounts).containsOnly(entry("spring-boot", 1L), entry("tag2", 1L), entry("common", 2L));
+        assertThat(bookmarkService.findAllTagCounts()).containsEntry("common", 3L);
+    }
+
     @Test
     public void updateBookmark() throws Exception {
         Bookmark bookmark = aBookmark().withOwner("owner").withUrl("url0").withTitle("title0").addTag("tag0").build();
@@ -202,7 +441,7 @@ public class BookmarkServiceTest {
         String id = bookmark.getId();
 
         bookmarkService.save(bookmark);
-        Optional<Bookmark> bookmarkOpt = bookmarkService.getBookmarkById(id);
+        Optional<Bookmark> bookmarkOpt = bookmarkService.getBookmarkById(bookmark.getOwner(), id);
 
         assertThat(bookmarkOpt.isPresent()).isTrue();
         //noinspection OptionalGetWithoutIsPresent
@@ -228,6 +467,29 @@ public class BookmarkServiceTest {
         assertThat(bookmarks).containsExactlyInAnyOrder(bookmark1, bookmark3);
     }
 
+    @Test
+    public void findBookmarkBySearchForPartsOfTitleWords() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner1").withUrl("url1").withTitle("Hello world").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner2").withUrl("url2").withTitle("world wide web").build();
+        Bookmark bookmark3 = aBookmark().withOwner("owner3").withUrl("url3").withTitle("say hello").build();
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2, bookmark3));
+
+        assertThat(bookmarkService.findByTitle("ORL")).containsExactlyInAnyOrder(bookmark1, bookmark2);
+        assertThat(bookmarkService.findByTitle("*ell* wor")).containsExactlyInAnyOrder(bookmark1);
+        assertThat(bookmarkService.findByTitle("worlds")).isEmpty();
+    }
+
+    @Test
+    public void searchIgnoresSingleCharacterWords() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner1").withUrl("url1").withTitle("Hello world").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner2").withUrl("url2").withTitle("world wide web").build();
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2));
+
+        assertThat(bookmarkService.findByTitle("we")).containsExactlyInAnyOrder(bookmark2);
+        assertThat(bookmarkService.findByTitle("a we")).containsExactlyInAnyOrder(bookmark2);
+        assertThat(bookmarkService.findByTitle("x")).containsExactlyInAnyOrder(bookmark1, bookmark2);
+    }
+
     @Test
     public void findBookmarkBySearchInTitleForOwner() throws Exception {
         Bookmark bookmark1 = aBookmark().withOwner("owner1").withUrl("url1").withTitle("Hello world").build();
@@ -317,6 +579,158 @@ public class BookmarkServiceTest {
         assertThat(bookmarks).containsExactlyInAnyOrder(bookmark1);
     }
 
+    @Test
+    public void findPagesByOwnerAndSelection() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).withTitle("title" + (4 - i) % 3)
+                    .addTag("common").build());
+        }
+        bookmarks.add(aBookmark().withOwner("other").withUrl("url").withTitle("title").addTag("common").build());
+        bookmarkService.save(bookmarks);
+
+        Page<Bookmark> page0 = bookmarkService.findByOwnerAndSelection("owner", null,
+                Collections.singletonList("common"), new PageRequest(0, 2));
+        Page<Bookmark> page1 = bookmarkService.findByOwnerAndSelection("owner", null,
+                Collections.singletonList("common"), new PageRequest(1, 2));
+        Page<Bookmark> page2 = bookmarkService.findByOwnerAndSelection("owner", null,
+                Collections.singletonList("common"), new PageRequest(2, 2));
+
+        assertThat(page0.getTotalElements()).isEqualTo(5);
+        assertThat(page0.getContent()).hasSize(2);
+        assertThat(page1.getContent()).hasSize(2);
+        assertThat(page2.getContent()).hasSize(1);
+        List<Bookmark> all = new ArrayList<>(page0.getContent());
+        all.addAll(page1.getContent());
+        all.addAll(page2.getContent());
+        assertThat(all).containsExactlyElementsOf(bookmarks.subList(0, 5).stream()
+                .sorted(Comparator.comparing(PageCursor::of, PageCursor.ORDER)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findSlicesByOwnerAndSelectionAfterCursor() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).withTitle("hello " + i % 2).build());
+        }
+        // titles that are too long for sorting come last
+        final String longTitle = "hello " + String.join("", Collections.nCopies(PageCursor.MAX_SORT_TITLE_LENGTH, "x"));
+        for (int i = 5; i < 8; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).withTitle(longTitle).build());
+        }
+        bookmarkService.save(bookmarks);
+
+        List<Bookmark> all = new ArrayList<>();
+        PageCursor after = null;
+        List<Bookmark> slice;
+        do {
+            slice = bookmarkService.findByOwnerAndSelectionAfter("owner", "hello", Collections.emptyList(), after, 2);
+            all.addAll(slice);
+            after = slice.isEmpty() ? null : PageCursor.of(slice.get(slice.size() - 1));
+        } while (slice.size() == 2);
+
+        List<Bookmark> expected = bookmarks.stream()
+                .sorted(Comparator.comparing(PageCursor::of, PageCursor.ORDER)).collect(Collectors.toList());
+        assertThat(all).containsExactlyElementsOf(expected);
+        assertThat(expected.subList(5, 8)).extracting(Bookmark::getTitle).containsOnly(longTitle);
+    }
+
+    @Test
+    public void findTagsByOwnerAndSelection() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl("url" + i).withTitle("hello " + i)
+                    .addTag("common").addTag("tag" + i).build());
+        }
+        bookmarks.add(aBookmark().withOwner("owner").withUrl("url5").withTitle("bye").addTag("common").build());
+        bookmarks.add(aBookmark().withOwner("other").withUrl("url0").withTitle("hello").addTag("common").build());
+        bookmarkService.save(bookmarks);
+
+        List<BookmarkTags> found = bookmarkService
+                .findTagsByOwnerAndSelection("owner", "hello", Collections.singleton("common"), 5)
+                .orElseThrow(AssertionError::new);
+
+        assertThat(found).extracting(BookmarkTags::getPosition).containsExactlyElementsOf(bookmarks.subList(0, 5)
+                .stream().map(PageCursor::of).sorted(PageCursor.ORDER).collect(Collectors.toList()));
+        assertThat(found.get(0).getTags()).containsOnlyElementsOf(
+                bookmarks.stream().filter(b -> b.getId().equals(found.get(0).getId())).findFirst()
+                        .orElseThrow(AssertionError::new).getTags())
+                .hasSize(2);
+        assertThat(bookmarkService.findTagsByOwnerAndSelection("owner", null, Collections.singleton("common"), 5))
+                .isEmpty();
+    }
+
+    @Test
+    public void findTagCountsByOwnerAndSelection() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner").withUrl("url1").withTitle("title1").addTag("tag1")
+                .addTag("common").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner").withUrl("url2").withTitle("title2").addTag("tag2")
+                .addTag("common").build();
+        Bookmark bookmark3 = aBookmark().withOwner("owner").withUrl("url3").withTitle("title3").addTag("tag3").build();
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2, bookmark3));
+
+        Map<String, Long> tagCounts =
+                bookmarkService.findAllTagCountsByOwnerAndSelection("owner", null, Collections.singleton("common"));
+
+        assertThat(tagCounts).containsOnly(entry("common", 2L), entry("tag1", 1L), entry("tag2", 1L));
+    }
+
+    @Test
+    public void findByIdsKeepsOrderAndSkipsMissing() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner").withUrl("url1").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner").withUrl("url2").build();
+        bookmarkService.save(Arrays.asList(bookmark1, bookmark2));
+
+        assertThat(bookmarkService.findByIds("owner", Arrays.asList(bookmark2.getId(), "missing", bookmark1.getId())))
+                .containsExactly(bookmark2, bookmark1);
+        assertThat(bookmarkService.findByIds("owner", Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void ownerVersionChangesWithOwnersBookmarks() throws Exception {
+        long version = bookmarkService.getOwnerVersion("owner");
+        long otherVersion = bookmarkService.getOwnerVersion("other");
+
+        bookmarkService.save(aBookmark().withOwner("owner").withUrl("url1").build());
+
+        assertThat(bookmarkService.getOwnerVersion("owner")).isNotEqualTo(version);
+        assertThat(bookmarkService.getOwnerVersion("other")).isEqualTo(otherVersion);
+    }
+
+    @Test
+    public void cachedOwnerResultsReflectChanges() throws Exception {
+        Bookmark bookmark1 = aBookmark().withOwner("owner").withUrl("url1").withTitle("title1").addTag("tag").build();
+        Bookmark bookmark2 = aBookmark().withOwner("owner").withUrl("url2").withTitle("title2").addTag("tag").build();
+        bookmarkService.save(bookmark1);
+        final Collection<String> tags = Collections.singleton("tag");
+
+        // fill the cache
+        assertThat(bookmarkService.findByOwnerAndTags("owner", tags)).containsOnly(bookmark1);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("tag", 1L));
+
+        bookmarkService.save(bookmark2);
+        assertThat(bookmarkService.findByOwnerAndTags("owner", tags)).containsOnly(bookmark1, bookmark2);
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("tag", 2L));
+
+        bookmarkService.deleteBookmark("owner", bookmark1.getId());
+        assertThat(bookmarkService.findByOwnerAndTags("owner", tags)).containsOnly(bookmark2);
+
+        bookmarkService.bulkUpdateByOwner("owner", bookmark -> bookmark.addTag("new"), new BulkResult());
+        assertThat(bookmarkService.findAllTagCountsByOwner("owner")).containsOnly(entry("tag", 1L), entry("new", 1L));
+
+        bookmarkService.deleteByOwner("owner");
+        assertThat(bookmarkService.findByOwnerAndTags("owner", tags)).isEmpty();
+    }
+
+    @Test
+    public void modifyingReturnedBookmarksDoesNotChangeCachedResults() throws Exception {
+        bookmarkService.save(aBookmark().withOwner("owner").withUrl("url1").withTitle("title1").addTag("tag").build());
+
+        bookmarkService.findByOwner("owner").forEach(bookmark -> bookmark.setTitle("changed"));
+
+        assertThat(bookmarkService.findByOwner("owner")).extracting(Bookmark::getTitle).containsExactly("title1");
+    }
+
     @Test
     public void saveBookmarkEditClass() throws Exception {
         Bookmark bookmark =
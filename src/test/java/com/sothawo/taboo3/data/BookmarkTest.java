@@ -1,8 +1,15 @@
 package com.sothawo.taboo3.data;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -62,6 +69,15 @@ public class BookmarkTest {
         assertThat(tags).containsExactly("abc");
     }
 
+    @Test
+    public void tagsReadFromJsonAreLowercaseWithoutDuplicates() throws Exception {
+        Bookmark bookmark = new ObjectMapper().readValue("{\"owner\":\"owner\",\"url\":\"url\"," +
+                "\"tags\":[\"ABC\",\"abc\",\"def\"]}", Bookmark.class);
+        bookmark.addTag("def");
+
+        assertThat(bookmark.getTags()).containsExactlyInAnyOrder("abc", "def");
+    }
+
     @Test
     public void clearTags() throws Exception {
         Bookmark bookmark = aBookmark()
@@ -88,4 +104,27 @@ public class BookmarkTest {
         bookmark.setUrl("newurl");
         assertThat(bookmark.getId()).isNotEqualTo(id);
     }
+
+    @Test
+    public void idIsHexEncodedMd5OfOwnerAndUrl() throws Exception {
+        final Bookmark bookmark = aBookmark().withOwner("Owner").withUrl("https://www.sothawo.com/ä").build();
+
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        md5.update(StandardCharsets.UTF_8.encode("owner-https://www.sothawo.com/ä"));
+        assertThat(bookmark.getId()).isEqualTo(String.format("%032x", new BigInteger(1, md5.digest())));
+    }
+
+    @Test
+    public void toHex() throws Exception {
+        assertThat(Bookmark.toHex(new byte[]{0x00, 0x0f, (byte) 0xa0, (byte) 0xff})).isEqualTo("000fa0ff");
+    }
+
+    @Test
+    public void idsAreBuiltConcurrently() throws Exception {
+        final List<Bookmark> bookmarks = IntStream.range(0, 10000).parallel()
+                .mapToObj(i -> aBookmark().withOwner("owner").withUrl("url" + (i % 10)).build())
+                .collect(Collectors.toList());
+
+        assertThat(bookmarks.stream().map(Bookmark::getId).distinct().count()).isEqualTo(10);
+    }
 }
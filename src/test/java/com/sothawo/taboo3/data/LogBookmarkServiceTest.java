@@ -0,0 +1,33 @@
+package com.sothawo.taboo3.data;
+
+import org.junit.ClassRule;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.File;
+
+/**
+ * Runs the BookmarkService tests with the log store instead of ElasticSearch. The log is written to a temporary
+ * folder, so each run starts with an empty store.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@ActiveProfiles("logstore")
+@ContextConfiguration(initializers = LogBookmarkServiceTest.LogPathInitializer.class)
+public class LogBookmarkServiceTest extends BookmarkServiceTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    public static class LogPathInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext applicationContext) {
+            EnvironmentTestUtils.addEnvironment(applicationContext,
+                    "taboo3.store.log.path=" + new File(folder.getRoot(), "bookmarks.log").getAbsolutePath());
+        }
+    }
+}
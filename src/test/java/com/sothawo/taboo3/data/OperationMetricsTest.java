@@ -0,0 +1,65 @@
+package com.sothawo.taboo3.data;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.repository.InMemoryMetricRepository;
+import org.springframework.boot.actuate.metrics.writer.DefaultCounterService;
+import org.springframework.boot.actuate.metrics.writer.DefaultGaugeService;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class OperationMetricsTest {
+
+    private InMemoryMetricRepository metricRepository;
+    private OperationMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        metricRepository = new InMemoryMetricRepository();
+        metrics = new OperationMetrics(new DefaultCounterService(metricRepository),
+                new DefaultGaugeService(metricRepository), "test");
+    }
+
+    @Test
+    public void recordsDurationAndResultSize() throws Exception {
+        final Collection<String> result = metrics.record("find", () -> Arrays.asList("a", "b", "c"),
+                Collection::size);
+
+        assertThat(result).containsExactly("a", "b", "c");
+        assertThat(metricRepository.findOne("timer.test.find")).isNotNull();
+        assertThat(metricRepository.findOne("histogram.test.find.results").getValue().intValue()).isEqualTo(3);
+        assertThat(metricRepository.findOne("meter.test.find.errors")).isNull();
+    }
+
+    @Test
+    public void recordsErrors() throws Exception {
+        try {
+            metrics.record("delete", () -> {
+                throw new IllegalStateException("boom");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("boom");
+        }
+
+        assertThat(metricRepository.findOne("timer.test.delete")).isNotNull();
+        assertThat(metricRepository.findOne("meter.test.delete.errors").getValue().longValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void shapeHasTextFlagAndCappedTagCount() throws Exception {
+        assertThat(BookmarkService.shape(BookmarkQuery.ofOwner("owner"))).isEqualTo("notext.tags0");
+        assertThat(BookmarkService.shape(BookmarkQuery.of("owner", "text", Collections.singletonList("t1"))))
+                .isEqualTo("text.tags1");
+        assertThat(BookmarkService.shape(BookmarkQuery.of("owner", "", Arrays.asList("t1", "t2", "t3", "t4"))))
+                .isEqualTo("notext.tags3");
+    }
+}
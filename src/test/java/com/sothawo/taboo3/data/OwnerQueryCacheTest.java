@@ -0,0 +1,119 @@
+package com.sothawo.taboo3.data;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class OwnerQueryCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private OwnerQueryCache.Lookup<String> get(OwnerQueryCache cache, String owner, String key) {
+        return cache.get(owner, key, () -> key + loads.incrementAndGet(), value -> 100, value -> value);
+    }
+
+    @Test
+    public void secondGetIsAHit() throws Exception {
+        OwnerQueryCache cache = new OwnerQueryCache(10, 1 << 20);
+
+        OwnerQueryCache.Lookup<String> first = get(cache, "owner", "q");
+        OwnerQueryCache.Lookup<String> second = get(cache, "owner", "q");
+
+        assertThat(first.isHit()).isFalse();
+        assertThat(second.isHit()).isTrue();
+        assertThat(second.getValue()).isEqualTo(first.getValue());
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        OwnerQueryCache cache = new OwnerQueryCache(2, 1 << 20);
+        get(cache, "owner", "q1");
+        get(cache, "owner", "q2");
+        get(cache, "owner", "q1");
+
+        get(cache, "owner", "q3");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(get(cache, "owner", "q1").isHit()).isTrue();
+        assertThat(get(cache, "owner", "q2").isHit()).isFalse();
+    }
+
+    @Test
+    public void entriesAreEvictedWhenMemoryCeilingIsReached() throws Exception {
+        // each entry has the overhead of 256 plus the weight of 100 bytes
+        OwnerQueryCache cache = new OwnerQueryCache(100, 800);
+        get(cache, "owner", "q1");
+        get(cache, "owner", "q2");
+
+        get(cache, "owner", "q3");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.bytes()).isEqualTo(712);
+        assertThat(get(cache, "owner", "q1").isHit()).isFalse();
+    }
+
+    @Test
+    public void valuesLargerThanTheCeilingAreNotCached() throws Exception {
+        OwnerQueryCache cache = new OwnerQueryCache(100, 300);
+
+        get(cache, "owner", "q");
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void invalidateRemovesOnlyTheOwnersEntries() throws Exception {
+        OwnerQueryCache cache = new OwnerQueryCache(10, 1 << 20);
+        get(cache, "owner", "q");
+        get(cache, "other", "q");
+
+        cache.invalidate("owner");
+
+        assertThat(get(cache, "owner", "q").isHit()).isFalse();
+        assertThat(get(cache, "other", "q").isHit()).isTrue();
+    }
+
+    @Test
+    public void resultLoadedDuringInvalidationIsNotCached() throws Exception {
+        OwnerQueryCache cache = new OwnerQueryCache(10, 1 << 20);
+
+        cache.get("owner", "q", () -> {
+            cache.invalidate("owner");
+            return "stale";
+        }, value -> 100, value -> value);
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void resultLoadedDuringInvalidateAllIsNotCached() throws Exception {
+        OwnerQueryCache cache = new OwnerQueryCache(10, 1 << 20);
+
+        cache.get("owner", "q", () -> {
+            cache.invalidateAll();
+            return "stale";
+        }, value -> 100, value -> value);
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.bytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void copyOfBookmarkIsIndependent() throws Exception {
+        Bookmark bookmark = aBookmark().withOwner("owner").withUrl("url").withTitle("title").addTag("tag").build();
+
+        Bookmark copy = OwnerQueryCache.copy(bookmark);
+        copy.addTag("other");
+
+        assertThat(copy).isEqualTo(bookmark);
+        assertThat(copy.getTitle()).isEqualTo("title");
+        assertThat(bookmark.getTags()).containsOnly("tag");
+    }
+}
@@ -0,0 +1,46 @@
+package com.sothawo.taboo3.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class PageCursorTest {
+
+    private static final String LONG_TITLE =
+            String.join("", Collections.nCopies(PageCursor.MAX_SORT_TITLE_LENGTH + 1, "x"));
+
+    @Test
+    public void encodedCursorIsDecoded() throws Exception {
+        PageCursor withTitle = PageCursor.of("id", "a: title");
+        PageCursor emptyTitle = PageCursor.of("id", "");
+        PageCursor longTitle = PageCursor.of("id", LONG_TITLE);
+
+        assertThat(PageCursor.decode(withTitle.encode())).contains(withTitle);
+        assertThat(PageCursor.decode(emptyTitle.encode())).contains(emptyTitle);
+        assertThat(PageCursor.decode(longTitle.encode())).contains(longTitle);
+        assertThat(longTitle.getTitle()).isNull();
+        assertThat(PageCursor.decode(null)).isEmpty();
+        assertThat(PageCursor.decode("")).isEmpty();
+    }
+
+    @Test
+    public void cursorsAreOrderedByTitleAndId() throws Exception {
+        List<PageCursor> cursors = Arrays.asList(
+                PageCursor.of("2", LONG_TITLE),
+                PageCursor.of("3", "b"),
+                PageCursor.of("1", null),
+                PageCursor.of("2", "a"),
+                PageCursor.of("1", "b"));
+
+        cursors.sort(PageCursor.ORDER);
+
+        assertThat(cursors).extracting(PageCursor::encode).containsExactly("2:a", "1:b", "3:b", "1", "2");
+    }
+}
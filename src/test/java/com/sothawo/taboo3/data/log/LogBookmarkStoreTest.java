@@ -0,0 +1,203 @@
+package com.sothawo.taboo3.data.log;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkQuery;
+import com.sothawo.taboo3.data.BulkResult;
+import com.sothawo.taboo3.data.BulkWriter;
+import com.sothawo.taboo3.data.LinkCheck;
+import com.sothawo.taboo3.data.PageCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class LogBookmarkStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private LogBookmarkStore store;
+
+    @Before
+    public void setup() throws Exception {
+        path = folder.getRoot().toPath().resolve("bookmarks.log");
+        store = new LogBookmarkStore(path, 4096, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    private LogBookmarkStore reopen() throws Exception {
+        store.close();
+        store = new LogBookmarkStore(path, 4096, 10);
+        return store;
+    }
+
+    private static Bookmark bookmark(String owner, int i, String title, String... tags) {
+        return aBookmark().withOwner(owner).withUrl("https://url" + i).withTitle(title).withTags(Arrays.asList(tags))
+                .build();
+    }
+
+    @Test
+    public void bookmarksAreReadBackAfterReopen() throws Exception {
+        final Bookmark bookmark1 = bookmark("owner", 1, "Hello World", "tag1", "common");
+        final LinkCheck linkCheck = new LinkCheck(301, 42, "https://other", 1234, null);
+        bookmark1.setLinkCheck(linkCheck);
+        final Bookmark bookmark2 = bookmark("other", 2, null, "common");
+        store.save(Arrays.asList(bookmark1, bookmark2));
+
+        reopen();
+
+        final Bookmark read = store.findById("owner", bookmark1.getId()).orElseThrow(AssertionError::new);
+        assertThat(read.getOwner()).isEqualTo("owner");
+        assertThat(read.getUrl()).isEqualTo("https://url1");
+        assertThat(read.getTitle()).isEqualTo("Hello World");
+        assertThat(read.getTags()).containsExactlyInAnyOrder("tag1", "common");
+        assertThat(read.getLinkCheck().getStatus()).isEqualTo(301);
+        assertThat(read.getLinkCheck().getRedirectUrl()).isEqualTo("https://other");
+        assertThat(read.getLinkCheck().getError()).isNull();
+        assertThat(store.findById("other", bookmark2.getId()).orElseThrow(AssertionError::new).getTitle()).isNull();
+        assertThat(store.countTags(BookmarkQuery.all())).containsExactly(entry("common", 2L), entry("tag1", 1L));
+    }
+
+    @Test
+    public void updatesAndDeletesAreReplayed() throws Exception {
+        final Bookmark bookmark1 = bookmark("owner", 1, "old title", "old");
+        final Bookmark bookmark2 = bookmark("owner", 2, "title", "tag");
+        store.save(Arrays.asList(bookmark1, bookmark2));
+        store.save(Collections.singletonList(bookmark("owner", 1, "new title", "new")));
+        store.delete("owner", bookmark2.getId());
+
+        reopen();
+
+        assertThat(store.findAll(BookmarkQuery.ofOwner("owner"))).extracting(Bookmark::getTitle)
+                .containsExactly("new title");
+        assertThat(store.findAll(BookmarkQuery.of(null, "old", Collections.emptyList()))).isEmpty();
+        assertThat(store.countTags(BookmarkQuery.ofOwner("owner"))).containsOnly(entry("new", 1L));
+    }
+
+    @Test
+    public void incompleteRecordAtTheEndIsDiscarded() throws Exception {
+        store.save(Collections.singletonList(bookmark("owner", 1, "first")));
+        store.save(Collections.singletonList(bookmark("owner", 2, "second")));
+        store.close();
+        // corrupt the checksum of the second record
+        final byte[] bytes = Files.readAllBytes(path);
+        int end = bytes.length;
+        while (bytes[end - 1] == 0) {
+            end--;
+        }
+        bytes[end - 1] ^= 0xff;
+        Files.write(path, bytes);
+
+        store = new LogBookmarkStore(path, 4096, 10);
+        assertThat(store.findAll(BookmarkQuery.all())).extracting(Bookmark::getTitle).containsExactly("first");
+
+        store.save(Collections.singletonList(bookmark("owner", 3, "third")));
+        reopen();
+        assertThat(store.findAll(BookmarkQuery.all())).extracting(Bookmark::getTitle)
+                .containsExactlyInAnyOrder("first", "third");
+    }
+
+    @Test
+    public void logGrowsBeyondTheInitialSize() throws Exception {
+        final List<Bookmark> bookmarks = IntStream.range(0, 500)
+                .mapToObj(i -> bookmark("owner", i, "title number " + i, "tag" + i % 7))
+                .collect(Collectors.toList());
+        store.save(bookmarks);
+
+        reopen();
+
+        assertThat(store.count(BookmarkQuery.ofOwner("owner"))).isEqualTo(500);
+        assertThat(store.count(BookmarkQuery.of("owner", "number", Collections.singleton("tag3")))).isEqualTo(71);
+        assertThat(Files.size(path)).isGreaterThan(4096);
+    }
+
+    @Test
+    public void bulkWriterSavesInBatches() throws Exception {
+        final BulkResult bulkResult = new BulkResult();
+        try (BulkWriter bulkWriter = store.openBulkWriter(bulkResult)) {
+            IntStream.range(0, 25).forEach(i -> bulkWriter.add(bookmark("owner", i, "title")));
+        }
+
+        assertThat(bulkResult.getBatches()).hasSize(3);
+        assertThat(bulkResult.getSucceeded()).isEqualTo(25);
+        assertThat(store.count(BookmarkQuery.all())).isEqualTo(25);
+    }
+
+    @Test
+    public void outdatedRecordsAreRemovedOnOpen() throws Exception {
+        final String longTitle = String.join(" ", Collections.nCopies(200, "word"));
+        for (int round = 0; round < 5; round++) {
+            final int r = round;
+            store.save(IntStream.range(0, 300)
+                    .mapToObj(i -> bookmark("owner", i, longTitle + r, "round" + r))
+                    .collect(Collectors.toList()));
+        }
+        final long sizeBefore = Files.size(path);
+
+        reopen();
+
+        assertThat(Files.size(path)).isLessThan(sizeBefore);
+        assertThat(store.countTags(BookmarkQuery.all())).containsOnly(entry("round4", 300L));
+        assertThat(store.findAll(BookmarkQuery.of(null, "word4", Collections.emptyList()))).hasSize(300);
+    }
+
+    @Test
+    public void findAfterReturnsSlicesAfterCursor() throws Exception {
+        final List<Bookmark> bookmarks = IntStream.range(0, 20)
+                .mapToObj(i -> bookmark("owner", i, "title", i % 2 == 0 ? "even" : "odd"))
+                .collect(Collectors.toList());
+        store.save(bookmarks);
+
+        final List<Bookmark> first = store.findAfter(BookmarkQuery.of("owner", null, Collections.singleton("even")),
+                null, 4);
+        final List<Bookmark> second = store.findAfter(BookmarkQuery.of("owner", null, Collections.singleton("even")),
+                PageCursor.of(first.get(3)), 10);
+
+        final List<String> expected = bookmarks.stream().filter(bookmark -> bookmark.getTags().contains("even"))
+                .map(Bookmark::getId).sorted().collect(Collectors.toList());
+        assertThat(first).extracting(Bookmark::getId).containsExactlyElementsOf(expected.subList(0, 4));
+        assertThat(second).extracting(Bookmark::getId).containsExactlyElementsOf(expected.subList(4, 10));
+    }
+
+    @Test
+    public void titleSubstringsAreFoundInLargeVocabulary() throws Exception {
+        final List<Bookmark> bookmarks = IntStream.range(0, 5000)
+                .mapToObj(i -> bookmark("owner", i, "Entry" + i + " extraordinarily" + (i % 7)))
+                .collect(Collectors.toList());
+        store.save(bookmarks);
+
+        assertThat(store.findAll(BookmarkQuery.of("owner", "ry4321", Collections.emptyList())))
+                .extracting(Bookmark::getTitle).containsExactly("Entry4321 extraordinarily2");
+        assertThat(store.count(BookmarkQuery.of("owner", "traordinarily3", Collections.emptyList()))).isEqualTo(714);
+        assertThat(store.count(BookmarkQuery.of("owner", "extraordinarily3 y12", Collections.emptyList())))
+                .isEqualTo(bookmarks.stream().map(Bookmark::getTitle)
+                        .filter(title -> title.contains("y12") && title.endsWith("y3")).count());
+        assertThat(store.count(BookmarkQuery.of("owner", "traordinarily9", Collections.emptyList()))).isZero();
+
+        store.delete("owner", bookmarks.get(4321).getId());
+
+        assertThat(store.count(BookmarkQuery.of("owner", "ry4321", Collections.emptyList()))).isZero();
+        assertThat(store.count(BookmarkQuery.of("owner", "y432", Collections.emptyList()))).isEqualTo(10);
+    }
+}
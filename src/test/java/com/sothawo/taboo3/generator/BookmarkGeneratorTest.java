@@ -0,0 +1,76 @@
+package com.sothawo.taboo3.generator;
+
+import com.sothawo.taboo3.data.Bookmark;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.sothawo.taboo3.generator.BookmarkGeneratorBuilder.aBookmarkGenerator;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class BookmarkGeneratorTest {
+
+    @Test
+    public void sameSeedGeneratesSameBookmarks() throws Exception {
+        final List<Bookmark> first = aBookmarkGenerator().withSeed(7).build().generate(1000)
+                .collect(Collectors.toList());
+        final List<Bookmark> second = aBookmarkGenerator().withSeed(7).build().generate(1000)
+                .collect(Collectors.toList());
+        final List<Bookmark> other = aBookmarkGenerator().withSeed(8).build().generate(1000)
+                .collect(Collectors.toList());
+
+        assertThat(first).hasSize(1000);
+        assertThat(second).isEqualTo(first);
+        assertThat(second.get(0).getTitle()).isEqualTo(first.get(0).getTitle());
+        assertThat(second.get(0).getTags()).containsExactlyElementsOf(first.get(0).getTags());
+        assertThat(other).isNotEqualTo(first);
+    }
+
+    @Test
+    public void bookmarksHaveUniqueIds() throws Exception {
+        final Set<String> ids = aBookmarkGenerator().withOwners(3).withHosts(2).build().generate(10_000)
+                .map(Bookmark::getId)
+                .collect(Collectors.toSet());
+
+        assertThat(ids).hasSize(10_000);
+    }
+
+    @Test
+    public void popularTagsAreUsedMostOften() throws Exception {
+        final Map<String, Long> tagCounts = aBookmarkGenerator().withTags(1000).build().generate(20_000)
+                .flatMap(bookmark -> bookmark.getTags().stream())
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+
+        final long mostPopular = tagCounts.get(BookmarkGenerator.tag(0));
+        assertThat(mostPopular).isGreaterThan(tagCounts.getOrDefault(BookmarkGenerator.tag(10), 0L) * 5);
+        assertThat(tagCounts.values()).allMatch(count -> count <= mostPopular);
+    }
+
+    @Test
+    public void bookmarksAreSpreadOverOwners() throws Exception {
+        final Map<String, Long> ownerCounts = aBookmarkGenerator().withOwners(50).build().generate(10_000)
+                .collect(Collectors.groupingBy(Bookmark::getOwner, Collectors.counting()));
+
+        assertThat(ownerCounts.keySet()).isSubsetOf(IntStream.range(0, 50)
+                .mapToObj(BookmarkGenerator::owner)
+                .collect(Collectors.toList()));
+        assertThat(ownerCounts.get(BookmarkGenerator.owner(0))).isGreaterThan(ownerCounts.get(BookmarkGenerator.owner(49)));
+    }
+
+    @Test
+    public void wordsAreDistinct() throws Exception {
+        final Set<String> words = IntStream.range(0, 100_000)
+                .mapToObj(BookmarkGenerator::word)
+                .collect(Collectors.toSet());
+
+        assertThat(words).hasSize(100_000);
+    }
+}
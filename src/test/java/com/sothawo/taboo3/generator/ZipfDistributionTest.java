@@ -0,0 +1,50 @@
+package com.sothawo.taboo3.generator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class ZipfDistributionTest {
+
+    @Test
+    public void ranksFollowTheZipfDistribution() throws Exception {
+        final ZipfDistribution zipfDistribution = new ZipfDistribution(100, 1.0);
+        final Random random = new Random(42);
+        final int[] counts = new int[100];
+        final int samples = 1_000_000;
+        for (int i = 0; i < samples; i++) {
+            counts[zipfDistribution.sample(random)]++;
+        }
+
+        // harmonic number H(100) is about 5.187
+        assertThat(counts[0] / (double) samples).isCloseTo(1 / 5.187, within(0.005));
+        assertThat(counts[0] / (double) counts[1]).isCloseTo(2.0, within(0.05));
+        assertThat(counts[0] / (double) counts[9]).isCloseTo(10.0, within(0.5));
+        assertThat(counts[99]).isPositive();
+    }
+
+    @Test
+    public void exponentZeroIsUniform() throws Exception {
+        final ZipfDistribution zipfDistribution = new ZipfDistribution(4, 0.0);
+        final Random random = new Random(42);
+        final int[] counts = new int[4];
+        for (int i = 0; i < 400_000; i++) {
+            counts[zipfDistribution.sample(random)]++;
+        }
+
+        for (int count : counts) {
+            assertThat(count).isCloseTo(100_000, within(1_500));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePositive() throws Exception {
+        new ZipfDistribution(0, 1.0);
+    }
+}
@@ -0,0 +1,183 @@
+package com.sothawo.taboo3.jobs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.repository.InMemoryMetricRepository;
+import org.springframework.boot.actuate.metrics.writer.DefaultCounterService;
+import org.springframework.boot.actuate.metrics.writer.DefaultGaugeService;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Fail.fail;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class BulkJobServiceTest {
+
+    private InMemoryMetricRepository metricRepository;
+    private MutableClock clock;
+    private BulkJobService bulkJobService;
+
+    @Before
+    public void setup() {
+        metricRepository = new InMemoryMetricRepository();
+        clock = new MutableClock();
+        bulkJobService = new BulkJobService(new DefaultCounterService(metricRepository),
+                new DefaultGaugeService(metricRepository), 1, 1, 2, clock);
+    }
+
+    @After
+    public void tearDown() {
+        bulkJobService.shutdown();
+    }
+
+    private void awaitFinished(BulkJob job) throws InterruptedException {
+        for (int i = 0; i < 500 && !job.getStatus().isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(job.getStatus().isFinished()).isTrue();
+    }
+
+    @Test
+    public void runJobAndTrackProgress() throws Exception {
+        final BulkJob job = bulkJobService.submit("owner", "test", 10, j -> {
+            final Consumer<Integer> action = j.track(i -> { });
+            IntStream.range(0, 10).boxed().forEach(action);
+        });
+
+        awaitFinished(job);
+
+        assertThat(job.getStatus()).isEqualTo(BulkJob.Status.COMPLETED);
+        assertThat(job.getProcessed()).isEqualTo(10);
+        assertThat(job.getTotal()).isEqualTo(10);
+        assertThat(job.getStartedAt()).isNotNull();
+        assertThat(job.getFinishedAt()).isNotNull();
+        assertThat(metricRepository.findOne("counter.jobs.completed").getValue().longValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void cancelRunningJob() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final BulkJob job = bulkJobService.submit("owner", "test", 0, j -> {
+            started.countDown();
+            while (true) {
+                j.checkCancelled();
+                Thread.sleep(5);
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(bulkJobService.cancel("owner", job.getId())).contains(job);
+        awaitFinished(job);
+
+        assertThat(job.getStatus()).isEqualTo(BulkJob.Status.CANCELLED);
+    }
+
+    @Test
+    public void failedJob() throws Exception {
+        final BulkJob job = bulkJobService.submit("owner", "test", 0, j -> {
+            throw new IllegalStateException("boom");
+        });
+
+        awaitFinished(job);
+
+        assertThat(job.getStatus()).isEqualTo(BulkJob.Status.FAILED);
+        assertThat(job.getError()).isEqualTo("boom");
+    }
+
+    @Test
+    public void jobsAreOnlyVisibleToTheirOwner() throws Exception {
+        final BulkJob job = bulkJobService.submit("owner", "test", 0, j -> { });
+
+        assertThat(bulkJobService.findJob("owner", job.getId())).contains(job);
+        assertThat(bulkJobService.findJob("other", job.getId())).isEmpty();
+        assertThat(bulkJobService.cancel("other", job.getId())).isEmpty();
+        assertThat(bulkJobService.findJobs("other")).isEmpty();
+    }
+
+    @Test
+    public void rejectWhenQueueIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        bulkJobService.submit("owner", "running", 0, j -> release.await());
+        bulkJobService.submit("owner", "queued", 0, j -> { });
+        try {
+            bulkJobService.submit("owner", "rejected", 0, j -> { });
+            fail("job should be rejected");
+        } catch (RejectedExecutionException ignored) {
+        } finally {
+            release.countDown();
+        }
+        assertThat(bulkJobService.findJobs("owner")).extracting(BulkJob::getName).containsExactly("running", "queued");
+    }
+
+    @Test
+    public void oldFinishedJobsAreRemoved() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            awaitFinished(bulkJobService.submit("owner", "job" + i, 0, j -> { }));
+        }
+        final CountDownLatch release = new CountDownLatch(1);
+        bulkJobService.submit("owner", "job4", 0, j -> release.await());
+
+        assertThat(bulkJobService.findJobs("owner")).extracting(BulkJob::getName).containsExactly("job2", "job3",
+                "job4");
+        release.countDown();
+    }
+
+    @Test
+    public void durationIsMeasuredWithTheClock() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BulkJob job = bulkJobService.submit("owner", "test", 0, j -> {
+            started.countDown();
+            release.await();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        clock.advance(Duration.ofSeconds(3));
+        assertThat(job.getDurationMillis()).isEqualTo(3000);
+
+        clock.advance(Duration.ofSeconds(2));
+        release.countDown();
+        awaitFinished(job);
+        clock.advance(Duration.ofSeconds(10));
+
+        assertThat(job.getDurationMillis()).isEqualTo(5000);
+    }
+
+    /**
+     * a clock that can be advanced manually.
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant = Instant.parse("2017-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.sothawo.taboo3.links;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class HostLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long now;
+    private HostLimiter hostLimiter;
+
+    @Before
+    public void setup() {
+        now = 1000 * SECOND;
+        hostLimiter = new HostLimiter(2, 4.0, () -> now);
+    }
+
+    @Test
+    public void requestsToAHostAreSpacedByTheRate() throws Exception {
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(0);
+        hostLimiter.release("a.com");
+
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(SECOND / 4);
+        now += SECOND / 8;
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(SECOND / 8);
+        now += SECOND / 8;
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(0);
+    }
+
+    @Test
+    public void concurrentRequestsToAHostAreLimited() throws Exception {
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(0);
+        now += SECOND;
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(0);
+        now += SECOND;
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(HostLimiter.BUSY_RETRY_NANOS);
+
+        hostLimiter.release("a.com");
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(0);
+    }
+
+    @Test
+    public void hostsAreLimitedIndependently() throws Exception {
+        assertThat(hostLimiter.tryAcquire("a.com")).isEqualTo(0);
+        assertThat(hostLimiter.tryAcquire("b.com")).isEqualTo(0);
+        assertThat(hostLimiter.tryAcquire("a.com")).isGreaterThan(0);
+    }
+}
@@ -0,0 +1,144 @@
+package com.sothawo.taboo3.links;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.jobs.BulkJob;
+import com.sothawo.taboo3.jobs.BulkJobService;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+import static com.sothawo.taboo3.links.LinkCheckService.TAG_TO_VALIDATE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the links of stored bookmarks against a local http server.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"taboo3.links.per-host-concurrency=2", "taboo3.links.per-host-rate=100"})
+@DirtiesContext
+public class LinkCheckServiceTest {
+
+    @Autowired
+    private BookmarkService bookmarkService;
+    @Autowired
+    private LinkCheckService linkCheckService;
+    @Autowired
+    private BulkJobService bulkJobService;
+
+    private HttpServer server;
+    private String baseUrl;
+    /** the server address by ip, redirecting to the same server by name which is another host for the checks. */
+    private String ipUrl;
+    /** number of active requests by Host header. */
+    private final Map<String, AtomicInteger> activeRequests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxActiveRequests = new ConcurrentHashMap<>();
+
+    @Before
+    public void setup() throws Exception {
+        bookmarkService.deleteAll();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(10));
+        server.createContext("/", exchange -> {
+            final String host = exchange.getRequestHeaders().getFirst("Host");
+            final AtomicInteger activeOnHost = activeRequests.computeIfAbsent(host, h -> new AtomicInteger());
+            final int active = activeOnHost.incrementAndGet();
+            maxActiveRequests.computeIfAbsent(host, h -> new AtomicInteger()).accumulateAndGet(active, Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // count the request as finished before the client gets the response
+            activeOnHost.decrementAndGet();
+            final String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/moved")) {
+                exchange.getResponseHeaders().set("Location", baseUrl + "/ok" + path);
+                exchange.sendResponseHeaders(301, -1);
+                exchange.close();
+                return;
+            }
+            final boolean broken = exchange.getRequestURI().getPath().startsWith("/broken");
+            exchange.sendResponseHeaders(broken ? 404 : 200, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        ipUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void checkTaggedLinks() throws Exception {
+        final List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl(baseUrl + "/ok/" + i).addTag(TAG_TO_VALIDATE)
+                    .addTag("tag").build());
+        }
+        for (int i = 0; i < 10; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl(ipUrl + "/moved/" + i).addTag(TAG_TO_VALIDATE)
+                    .addTag("tag").build());
+        }
+        for (int i = 0; i < 5; i++) {
+            bookmarks.add(aBookmark().withOwner("owner").withUrl(baseUrl + "/broken/" + i).addTag(TAG_TO_VALIDATE)
+                    .build());
+        }
+        bookmarks.add(aBookmark().withOwner("owner").withUrl(baseUrl + "/unchecked").build());
+        bookmarks.add(aBookmark().withOwner("other").withUrl(baseUrl + "/other").addTag(TAG_TO_VALIDATE).build());
+        bookmarkService.save(bookmarks);
+        assertThat(linkCheckService.countTaggedLinks("owner")).isEqualTo(35);
+
+        final BulkJob job = bulkJobService.submit("owner", "validate", 35,
+                j -> linkCheckService.checkTaggedLinks("owner", j));
+        for (int i = 0; i < 1000 && !job.getStatus().isFinished(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertThat(job.getStatus()).isEqualTo(BulkJob.Status.COMPLETED);
+        assertThat(job.getProcessed()).isEqualTo(35);
+        assertThat(job.getSucceeded()).isEqualTo(35);
+        // the redirected checks are limited on both hosts
+        assertThat(maxActiveRequests).containsOnlyKeys("localhost:" + server.getAddress().getPort(),
+                "127.0.0.1:" + server.getAddress().getPort());
+        maxActiveRequests.values().forEach(max -> assertThat(max.get()).isLessThanOrEqualTo(2));
+        assertThat(linkCheckService.countTaggedLinks("owner")).isEqualTo(5);
+        assertThat(linkCheckService.countTaggedLinks("other")).isEqualTo(1);
+        bookmarkService.findByOwner("owner").forEach(bookmark -> {
+            if (bookmark.getUrl().contains("/moved/")) {
+                assertThat(bookmark.getLinkCheck().getStatus()).isEqualTo(200);
+                assertThat(bookmark.getLinkCheck().getRedirectUrl()).isEqualTo(baseUrl + "/ok"
+                        + bookmark.getUrl().substring(ipUrl.length()));
+                assertThat(bookmark.getTags()).containsOnly("tag");
+            } else if (bookmark.getUrl().contains("/ok/")) {
+                assertThat(bookmark.getLinkCheck().getStatus()).isEqualTo(200);
+                assertThat(bookmark.getTags()).containsOnly("tag");
+            } else if (bookmark.getUrl().contains("/broken/")) {
+                assertThat(bookmark.getLinkCheck().getStatus()).isEqualTo(404);
+                assertThat(bookmark.getTags()).containsOnly(TAG_TO_VALIDATE);
+            } else {
+                assertThat(bookmark.getLinkCheck()).isNull();
+            }
+        });
+    }
+}
@@ -0,0 +1,156 @@
+package com.sothawo.taboo3.links;
+
+import com.sothawo.taboo3.data.LinkCheck;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the LinkChecker against a local http server.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class LinkCheckerTest {
+
+    private static final Instant NOW = Instant.parse("2017-01-01T00:00:00Z");
+
+    private HttpServer server;
+    private String baseUrl;
+    private LinkChecker linkChecker;
+    /** the methods and paths of the received requests. */
+    private List<String> requests;
+
+    @Before
+    public void setup() throws Exception {
+        requests = new CopyOnWriteArrayList<>();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ok", exchange -> respond(exchange, 200));
+        server.createContext("/nohead", exchange ->
+                respond(exchange, "HEAD".equals(exchange.getRequestMethod()) ? 405 : 200));
+        server.createContext("/moved", exchange -> redirect(exchange, "/ok"));
+        server.createContext("/loop", exchange -> redirect(exchange, "/loop"));
+        server.createContext("/elsewhere", exchange ->
+                redirect(exchange, "http://127.0.0.1:" + server.getAddress().getPort() + "/ok"));
+        server.createContext("/missing", exchange -> respond(exchange, 404));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        linkChecker = new LinkChecker(2000, 3, "test", Clock.fixed(NOW, ZoneId.of("UTC")));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange, int status) throws IOException {
+        requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private void redirect(HttpExchange exchange, String location) throws IOException {
+        exchange.getResponseHeaders().add("Location", location);
+        respond(exchange, 301);
+    }
+
+    @Test
+    public void healthyLinkIsCheckedWithHead() throws Exception {
+        final LinkCheck linkCheck = linkChecker.check(baseUrl + "/ok");
+
+        assertThat(linkCheck.getStatus()).isEqualTo(200);
+        assertThat(linkCheck.isHealthy()).isTrue();
+        assertThat(linkCheck.getRedirectUrl()).isNull();
+        assertThat(linkCheck.getCheckedAt()).isEqualTo(NOW.toEpochMilli());
+        assertThat(linkCheck.getError()).isNull();
+        assertThat(requests).containsExactly("HEAD /ok");
+    }
+
+    @Test
+    public void fallbackToGetWhenHeadIsNotAllowed() throws Exception {
+        final LinkCheck linkCheck = linkChecker.check(baseUrl + "/nohead");
+
+        assertThat(linkCheck.getStatus()).isEqualTo(200);
+        assertThat(requests).containsExactly("HEAD /nohead", "GET /nohead");
+    }
+
+    @Test
+    public void redirectTargetIsRecorded() throws Exception {
+        final LinkCheck linkCheck = linkChecker.check(baseUrl + "/moved");
+
+        assertThat(linkCheck.isHealthy()).isTrue();
+        assertThat(linkCheck.getRedirectUrl()).isEqualTo(baseUrl + "/ok");
+    }
+
+    @Test
+    public void redirectToAnotherHostIsAnotherHop() throws Exception {
+        final LinkChecker.Progress progress = linkChecker.start(baseUrl + "/elsewhere");
+        assertThat(progress.getHost()).isEqualTo("localhost");
+
+        linkChecker.step(progress);
+        assertThat(progress.isDone()).isFalse();
+        assertThat(progress.getHost()).isEqualTo("127.0.0.1");
+        assertThat(requests).containsExactly("HEAD /elsewhere");
+
+        linkChecker.step(progress);
+        assertThat(progress.isDone()).isTrue();
+        assertThat(progress.getResult().isHealthy()).isTrue();
+        assertThat(progress.getResult().getRedirectUrl())
+                .isEqualTo("http://127.0.0.1:" + server.getAddress().getPort() + "/ok");
+        assertThat(requests).containsExactly("HEAD /elsewhere", "HEAD /ok");
+    }
+
+    @Test
+    public void redirectLoopIsStopped() throws Exception {
+        final LinkCheck linkCheck = linkChecker.check(baseUrl + "/loop");
+
+        assertThat(linkCheck.isHealthy()).isFalse();
+        assertThat(linkCheck.getStatus()).isEqualTo(301);
+        assertThat(linkCheck.getError()).isEqualTo("too many redirects");
+        assertThat(requests).hasSize(4);
+    }
+
+    @Test
+    public void missingPageIsBroken() throws Exception {
+        final LinkCheck linkCheck = linkChecker.check(baseUrl + "/missing");
+
+        assertThat(linkCheck.getStatus()).isEqualTo(404);
+        assertThat(linkCheck.isHealthy()).isFalse();
+        assertThat(requests).containsExactly("HEAD /missing", "GET /missing");
+    }
+
+    @Test
+    public void unreachableHostHasNoStatus() throws Exception {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        final LinkCheck linkCheck = linkChecker.check("http://localhost:" + port + "/");
+
+        assertThat(linkCheck.getStatus()).isEqualTo(0);
+        assertThat(linkCheck.isHealthy()).isFalse();
+        assertThat(linkCheck.getError()).contains("ConnectException");
+    }
+
+    @Test
+    public void invalidUrlHasNoStatus() throws Exception {
+        final LinkCheck linkCheck = linkChecker.check("no url");
+
+        assertThat(linkCheck.getStatus()).isEqualTo(0);
+        assertThat(linkCheck.getError()).contains("MalformedURLException");
+        assertThat(linkChecker.start("no url").isDone()).isTrue();
+    }
+}
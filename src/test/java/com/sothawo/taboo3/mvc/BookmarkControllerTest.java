@@ -0,0 +1,215 @@
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.data.BookmarkEdit;
+import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.title.TitleResult;
+import com.sothawo.taboo3.title.TitleService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ContextConfiguration(initializers = TestUsers.class)
+@DirtiesContext
+public class BookmarkControllerTest {
+
+    private static final String BOOKMARKS = "[{\"url\":\"url1\",\"title\":\"title1\",\"tags\":[\"tag\"]}," +
+            "{\"url\":\"url2\",\"title\":\"title2\",\"tags\":[\"tag\"]}]";
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private FilterChainProxy springSecurityFilterChain;
+    @SpyBean
+    private BookmarkService bookmarkService;
+    @MockBean
+    private TitleService titleService;
+
+    private MockMvc mockMvc;
+    /**
+     * without the security filters, as the request wrapper of the security filter chain breaks the async dispatch of
+     * the MockMvc; the async handlers don't need the principal.
+     */
+    private MockMvc asyncMockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        mockMvc = webAppContextSetup(webApplicationContext).addFilters(springSecurityFilterChain).build();
+        asyncMockMvc = webAppContextSetup(webApplicationContext).build();
+        bookmarkService.deleteAll();
+    }
+
+    private MockHttpServletRequestBuilder upload(String content) {
+        return post("/bookmark/upload")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(content);
+    }
+
+    @Test
+    public void uploadSavesWithoutImportMode() throws Exception {
+        mockMvc.perform(upload(BOOKMARKS))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(2));
+
+        verify(bookmarkService, never()).bulkImport(any(), any());
+        assertThat(bookmarkService.countByOwner(TestUsers.USERNAME)).isEqualTo(2);
+    }
+
+    @Test
+    public void uploadWithImportParameterUsesImportMode() throws Exception {
+        mockMvc.perform(upload(BOOKMARKS).param("import", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(2));
+
+        verify(bookmarkService).bulkImport(any(), any());
+        assertThat(bookmarkService.countByOwner(TestUsers.USERNAME)).isEqualTo(2);
+    }
+
+    @Test
+    public void uploadWithInvalidJsonReportsSavedBookmarks() throws Exception {
+        mockMvc.perform(upload(BOOKMARKS.substring(0, BOOKMARKS.length() - 1) + ",{\"url\":]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").isNotEmpty())
+                .andExpect(jsonPath("$.bulkResult.succeeded").value(2));
+
+        assertThat(bookmarkService.countByOwner(TestUsers.USERNAME)).isEqualTo(2);
+    }
+
+    @Test
+    public void uploadWithInvalidBookmarkIsBadRequest() throws Exception {
+        mockMvc.perform(upload("[{\"url\":\"url1\",\"tags\":{\"tag\":1}}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").isNotEmpty())
+                .andExpect(jsonPath("$.bulkResult.succeeded").value(0));
+    }
+
+    @Test
+    public void uploadWithoutJsonIsBadRequest() throws Exception {
+        mockMvc.perform(upload("no json"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.bulkResult.succeeded").value(0));
+    }
+
+    private MockHttpServletRequestBuilder loadTitle(String url) {
+        return post("/bookmark/loadtitle").param("url", url);
+    }
+
+    private static CompletableFuture<TitleResult> rejected() {
+        final CompletableFuture<TitleResult> future = new CompletableFuture<>();
+        future.completeExceptionally(new RejectedExecutionException("queue full"));
+        return future;
+    }
+
+    @Test
+    public void loadTitleReturnsTitle() throws Exception {
+        when(titleService.loadTitle("http://url"))
+                .thenReturn(CompletableFuture.completedFuture(TitleResult.ofTitle("title")));
+
+        MvcResult result = asyncMockMvc.perform(loadTitle("http://url"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        asyncMockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("title"));
+    }
+
+    @Test
+    public void loadTitleWithFullQueueIsServiceUnavailable() throws Exception {
+        when(titleService.loadTitle(anyString())).thenReturn(rejected());
+
+        MvcResult result = asyncMockMvc.perform(loadTitle("http://url"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        asyncMockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    public void showForAddWithFullQueueShowsEditWithoutTitle() throws Exception {
+        when(titleService.loadTitle(anyString())).thenReturn(rejected());
+
+        MvcResult result = asyncMockMvc.perform(get("/bookmark/add").param("url", "http://url"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        BookmarkEdit bookmark = (BookmarkEdit) asyncMockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(view().name("edit"))
+                .andReturn().getModelAndView().getModel().get("bookmark");
+        assertThat(bookmark.getUrl()).isEqualTo("http://url");
+        assertThat(bookmark.getTitle()).isNullOrEmpty();
+    }
+
+    @Test
+    public void renameTagsTrimsTags() throws Exception {
+        mockMvc.perform(post("/bookmark/tags/rename").param("tag", " Java ").param("to", " Lang ")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+
+        verify(bookmarkService, timeout(5000)).renameTags(eq(TestUsers.USERNAME),
+                eq(Collections.singletonList("Java")), eq("lang"), any(), any());
+    }
+
+    @Test
+    public void removeTagTrimsTag() throws Exception {
+        mockMvc.perform(post("/bookmark/tags/remove").param("tag", " java ")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+
+        verify(bookmarkService).countByOwnerAndTags(TestUsers.USERNAME, Collections.singletonList("java"));
+        verify(bookmarkService, timeout(5000)).removeTag(eq(TestUsers.USERNAME), eq("java"), any(), any());
+    }
+
+    @Test
+    public void blankTagsAreRejected() throws Exception {
+        mockMvc.perform(post("/bookmark/tags/rename").param("tag", "java").param("to", "  ")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/bookmark/tags/remove").param("tag", " ")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,136 @@
+package com.sothawo.taboo3.mvc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class CachingPasswordEncoderTest {
+
+    private MutableClock clock;
+    private CountingEncoder delegate;
+    private CachingPasswordEncoder encoder;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new MutableClock();
+        delegate = new CountingEncoder();
+        encoder = new CachingPasswordEncoder(delegate, 2, Duration.ofMinutes(5), clock);
+    }
+
+    @Test
+    public void successfulCheckIsRemembered() throws Exception {
+        assertThat(encoder.matches("secret", "hash-secret")).isTrue();
+        assertThat(encoder.matches("secret", "hash-secret")).isTrue();
+
+        assertThat(delegate.checks).isEqualTo(1);
+    }
+
+    @Test
+    public void failedChecksAlwaysGoToTheDelegate() throws Exception {
+        assertThat(encoder.matches("guess", "hash-secret")).isFalse();
+        assertThat(encoder.matches("guess", "hash-secret")).isFalse();
+
+        assertThat(delegate.checks).isEqualTo(2);
+        assertThat(encoder.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void rememberedCheckDoesNotMatchOtherPasswordOrHash() throws Exception {
+        encoder.matches("secret", "hash-secret");
+
+        assertThat(encoder.matches("other", "hash-secret")).isFalse();
+        assertThat(encoder.matches("secret", "hash-other")).isFalse();
+        assertThat(delegate.checks).isEqualTo(3);
+    }
+
+    @Test
+    public void checksExpire() throws Exception {
+        encoder.matches("secret", "hash-secret");
+
+        clock.advance(Duration.ofMinutes(4));
+        encoder.matches("secret", "hash-secret");
+        assertThat(delegate.checks).isEqualTo(1);
+
+        clock.advance(Duration.ofMinutes(1));
+        encoder.matches("secret", "hash-secret");
+        assertThat(delegate.checks).isEqualTo(2);
+    }
+
+    @Test
+    public void leastRecentlyUsedCheckIsEvicted() throws Exception {
+        encoder.matches("a", "hash-a");
+        encoder.matches("b", "hash-b");
+        encoder.matches("a", "hash-a");
+        encoder.matches("c", "hash-c");
+        assertThat(delegate.checks).isEqualTo(3);
+
+        encoder.matches("a", "hash-a");
+        assertThat(delegate.checks).isEqualTo(3);
+        encoder.matches("b", "hash-b");
+        assertThat(delegate.checks).isEqualTo(4);
+    }
+
+    @Test
+    public void clearForgetsChecks() throws Exception {
+        encoder.matches("secret", "hash-secret");
+
+        encoder.clear();
+        encoder.matches("secret", "hash-secret");
+
+        assertThat(delegate.checks).isEqualTo(2);
+    }
+
+    /**
+     * encoder that prefixes the password with hash- and counts the checks.
+     */
+    private static class CountingEncoder implements PasswordEncoder {
+        private int checks;
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return "hash-" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            checks++;
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    }
+
+    /**
+     * a clock that can be advanced manually.
+     */
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2017-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.data.Bookmark;
+import com.sothawo.taboo3.data.BookmarkService;
+import com.sothawo.taboo3.data.PageCursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.sothawo.taboo3.data.BookmarkBuilder.aBookmark;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "taboo3.list.page-size=2")
+@ContextConfiguration(initializers = TestUsers.class)
+@DirtiesContext
+public class ListControllerTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private FilterChainProxy springSecurityFilterChain;
+    @SpyBean
+    private BookmarkService bookmarkService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        mockMvc = webAppContextSetup(webApplicationContext).addFilters(springSecurityFilterChain).build();
+        bookmarkService.deleteAll();
+    }
+
+    private List<Bookmark> saveBookmarks() {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            bookmarks.add(aBookmark().withOwner(TestUsers.USERNAME).withUrl("url" + i).withTitle("title" + (2 - i))
+                    .addTag("common").addTag("tag" + i).build());
+        }
+        bookmarkService.save(bookmarks);
+        Collections.reverse(bookmarks);
+        return bookmarks;
+    }
+
+    private MockHttpServletRequestBuilder list() {
+        return get("/").param("selectTag", "common")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization());
+    }
+
+    @Test
+    public void selectionIsAnsweredFromSnapshot() throws Exception {
+        List<Bookmark> bookmarks = saveBookmarks();
+
+        Map<String, Object> model = mockMvc.perform(list())
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("bookmarksMessage", "3 bookmarks found."))
+                .andExpect(model().attribute("availableTags", contains("tag0", "tag1", "tag2")))
+                .andReturn().getModelAndView().getModel();
+
+        assertThat(model.get("bookmarks")).isEqualTo(bookmarks.subList(0, 2));
+        assertThat(model.get("nextPage")).isEqualTo(1);
+        assertThat(model.get("nextAfter")).isEqualTo(PageCursor.of(bookmarks.get(1)).encode());
+        assertThat(model).doesNotContainKey("previousPage");
+        verify(bookmarkService).findTagsByOwnerAndSelection(anyString(), any(), any(), anyInt());
+        verify(bookmarkService, never()).findByOwnerAndSelection(anyString(), any(), any(), any());
+        verify(bookmarkService, never()).findAllTagCountsByOwnerAndSelection(anyString(), any(), any());
+    }
+
+    @Test
+    public void nextPageIsLoadedAfterCursor() throws Exception {
+        List<Bookmark> bookmarks = saveBookmarks();
+
+        Map<String, Object> model = mockMvc.perform(list().param("page", "1")
+                .param("after", PageCursor.of(bookmarks.get(1)).encode()))
+                .andExpect(status().isOk())
+                .andReturn().getModelAndView().getModel();
+
+        assertThat(model.get("bookmarks")).isEqualTo(bookmarks.subList(2, 3));
+        assertThat(model.get("previousPage")).isEqualTo(0);
+        assertThat(model).doesNotContainKeys("nextPage", "nextAfter");
+    }
+
+    @Test
+    public void searchTextIsStoredAsEntered() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        CsrfToken csrfToken = (CsrfToken) mockMvc.perform(list().session(session))
+                .andReturn().getRequest().getAttribute(CsrfToken.class.getName());
+
+        mockMvc.perform(post("/searchText").session(session).param("text", "  hello, world-wide  ")
+                .param(csrfToken.getParameterName(), csrfToken.getToken())
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().is3xxRedirection());
+
+        SearchData searchData = (SearchData) mockMvc.perform(list().session(session))
+                .andExpect(status().isOk())
+                .andReturn().getModelAndView().getModel().get("searchData");
+        assertThat(searchData.getText()).isEqualTo("hello, world-wide");
+    }
+}
@@ -0,0 +1,102 @@
+package com.sothawo.taboo3.mvc;
+
+import com.sothawo.taboo3.data.BookmarkTags;
+import com.sothawo.taboo3.data.PageCursor;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class ResultSnapshotTest {
+
+    private final List<BookmarkTags> bookmarks = Arrays.asList(
+            new BookmarkTags(PageCursor.of("id1", "title"), tags("common", "a")),
+            new BookmarkTags(PageCursor.of("id2", "title"), tags("common", "b")),
+            new BookmarkTags(PageCursor.of("id3", "title"), tags("common", "a", "b")));
+
+    private final Set<String> common = Collections.singleton("common");
+
+    private ResultSnapshot snapshot() {
+        return ResultSnapshot.of("owner", 1, null, common, bookmarks);
+    }
+
+    private static Set<String> tags(String... tags) {
+        return Arrays.stream(tags).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void idsKeepTheirOrder() throws Exception {
+        ResultSnapshot snapshot = snapshot();
+
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.page(0, 10)).containsExactly("id1", "id2", "id3");
+        assertThat(snapshot.tags()).containsExactly("a", "b", "common");
+    }
+
+    @Test
+    public void addingTagsNarrows() throws Exception {
+        ResultSnapshot snapshot = snapshot();
+
+        assertThat(snapshot.canNarrowTo("owner", 1, null, tags("common", "a"))).isTrue();
+        ResultSnapshot narrowed = snapshot.narrow(tags("common", "a"));
+
+        assertThat(narrowed.size()).isEqualTo(2);
+        assertThat(narrowed.tags()).containsExactly("a", "b", "common");
+        assertThat(narrowed.narrow(tags("common", "a", "b")).page(0, 10))
+                .containsExactly("id3");
+    }
+
+    @Test
+    public void widenedOrChangedSelectionsCannotBeNarrowed() throws Exception {
+        ResultSnapshot snapshot = snapshot().narrow(tags("common", "a"));
+
+        assertThat(snapshot.canNarrowTo("owner", 1, null, common)).isFalse();
+        assertThat(snapshot.canNarrowTo("owner", 1, "text", tags("common", "a"))).isFalse();
+        assertThat(snapshot.canNarrowTo("owner", 2, null, tags("common", "a"))).isFalse();
+        assertThat(snapshot.canNarrowTo("other", 1, null, tags("common", "a"))).isFalse();
+        assertThat(snapshot.canNarrowTo("owner", 1, "", tags("COMMON", "a"))).isTrue();
+    }
+
+    @Test
+    public void pagesAndCursors() throws Exception {
+        List<BookmarkTags> many = IntStream.range(0, 25)
+                .mapToObj(i -> new BookmarkTags(PageCursor.of(String.format("id%02d", i), "title" + i / 10),
+                        Collections.singleton("tag")))
+                .collect(Collectors.toList());
+        ResultSnapshot snapshot = ResultSnapshot.of("owner", 1, null, Collections.singleton("tag"), many);
+
+        List<String> first = snapshot.page(0, 10);
+        List<String> second = snapshot.page(1, 10);
+
+        assertThat(first).hasSize(10);
+        assertThat(snapshot.page(2, 10)).hasSize(5);
+        assertThat(snapshot.page(3, 10)).isEmpty();
+        assertThat(snapshot.after(PageCursor.of(first.get(9), "title0"), 10)).isEqualTo(second);
+    }
+
+    @Test
+    public void cursorOfMissingBookmarkContinuesAtItsPosition() throws Exception {
+        List<BookmarkTags> sorted = Arrays.asList(
+                new BookmarkTags(PageCursor.of("id3", "a"), Collections.singleton("tag")),
+                new BookmarkTags(PageCursor.of("id1", "b"), Collections.singleton("tag")),
+                new BookmarkTags(PageCursor.of("id4", "b"), Collections.singleton("tag")),
+                new BookmarkTags(PageCursor.of("id2", null), Collections.singleton("tag")));
+        ResultSnapshot snapshot = ResultSnapshot.of("owner", 1, null, Collections.singleton("tag"), sorted);
+
+        assertThat(snapshot.after(PageCursor.of("id2", "b"), 10)).containsExactly("id4", "id2");
+        assertThat(snapshot.after(PageCursor.of("id0", "a"), 1)).containsExactly("id3");
+        assertThat(snapshot.after(PageCursor.of("id1", null), 10)).containsExactly("id2");
+        assertThat(snapshot.after(PageCursor.of("id5", null), 10)).isEmpty();
+        // the same id with another title is a different position
+        assertThat(snapshot.after(PageCursor.of("id4", "a"), 10)).containsExactly("id1", "id4", "id2");
+    }
+}
@@ -0,0 +1,119 @@
+package com.sothawo.taboo3.mvc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ContextConfiguration(initializers = TestUsers.class)
+@DirtiesContext
+public class SecurityConfigTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private FilterChainProxy springSecurityFilterChain;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        mockMvc = webAppContextSetup(webApplicationContext).addFilters(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void basicAuthenticatedBulkDeleteNeedsNoCsrfToken() throws Exception {
+        mockMvc.perform(post("/bookmark/deleteByTags").param("tag", "obsolete")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+        mockMvc.perform(post("/bookmark/deleteByIds").contentType(MediaType.APPLICATION_JSON).content("[\"id\"]")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void basicAuthenticatedTagChangesNeedNoCsrfToken() throws Exception {
+        mockMvc.perform(post("/bookmark/tags/rename").param("tag", "javascript").param("to", "js")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+        mockMvc.perform(post("/bookmark/tags/remove").param("tag", "obsolete")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void tagChangesWithoutBasicAuthenticationNeedCsrfToken() throws Exception {
+        mockMvc.perform(post("/bookmark/tags/rename").param("tag", "javascript").param("to", "js"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/bookmark/tags/remove").param("tag", "obsolete"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void linkValidationIsStartedByPostWithCsrfTokenOrBasicAuthentication() throws Exception {
+        mockMvc.perform(post("/bookmark/validate"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/bookmark/validate")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isMethodNotAllowed());
+        mockMvc.perform(post("/bookmark/validate")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void jobCancelNeedsCsrfTokenWithoutBasicAuthentication() throws Exception {
+        mockMvc.perform(post("/jobs/unknown/cancel"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/jobs/unknown/cancel")
+                .header(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization()))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void bulkDeleteWithoutBasicAuthenticationNeedsCsrfToken() throws Exception {
+        final String forwardedUrl = mockMvc.perform(post("/bookmark/deleteByTags").param("tag", "obsolete"))
+                .andExpect(status().isForbidden())
+                .andReturn().getResponse().getForwardedUrl();
+
+        assertThat(forwardedUrl).isEqualTo("/login");
+    }
+
+    @Test
+    public void basicAuthenticatedMatcherChecksHeaderAndPath() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/bookmark/deleteByIds");
+        request.setServletPath("/bookmark/deleteByIds");
+
+        assertThat(SecurityConfig.basicAuthenticated(SecurityConfig.BASIC_AUTH_CSRF_EXEMPT).matches(request))
+                .isFalse();
+
+        request.addHeader(HttpHeaders.AUTHORIZATION, TestUsers.basicAuthorization());
+        assertThat(SecurityConfig.basicAuthenticated(SecurityConfig.BASIC_AUTH_CSRF_EXEMPT).matches(request))
+                .isTrue();
+
+        request.setServletPath("/bookmark/delete/id");
+        assertThat(SecurityConfig.basicAuthenticated(SecurityConfig.BASIC_AUTH_CSRF_EXEMPT).matches(request))
+                .isFalse();
+    }
+}
@@ -0,0 +1,115 @@
+package com.sothawo.taboo3.mvc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class Taboo3UserServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path usersFile;
+    private Taboo3UserService userService;
+
+    @Before
+    public void setUp() throws Exception {
+        usersFile = folder.getRoot().toPath().resolve("users");
+        writeUsers("# comment", "peter:hash1:USER,ACTUATOR", "invalid line");
+        userService = new Taboo3UserService(usersFile.toString());
+        userService.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        userService.stop();
+    }
+
+    private void writeUsers(String... lines) throws Exception {
+        final Path tmp = folder.getRoot().toPath().resolve("users.tmp");
+        Files.write(tmp, Arrays.asList(lines), StandardCharsets.UTF_8);
+        Files.move(tmp, usersFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean isKnown(String username) {
+        try {
+            userService.loadUserByUsername(username);
+            return true;
+        } catch (UsernameNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void loadsUsersFromFile() throws Exception {
+        UserDetails user = userService.loadUserByUsername("peter");
+
+        assertThat(user.getPassword()).isEqualTo("hash1");
+        assertThat(user.getAuthorities()).extracting(Object::toString).containsOnly("USER", "ACTUATOR");
+    }
+
+    @Test
+    public void unknownUserIsNotFound() throws Exception {
+        try {
+            userService.loadUserByUsername("nobody");
+            fail("exception expected");
+        } catch (UsernameNotFoundException e) {
+            assertThat(e).hasMessage("nobody");
+        }
+    }
+
+    @Test
+    public void returnsCopies() throws Exception {
+        UserDetails user1 = userService.loadUserByUsername("peter");
+        UserDetails user2 = userService.loadUserByUsername("peter");
+
+        assertThat(user1).isNotSameAs(user2);
+    }
+
+    @Test
+    public void reloadsWhenFileChanges() throws Exception {
+        writeUsers("paul:hash2:USER");
+
+        final long end = System.currentTimeMillis() + 30_000;
+        while (isKnown("peter") && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+
+        assertThat(isKnown("peter")).isFalse();
+        assertThat(userService.loadUserByUsername("paul").getPassword()).isEqualTo("hash2");
+    }
+
+    @Test
+    public void changeListenersAreCalledOnReload() throws Exception {
+        final int[] calls = new int[1];
+        userService.addChangeListener(() -> calls[0]++);
+
+        userService.reload();
+
+        assertThat(calls[0]).isEqualTo(1);
+    }
+
+    @Test
+    public void missingFileMeansNoUsers() throws Exception {
+        Files.delete(usersFile);
+        userService.reload();
+
+        assertThat(isKnown("peter")).isFalse();
+    }
+}
@@ -0,0 +1,47 @@
+package com.sothawo.taboo3.mvc;
+
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+
+/**
+ * Initializer for tests going through the security filter chain: writes a users file with the user <i>peter</i> and
+ * the password <i>secret</i> to a temporary file and configures it as <i>taboo3.users</i>.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class TestUsers implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    static final String USERNAME = "peter";
+    static final String PASSWORD = "secret";
+
+    @Override
+    public void initialize(ConfigurableApplicationContext applicationContext) {
+        try {
+            final Path users = Files.createTempFile("taboo3-users", "");
+            users.toFile().deleteOnExit();
+            Files.write(users, Collections.singletonList(
+                    USERNAME + ':' + new BCryptPasswordEncoder().encode(PASSWORD) + ":USER"), StandardCharsets.UTF_8);
+            EnvironmentTestUtils.addEnvironment(applicationContext, "taboo3.users=" + users.toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the value of the Authorization header for HTTP Basic authentication of the test user
+     */
+    static String basicAuthorization() {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((USERNAME + ':' + PASSWORD).getBytes(StandardCharsets.UTF_8));
+    }
+}
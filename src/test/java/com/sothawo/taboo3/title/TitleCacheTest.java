@@ -0,0 +1,164 @@
+package com.sothawo.taboo3.title;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class TitleCacheTest {
+
+    private MutableClock clock;
+    private TitleCache titleCache;
+    private AtomicInteger loads;
+
+    @Before
+    public void setup() {
+        clock = new MutableClock();
+        titleCache = new TitleCache(2, Duration.ofMinutes(10), Duration.ofMinutes(1), clock);
+        loads = new AtomicInteger();
+    }
+
+    private CompletableFuture<TitleResult> load(String url) {
+        loads.incrementAndGet();
+        return CompletableFuture.completedFuture(TitleResult.ofTitle("title of " + url));
+    }
+
+    private CompletableFuture<TitleResult> loadError(String url) {
+        loads.incrementAndGet();
+        return CompletableFuture.completedFuture(TitleResult.ofError(HttpStatus.NOT_FOUND));
+    }
+
+    @Test
+    public void secondGetIsServedFromCache() throws Exception {
+        TitleResult first = titleCache.get("http://example.com", this::load).join();
+        TitleResult second = titleCache.get("http://example.com", this::load).join();
+
+        assertThat(first.getTitle()).isEqualTo("title of http://example.com");
+        assertThat(second).isSameAs(first);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void equivalentUrlsShareAnEntry() throws Exception {
+        titleCache.get("HTTP://Example.COM:80#fragment", this::load).join();
+        titleCache.get("example.com/", this::load).join();
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void entryExpiresAfterTtl() throws Exception {
+        titleCache.get("http://example.com", this::load).join();
+        clock.advance(Duration.ofMinutes(9));
+        titleCache.get("http://example.com", this::load).join();
+        assertThat(loads.get()).isEqualTo(1);
+
+        clock.advance(Duration.ofMinutes(1));
+        titleCache.get("http://example.com", this::load).join();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void negativeEntryExpiresAfterNegativeTtl() throws Exception {
+        TitleResult result = titleCache.get("http://example.com", this::loadError).join();
+        titleCache.get("http://example.com", this::loadError).join();
+        assertThat(result.getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(loads.get()).isEqualTo(1);
+
+        clock.advance(Duration.ofMinutes(1));
+        titleCache.get("http://example.com", this::loadError).join();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        titleCache.get("http://one.com", this::load).join();
+        titleCache.get("http://two.com", this::load).join();
+        titleCache.get("http://one.com", this::load).join();
+        titleCache.get("http://three.com", this::load).join();
+        assertThat(titleCache.size()).isEqualTo(2);
+        assertThat(loads.get()).isEqualTo(3);
+
+        titleCache.get("http://one.com", this::load).join();
+        assertThat(loads.get()).isEqualTo(3);
+        titleCache.get("http://two.com", this::load).join();
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLoad() throws Exception {
+        CompletableFuture<TitleResult> pending = new CompletableFuture<>();
+        List<CompletableFuture<TitleResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(titleCache.get("http://example.com", url -> {
+                loads.incrementAndGet();
+                return pending;
+            }));
+        }
+        assertThat(futures).allMatch(future -> !future.isDone());
+
+        pending.complete(TitleResult.ofTitle("title"));
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(futures).allMatch(future -> "title".equals(future.join().getTitle()));
+    }
+
+    @Test
+    public void failedLoadIsNotCached() throws Exception {
+        CompletableFuture<TitleResult> failed =
+                titleCache.get("http://example.com", url -> {
+                    throw new IllegalStateException("boom");
+                });
+        assertThat(failed.isCompletedExceptionally()).isTrue();
+
+        titleCache.get("http://example.com", this::load).join();
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void normalize() throws Exception {
+        assertThat(TitleCache.normalize("www.sothawo.com")).isEqualTo("http://www.sothawo.com/");
+        assertThat(TitleCache.normalize("HTTPS://WWW.Sothawo.com:443/Path?q=1#top"))
+                .isEqualTo("https://www.sothawo.com/Path?q=1");
+        assertThat(TitleCache.normalize("http://sothawo.com:8080")).isEqualTo("http://sothawo.com:8080/");
+    }
+
+    /**
+     * a clock that can be advanced manually.
+     */
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2017-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.sothawo.taboo3.title;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the TitleExtractor against a local http server.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class TitleExtractorTest {
+
+    private static final int MAX_BYTES = 64 * 1024;
+    /** size of the large pages served by the stub. */
+    private static final int LARGE_BODY_SIZE = 8 * 1024 * 1024;
+
+    private HttpServer server;
+    private String baseUrl;
+    private TitleExtractor titleExtractor;
+    /** the number of bytes the stub wrote for the large page. */
+    private AtomicLong bytesWritten;
+
+    @Before
+    public void setup() throws Exception {
+        bytesWritten = new AtomicLong();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/title", exchange ->
+                respond(exchange, 200, "text/html; charset=UTF-8",
+                        "<html><head><title>Hello World</title></head><body>text</body></html>"));
+        server.createContext("/large", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                write(out, "<html><head><title>Large Page</title>");
+                writeFiller(out, LARGE_BODY_SIZE);
+                write(out, "</body></html>");
+            } catch (IOException e) {
+                // client closed the connection
+            }
+        });
+        server.createContext("/og", exchange ->
+                respond(exchange, 200, "text/html",
+                        "<html><head><title> </title><meta property=\"og:title\" content=\"Open Graph Title\">" +
+                                "</head><body></body></html>"));
+        server.createContext("/beyond", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                write(out, "<html><head><style>");
+                writeFiller(out, 2 * MAX_BYTES);
+                write(out, "</style><title>too late</title></head></html>");
+            } catch (IOException e) {
+                // client closed the connection
+            }
+        });
+        server.createContext("/latin1", exchange ->
+                respond(exchange, 200, "text/html; charset=ISO-8859-1",
+                        "<html><head><title>Grüße</title></head></html>", StandardCharsets.ISO_8859_1));
+        server.createContext("/meta-charset", exchange ->
+                respond(exchange, 200, "text/html",
+                        "<html><head><meta charset=\"ISO-8859-1\"><title>Grüße</title></head></html>",
+                        StandardCharsets.ISO_8859_1));
+        server.createContext("/gzip", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                write(out, "<html><head><title>Compressed</title></head><body>");
+                writeFiller(out, MAX_BYTES);
+                write(out, "</body></html>");
+            } catch (IOException e) {
+                // client closed the connection
+            }
+        });
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/title");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> respond(exchange, 404, "text/html", "not found"));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        titleExtractor = new TitleExtractor(MAX_BYTES, 5000, "test");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        respond(exchange, status, contentType, body, StandardCharsets.UTF_8);
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body, Charset charset)
+            throws IOException {
+        final byte[] bytes = body.getBytes(charset);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void write(OutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        bytesWritten.addAndGet(bytes.length);
+    }
+
+    private void writeFiller(OutputStream out, int size) throws IOException {
+        final byte[] chunk = new byte[8192];
+        Arrays.fill(chunk, (byte) 'x');
+        for (int written = 0; written < size; written += chunk.length) {
+            out.write(chunk);
+            bytesWritten.addAndGet(chunk.length);
+        }
+    }
+
+    @Test
+    public void extractTitle() throws Exception {
+        final TitleResult titleResult = titleExtractor.extract(baseUrl + "/title");
+
+        assertThat(titleResult.isOk()).isTrue();
+        assertThat(titleResult.getTitle()).isEqualTo("Hello World");
+    }
+
+    @Test
+    public void stopReadingAfterTitleOfLargePage() throws Exception {
+        final TitleResult titleResult = titleExtractor.extract(baseUrl + "/large");
+
+        assertThat(titleResult.getTitle()).isEqualTo("Large Page");
+        assertThat(bytesWritten.get()).isLessThan(LARGE_BODY_SIZE);
+    }
+
+    @Test
+    public void fallbackToOgTitle() throws Exception {
+        assertThat(titleExtractor.extract(baseUrl + "/og").getTitle()).isEqualTo("Open Graph Title");
+    }
+
+    @Test
+    public void titleBeyondMaxBytesIsNotFound() throws Exception {
+        final TitleResult titleResult = titleExtractor.extract(baseUrl + "/beyond");
+
+        assertThat(titleResult.isOk()).isTrue();
+        assertThat(titleResult.getTitle()).isEmpty();
+    }
+
+    @Test
+    public void charsetFromContentType() throws Exception {
+        assertThat(titleExtractor.extract(baseUrl + "/latin1").getTitle()).isEqualTo("Grüße");
+    }
+
+    @Test
+    public void charsetFromMetaTag() throws Exception {
+        assertThat(titleExtractor.extract(baseUrl + "/meta-charset").getTitle()).isEqualTo("Grüße");
+    }
+
+    @Test
+    public void gzipEncodedPage() throws Exception {
+        assertThat(titleExtractor.extract(baseUrl + "/gzip").getTitle()).isEqualTo("Compressed");
+    }
+
+    @Test
+    public void followRedirect() throws Exception {
+        assertThat(titleExtractor.extract(baseUrl + "/redirect").getTitle()).isEqualTo("Hello World");
+    }
+
+    @Test
+    public void httpErrorStatus() throws Exception {
+        final TitleResult titleResult = titleExtractor.extract(baseUrl + "/missing");
+
+        assertThat(titleResult.isOk()).isFalse();
+        assertThat(titleResult.getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void indexOfIgnoreCase() throws Exception {
+        final byte[] bytes = "<html><HEAD></Head>".getBytes(StandardCharsets.US_ASCII);
+        final byte[] pattern = "</head".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(TitleExtractor.indexOfIgnoreCase(bytes, pattern, 0)).isEqualTo(12);
+        assertThat(TitleExtractor.indexOfIgnoreCase(bytes, pattern, 13)).isEqualTo(-1);
+    }
+
+    /**
+     * a stream returning at most 3 bytes on each read, so that the markers span reads.
+     */
+    private static InputStream trickle(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    @Test
+    public void readHeadStopsAtMarkersSpanningReads() throws Exception {
+        final String title = "<html><head><TITLE>a title</Title";
+        final String emptyTitle = "<html><head><title> </title><meta></HEAD";
+
+        assertThat(new String(titleExtractor.readHead(trickle(title + "><body>")), StandardCharsets.US_ASCII))
+                .startsWith(title).doesNotContain("body");
+        assertThat(new String(titleExtractor.readHead(trickle(emptyTitle + "><body>")), StandardCharsets.US_ASCII))
+                .startsWith(emptyTitle).doesNotContain("body");
+        assertThat(titleExtractor.readHead(trickle("<html><head><title>"))).hasSize(19);
+    }
+}
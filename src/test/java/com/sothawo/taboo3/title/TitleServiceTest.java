@@ -0,0 +1,108 @@
+package com.sothawo.taboo3.title;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.http.HttpStatus;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the TitleService with one fetch thread and a queue for one pending load against a local http server which
+ * answers only when it is released.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com)
+ */
+public class TitleServiceTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    /** released to let the server answer. */
+    private CountDownLatch release;
+    private CounterService counterService;
+    private GaugeService gaugeService;
+    private TitleService titleService;
+
+    @Before
+    public void setup() throws Exception {
+        release = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        counterService = mock(CounterService.class);
+        gaugeService = mock(GaugeService.class);
+        titleService = new TitleService(counterService, gaugeService, 100, 3600, 300, 1, 1, 64 * 1024, 5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        titleService.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void loadsAreRejectedWhenTheQueueIsFull() throws Exception {
+        final CompletableFuture<TitleResult> running = titleService.loadTitle(baseUrl + "/running");
+        final CompletableFuture<TitleResult> queued = titleService.loadTitle(baseUrl + "/queued");
+        final CompletableFuture<TitleResult> rejected = titleService.loadTitle(baseUrl + "/rejected");
+
+        final Throwable thrown = catchThrowable(() -> rejected.get(5, TimeUnit.SECONDS));
+        assertThat(thrown).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        verify(counterService).increment("title.fetch.rejected");
+        verify(counterService, never()).increment("meter.title.fetch.errors");
+
+        release.countDown();
+
+        assertThat(running.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(queued.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        verify(counterService, times(2)).increment("meter.title.fetch.errors");
+        verify(counterService).increment("title.fetch.rejected");
+        verify(gaugeService, times(2)).submit(eq("timer.title.fetch"), anyDouble());
+    }
+
+    @Test
+    public void rejectedLoadIsNotCached() throws Exception {
+        titleService.loadTitle(baseUrl + "/running");
+        titleService.loadTitle(baseUrl + "/queued");
+        final Throwable thrown = catchThrowable(() -> titleService.loadTitle(baseUrl + "/rejected")
+                .get(5, TimeUnit.SECONDS));
+        assertThat(thrown).hasCauseInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        // wait until the executor is free again
+        titleService.loadTitle(baseUrl + "/queued").get(5, TimeUnit.SECONDS);
+
+        assertThat(titleService.loadTitle(baseUrl + "/rejected").get(5, TimeUnit.SECONDS).getStatus())
+                .isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        verify(counterService).increment("title.fetch.rejected");
+    }
+}